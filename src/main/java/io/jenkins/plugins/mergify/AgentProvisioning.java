@@ -0,0 +1,162 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Label;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import io.opentelemetry.api.common.AttributeKey;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timeline of the agents launched by clouds, from the provisioning request to the agent being
+ * online.
+ *
+ * <p>Planned nodes are followed from the cloud provisioning listener events until they are
+ * provisioned, then by node name through the computer listener events. Once online, the timeline
+ * is kept until the first queue wait served by the agent claims it. Planned nodes whose
+ * provisioning never ends and timelines nobody claims are evicted, oldest first.
+ */
+final class AgentProvisioning {
+    static final AttributeKey<String> PROVISIONING_CLOUD = AttributeKey.stringKey("mergify.provisioning.cloud");
+    static final AttributeKey<String> PROVISIONING_LABEL = AttributeKey.stringKey("mergify.provisioning.label");
+
+    static final int MAX_AGENTS = 4096;
+
+    private static final AgentProvisioning INSTANCE = new AgentProvisioning();
+
+    /**
+     * The phases of an agent, as epoch timestamps: provisioning from {@code requestedMillis} to
+     * {@code provisionedMillis}, launching from {@code launchingMillis} to {@code connectingMillis}
+     * and connecting from {@code connectingMillis} to {@code onlineMillis}. Launch and connect
+     * phases are 0 when the computer events were not seen, e.g. for agents connecting inbound.
+     */
+    record Timeline(
+            String nodeName,
+            @CheckForNull String cloudName,
+            @CheckForNull String label,
+            long requestedMillis,
+            long provisionedMillis,
+            long launchingMillis,
+            long connectingMillis,
+            long onlineMillis) {}
+
+    private static final class Tracked {
+        private final String cloudName;
+        private final String label;
+        private final long requestedMillis;
+        private volatile long provisionedMillis;
+        private volatile long launchingMillis;
+        private volatile long connectingMillis;
+        private volatile long onlineMillis;
+
+        Tracked(String cloudName, String label, long requestedMillis) {
+            this.cloudName = cloudName;
+            this.label = label;
+            this.requestedMillis = requestedMillis;
+        }
+
+        Timeline toTimeline(String nodeName) {
+            return new Timeline(
+                    nodeName,
+                    cloudName,
+                    label,
+                    requestedMillis,
+                    provisionedMillis,
+                    launchingMillis,
+                    connectingMillis,
+                    onlineMillis);
+        }
+    }
+
+    private final Map<NodeProvisioner.PlannedNode, Tracked> planned = newLruMap();
+    // Node name -> provisioned agent
+    private final Map<String, Tracked> agents = newLruMap();
+
+    static AgentProvisioning get() {
+        return INSTANCE;
+    }
+
+    private static <K> Map<K, Tracked> newLruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<K, Tracked>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Tracked> eldest) {
+                return size() > MAX_AGENTS;
+            }
+        });
+    }
+
+    void onRequested(
+            @NonNull Cloud cloud,
+            @CheckForNull Label label,
+            @NonNull NodeProvisioner.PlannedNode plannedNode,
+            long nowMillis) {
+        planned.put(plannedNode, new Tracked(cloud.name, QueueWaits.getLabel(label), nowMillis));
+    }
+
+    void onProvisioned(@NonNull NodeProvisioner.PlannedNode plannedNode, @NonNull String nodeName, long nowMillis) {
+        Tracked tracked = planned.remove(plannedNode);
+        if (tracked != null) {
+            tracked.provisionedMillis = nowMillis;
+            agents.put(nodeName, tracked);
+        }
+    }
+
+    void onFailed(@NonNull NodeProvisioner.PlannedNode plannedNode) {
+        planned.remove(plannedNode);
+    }
+
+    // The provisioned node could not be added to Jenkins
+    void onRolledBack(@NonNull NodeProvisioner.PlannedNode plannedNode, @NonNull String nodeName) {
+        planned.remove(plannedNode);
+        agents.remove(nodeName);
+    }
+
+    // A launch may be retried, the last attempt counts
+    void onLaunching(@NonNull String nodeName, long nowMillis) {
+        Tracked tracked = agents.get(nodeName);
+        if (tracked != null && tracked.onlineMillis == 0) {
+            tracked.launchingMillis = nowMillis;
+        }
+    }
+
+    void onConnecting(@NonNull String nodeName, long nowMillis) {
+        Tracked tracked = agents.get(nodeName);
+        if (tracked != null && tracked.onlineMillis == 0) {
+            tracked.connectingMillis = nowMillis;
+        }
+    }
+
+    void onOnline(@NonNull String nodeName, long nowMillis) {
+        Tracked tracked = agents.get(nodeName);
+        if (tracked != null && tracked.onlineMillis == 0) {
+            tracked.onlineMillis = nowMillis;
+        }
+    }
+
+    /**
+     * @return the timeline of the agent if it was provisioned by a cloud, is online and was not claimed yet
+     */
+    @CheckForNull
+    Timeline claim(@NonNull String nodeName) {
+        synchronized (agents) {
+            Tracked tracked = agents.get(nodeName);
+            if (tracked == null || tracked.onlineMillis == 0) {
+                return null;
+            }
+            agents.remove(nodeName);
+            return tracked.toTimeline(nodeName);
+        }
+    }
+
+    int size() {
+        return planned.size() + agents.size();
+    }
+
+    void clear() {
+        planned.clear();
+        agents.clear();
+    }
+}
@@ -0,0 +1,58 @@
+package io.jenkins.plugins.mergify;
+
+/**
+ * Sizes and delays of the {@link io.opentelemetry.sdk.trace.export.BatchSpanProcessor}.
+ */
+record BatchTuning(int maxQueueSize, int maxExportBatchSize, long scheduleDelayMillis, long exporterTimeoutMillis) {
+
+    // Rough retained size of an ended span, used to bound the queue by the available heap
+    static final long ESTIMATED_SPAN_BYTES = 2048;
+    static final double MAX_HEAP_FRACTION = 0.05;
+    // Queue room kept for bursts, in number of schedule delays worth of spans
+    static final int BURST_FACTOR = 4;
+
+    BatchTuning {
+        maxQueueSize = Math.max(1, maxQueueSize);
+        maxExportBatchSize = Math.max(1, Math.min(maxExportBatchSize, maxQueueSize));
+        scheduleDelayMillis = Math.max(1, scheduleDelayMillis);
+        exporterTimeoutMillis = Math.max(1, exporterTimeoutMillis);
+    }
+
+    static BatchTuning of(MergifyConfigurationProvider config) {
+        return new BatchTuning(
+                config.getBatchMaxQueueSize(),
+                config.getBatchMaxExportBatchSize(),
+                config.getBatchScheduleDelayMillis(),
+                config.getBatchExporterTimeoutMillis());
+    }
+
+    /**
+     * Sizes the queue and the batches from the observed span rate, never below this tuning and
+     * never above a small fraction of the available heap.
+     */
+    BatchTuning adapt(double spansPerSecond, long availableHeapBytes) {
+        long perDelay = (long) Math.ceil(spansPerSecond * scheduleDelayMillis / 1000.0);
+        long heapBound = (long) (availableHeapBytes * MAX_HEAP_FRACTION) / ESTIMATED_SPAN_BYTES;
+        long queue = Math.max(maxQueueSize, Math.min(perDelay * BURST_FACTOR, heapBound));
+        long batch = Math.max(maxExportBatchSize, Math.min(perDelay, queue));
+        return new BatchTuning(
+                (int) Math.min(queue, Integer.MAX_VALUE),
+                (int) Math.min(batch, Integer.MAX_VALUE),
+                scheduleDelayMillis,
+                exporterTimeoutMillis);
+    }
+
+    /**
+     * Whether the queue or batch size differ enough from another tuning to be worth a resize.
+     */
+    boolean differsSignificantly(BatchTuning other) {
+        return scheduleDelayMillis != other.scheduleDelayMillis
+                || exporterTimeoutMillis != other.exporterTimeoutMillis
+                || differsSignificantly(maxQueueSize, other.maxQueueSize)
+                || differsSignificantly(maxExportBatchSize, other.maxExportBatchSize);
+    }
+
+    private static boolean differsSignificantly(int a, int b) {
+        return Math.max(a, b) > Math.min(a, b) * 1.5;
+    }
+}
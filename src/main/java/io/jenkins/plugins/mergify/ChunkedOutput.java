@@ -0,0 +1,56 @@
+package io.jenkins.plugins.mergify;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects bytes into fixed size chunks, that are sent as is as the HTTP body.
+ */
+final class ChunkedOutput extends OutputStream {
+    static final int CHUNK_BYTES = 64 * 1024;
+
+    private final int chunkBytes;
+    private final List<byte[]> full = new ArrayList<>();
+    private byte[] current;
+    private int position;
+
+    ChunkedOutput(int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+        this.current = new byte[chunkBytes];
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (position == chunkBytes) {
+                full.add(current);
+                current = new byte[chunkBytes];
+                position = 0;
+            }
+            int copied = Math.min(len, chunkBytes - position);
+            System.arraycopy(b, off, current, position, copied);
+            position += copied;
+            off += copied;
+            len -= copied;
+        }
+    }
+
+    /**
+     * @return the chunks, all full but the last one
+     */
+    List<byte[]> toList() {
+        List<byte[]> list = new ArrayList<>(full.size() + 1);
+        list.addAll(full);
+        if (position > 0) {
+            list.add(position == chunkBytes ? current : Arrays.copyOf(current, position));
+        }
+        return list;
+    }
+}
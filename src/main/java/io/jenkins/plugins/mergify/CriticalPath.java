@@ -0,0 +1,94 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import io.opentelemetry.api.common.AttributeKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The closed stage and parallel branch blocks of a pipeline run, from which its critical path is
+ * computed when the run is finalized.
+ *
+ * <p>The critical path is the chain of blocks that made the wall-clock duration of the run. From
+ * the end of the run, or of a block, it goes through the child block that ended last, then the one
+ * that ended last before that child started, and so on, then recursively into each of them. Of
+ * parallel branches, only the one that held up its stage is on the path.
+ *
+ * <p>Block spans are ended when their block closes, only their IDs and times are kept here. The
+ * path is exported as the IDs of its spans on the job span, which is still open at that point.
+ */
+final class CriticalPath {
+    static final AttributeKey<List<String>> CRITICAL_PATH_SPAN_IDS =
+            AttributeKey.stringArrayKey("mergify.critical_path.span_ids");
+
+    // Parent ID of the top-level blocks
+    private static final String ROOT = "";
+
+    private record Segment(String id, String parentId, String spanId, long startMillis, long endMillis) {}
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Records a closed block.
+     *
+     * @param parentId the ID of the innermost stage or branch enclosing the block, {@code null} at the top level
+     * @param spanId the ID of the span of the block
+     */
+    synchronized void add(String id, @CheckForNull String parentId, String spanId, long startMillis, long endMillis) {
+        segments.add(new Segment(id, parentId != null ? parentId : ROOT, spanId, startMillis, endMillis));
+    }
+
+    synchronized int size() {
+        return segments.size();
+    }
+
+    /**
+     * Computes the critical path of a run, then forgets its blocks.
+     *
+     * @return the span IDs of the blocks on the critical path, by start time
+     */
+    synchronized List<String> finish(long endMillis) {
+        Map<String, List<Segment>> children = new HashMap<>();
+        for (Segment segment : segments) {
+            children.computeIfAbsent(segment.parentId(), id -> new ArrayList<>()).add(segment);
+        }
+        Set<String> critical = new HashSet<>();
+        walk(children, ROOT, endMillis, critical);
+
+        List<String> spanIds = segments.stream()
+                .filter(segment -> critical.contains(segment.id()))
+                // Enclosing blocks first when they start at the same time
+                .sorted(Comparator.comparingLong(Segment::startMillis)
+                        .thenComparing(Comparator.comparingLong(Segment::endMillis).reversed()))
+                .map(Segment::spanId)
+                .toList();
+        segments.clear();
+        return spanIds;
+    }
+
+    synchronized void clear() {
+        segments.clear();
+    }
+
+    private static void walk(
+            Map<String, List<Segment>> children, String parentId, long endMillis, Set<String> critical) {
+        List<Segment> candidates = children.get(parentId);
+        if (candidates == null) {
+            return;
+        }
+        candidates.sort(Comparator.comparingLong(Segment::endMillis).reversed());
+        long cursor = endMillis;
+        for (Segment segment : candidates) {
+            if (segment.endMillis() <= cursor) {
+                critical.add(segment.id());
+                walk(children, segment.id(), segment.endMillis(), critical);
+                cursor = segment.startMillis();
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Export queue of a single repository.
+ *
+ * <p>Batches are handed to the repository exporter with at most {@code maxInFlight} of them
+ * pending, the others waiting in a queue bounded by {@code maxQueuedSpans}. An export that does
+ * not complete within {@code timeoutMillis} is failed and frees its slot, so a slow endpoint only
+ * delays its own repository. The exporter aborts the HTTP request of a failed export, so a hung
+ * endpoint does not pile up requests. Batches that do not fit in the queue are handed to the
+ * overflow handler.
+ */
+final class ExportLane {
+    private static final Logger LOGGER = Logger.getLogger(ExportLane.class.getName());
+
+    static final int MAX_QUEUED_SPANS =
+            SystemProperties.getInteger(ExportLane.class.getName() + ".maxQueuedSpans", 50_000);
+    static final int MAX_IN_FLIGHT = SystemProperties.getInteger(ExportLane.class.getName() + ".maxInFlight", 2);
+    static final long TIMEOUT_MILLIS = SystemProperties.getLong(ExportLane.class.getName() + ".timeoutMillis", 30_000L);
+
+    private final String repositoryName;
+    private final Function<List<SpanData>, CompletableResultCode> exporter;
+    private final Predicate<List<SpanData>> overflow;
+    private final int maxQueuedSpans;
+    private final int maxInFlight;
+    private final long timeoutMillis;
+
+    private final ArrayDeque<List<SpanData>> queue = new ArrayDeque<>();
+    private final List<CompletableResultCode> idleWaiters = new ArrayList<>();
+    private int queuedSpans;
+    private int inFlight;
+    private boolean draining;
+
+    private final LongAdder exportedSpans = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder timedOutBatches = new LongAdder();
+    private final LongAdder droppedSpans = new LongAdder();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    ExportLane(
+            String repositoryName,
+            Function<List<SpanData>, CompletableResultCode> exporter,
+            Predicate<List<SpanData>> overflow) {
+        this(repositoryName, exporter, overflow, MAX_QUEUED_SPANS, MAX_IN_FLIGHT, TIMEOUT_MILLIS);
+    }
+
+    ExportLane(
+            String repositoryName,
+            Function<List<SpanData>, CompletableResultCode> exporter,
+            Predicate<List<SpanData>> overflow,
+            int maxQueuedSpans,
+            int maxInFlight,
+            long timeoutMillis) {
+        this.repositoryName = repositoryName;
+        this.exporter = exporter;
+        this.overflow = overflow;
+        this.maxQueuedSpans = maxQueuedSpans;
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Hands a batch to the lane without waiting for it to be exported.
+     *
+     * @return the export result if the batch was exported right away, success if it was queued,
+     *     failure if it was dropped
+     */
+    CompletableResultCode offer(List<SpanData> spans) {
+        boolean dispatchNow;
+        synchronized (this) {
+            dispatchNow = queue.isEmpty() && inFlight < maxInFlight;
+            if (dispatchNow) {
+                inFlight++;
+            } else if (queuedSpans + spans.size() <= maxQueuedSpans) {
+                queue.add(spans);
+                queuedSpans += spans.size();
+                return CompletableResultCode.ofSuccess();
+            }
+        }
+        if (!dispatchNow) {
+            if (overflow.test(spans)) {
+                return CompletableResultCode.ofSuccess();
+            }
+            droppedSpans.add(spans.size());
+            LOGGER.warning("Export queue of repository `" + repositoryName + "` is full (" + maxQueuedSpans
+                    + " spans), dropping " + spans.size() + " spans");
+            return CompletableResultCode.ofFailure();
+        }
+        CompletableResultCode result = dispatch(spans);
+        return result.isDone() ? result : CompletableResultCode.ofSuccess();
+    }
+
+    private CompletableResultCode dispatch(List<SpanData> spans) {
+        CompletableResultCode result = export(spans);
+        CompletableResultCode slot = result;
+        if (!result.isDone()) {
+            CompletableResultCode pending = new CompletableResultCode();
+            ScheduledFuture<?> timeout = Timer.get()
+                    .schedule(
+                            () -> {
+                                if (!pending.isDone()) {
+                                    timedOutBatches.increment();
+                                    LOGGER.warning("Export of " + spans.size() + " spans to repository `"
+                                            + repositoryName + "` timed out after " + timeoutMillis + "ms");
+                                    pending.fail();
+                                    // Lets the exporter abort the request instead of leaving it running
+                                    result.fail();
+                                }
+                            },
+                            timeoutMillis,
+                            TimeUnit.MILLISECONDS);
+            result.whenComplete(() -> {
+                timeout.cancel(false);
+                if (result.isSuccess()) {
+                    pending.succeed();
+                } else {
+                    pending.fail();
+                }
+            });
+            slot = pending;
+        }
+        CompletableResultCode done = slot;
+        done.whenComplete(() -> release(spans.size(), done.isSuccess()));
+        return result;
+    }
+
+    // A throwing exporter fails the batch, so that its slot is released
+    private CompletableResultCode export(List<SpanData> spans) {
+        try {
+            return exporter.apply(spans);
+        } catch (RuntimeException e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Failed to export " + spans.size() + " spans to repository `" + repositoryName + "`",
+                    e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    private void release(int spanCount, boolean success) {
+        if (success) {
+            exportedSpans.add(spanCount);
+            consecutiveFailures.set(0);
+        } else {
+            failedBatches.increment();
+            consecutiveFailures.incrementAndGet();
+        }
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    // The only loop dispatching queued batches. A batch completing synchronously releases its slot
+    // from within dispatch(), the running loop then picks the next batch instead of recursing.
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            List<SpanData> next;
+            List<CompletableResultCode> idle = null;
+            synchronized (this) {
+                next = inFlight < maxInFlight ? queue.poll() : null;
+                if (next != null) {
+                    queuedSpans -= next.size();
+                    inFlight++;
+                } else {
+                    draining = false;
+                    if (inFlight == 0 && !idleWaiters.isEmpty()) {
+                        idle = new ArrayList<>(idleWaiters);
+                        idleWaiters.clear();
+                    }
+                }
+            }
+            if (next == null) {
+                if (idle != null) {
+                    idle.forEach(CompletableResultCode::succeed);
+                }
+                return;
+            }
+            dispatch(next);
+        }
+    }
+
+    /**
+     * @return a result completed once every queued and pending batch is done
+     */
+    synchronized CompletableResultCode flush() {
+        if (isIdle()) {
+            return CompletableResultCode.ofSuccess();
+        }
+        CompletableResultCode result = new CompletableResultCode();
+        idleWaiters.add(result);
+        return result;
+    }
+
+    String getRepositoryName() {
+        return repositoryName;
+    }
+
+    synchronized int getQueuedSpans() {
+        return queuedSpans;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    // Nothing queued nor pending
+    synchronized boolean isIdle() {
+        return queue.isEmpty() && inFlight == 0;
+    }
+
+    long getExportedSpans() {
+        return exportedSpans.sum();
+    }
+
+    long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    long getTimedOutBatches() {
+        return timedOutBatches.sum();
+    }
+
+    long getDroppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+}
@@ -0,0 +1,345 @@
+package io.jenkins.plugins.mergify;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Counters and latency histograms of the export pipeline, per repository.
+ *
+ * <p>Organization figures are the sums of their repositories, computed when read. The metrics of
+ * repositories evicted from the export pipeline are folded into {@code retired}, so that totals
+ * never go backwards.
+ */
+final class ExportMetrics {
+
+    private static final ExportMetrics INSTANCE = new ExportMetrics();
+
+    private final Map<String, RepositoryMetrics> repositories = new ConcurrentHashMap<>();
+    private final RepositoryMetrics retired = new RepositoryMetrics();
+    // Spans dropped before their repository was known
+    private final LongAdder unattributedDroppedSpans = new LongAdder();
+
+    static ExportMetrics get() {
+        return INSTANCE;
+    }
+
+    RepositoryMetrics repository(String repositoryName) {
+        return repositories.computeIfAbsent(repositoryName, name -> new RepositoryMetrics());
+    }
+
+    /**
+     * Forgets the metrics of a repository, adding them to the retired ones.
+     */
+    void evict(String repositoryName) {
+        RepositoryMetrics metrics = repositories.remove(repositoryName);
+        if (metrics != null) {
+            metrics.addTo(retired);
+        }
+    }
+
+    int size() {
+        return repositories.size();
+    }
+
+    void onUnattributedDropped(int spans) {
+        unattributedDroppedSpans.add(spans);
+    }
+
+    long getUnattributedDroppedSpans() {
+        return unattributedDroppedSpans.sum();
+    }
+
+    long total(ToLongFunction<RepositoryMetrics> counter) {
+        long total = counter.applyAsLong(retired);
+        for (RepositoryMetrics metrics : repositories.values()) {
+            total += counter.applyAsLong(metrics);
+        }
+        return total;
+    }
+
+    void clear() {
+        repositories.clear();
+        retired.reset();
+        unattributedDroppedSpans.reset();
+    }
+
+    JSONObject toJson() {
+        JSONObject perRepository = new JSONObject();
+        Map<String, JSONObject> perOrganization = new TreeMap<>();
+        new TreeMap<>(repositories).forEach((repositoryName, metrics) -> {
+            JSONObject counters = metrics.toJson();
+            perRepository.put(repositoryName, counters);
+            String organizationName = repositoryName.split("/")[0];
+            perOrganization.merge(organizationName, metrics.countersToJson(), ExportMetrics::sum);
+        });
+
+        JSONObject json = new JSONObject();
+        json.put("unattributedDroppedSpans", getUnattributedDroppedSpans());
+        json.put("organizations", JSONObject.fromObject(perOrganization));
+        json.put("repositories", perRepository);
+        json.put("retiredRepositories", retired.toJson());
+        return json;
+    }
+
+    private static JSONObject sum(JSONObject a, JSONObject b) {
+        JSONObject sum = new JSONObject();
+        for (Object key : a.keySet()) {
+            String name = (String) key;
+            sum.put(name, a.getLong(name) + b.optLong(name));
+        }
+        return sum;
+    }
+
+    static final class RepositoryMetrics {
+        private final LongAdder queuedSpans = new LongAdder();
+        private final LongAdder exportedSpans = new LongAdder();
+        private final LongAdder failedSpans = new LongAdder();
+        private final LongAdder spooledSpans = new LongAdder();
+        private final LongAdder droppedSpans = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder replayedPayloads = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder filteredSpans = new LongAdder();
+        private final LongAdder collapsedSpans = new LongAdder();
+        private final LongAdder summarySpans = new LongAdder();
+        private final LatencyHistogram exportLatency = new LatencyHistogram();
+
+        void onQueued(int spans) {
+            queuedSpans.add(spans);
+        }
+
+        void onExported(int spans, long latencyMillis) {
+            exportedSpans.add(spans);
+            exportLatency.record(latencyMillis);
+        }
+
+        void onFailed(int spans, long latencyMillis) {
+            failedSpans.add(spans);
+            exportLatency.record(latencyMillis);
+        }
+
+        void onSpooled(int spans) {
+            spooledSpans.add(spans);
+        }
+
+        void onDropped(int spans) {
+            droppedSpans.add(spans);
+        }
+
+        void onRetry(boolean replayed) {
+            retries.increment();
+            if (replayed) {
+                replayedPayloads.increment();
+            }
+        }
+
+        void onEncoded(long raw, long compressed) {
+            rawBytes.add(raw);
+            compressedBytes.add(compressed);
+        }
+
+        /**
+         * @param dropped spans dropped by a filter rule
+         * @param collapsed spans replaced by summary spans
+         * @param summaries summary spans added
+         */
+        void onFiltered(int dropped, int collapsed, int summaries) {
+            filteredSpans.add(dropped);
+            collapsedSpans.add(collapsed);
+            summarySpans.add(summaries);
+        }
+
+        long getQueuedSpans() {
+            return queuedSpans.sum();
+        }
+
+        long getExportedSpans() {
+            return exportedSpans.sum();
+        }
+
+        long getFailedSpans() {
+            return failedSpans.sum();
+        }
+
+        long getSpooledSpans() {
+            return spooledSpans.sum();
+        }
+
+        long getDroppedSpans() {
+            return droppedSpans.sum();
+        }
+
+        long getRetries() {
+            return retries.sum();
+        }
+
+        long getReplayedPayloads() {
+            return replayedPayloads.sum();
+        }
+
+        long getRawBytes() {
+            return rawBytes.sum();
+        }
+
+        long getCompressedBytes() {
+            return compressedBytes.sum();
+        }
+
+        long getFilteredSpans() {
+            return filteredSpans.sum();
+        }
+
+        long getCollapsedSpans() {
+            return collapsedSpans.sum();
+        }
+
+        long getSummarySpans() {
+            return summarySpans.sum();
+        }
+
+        // Spans the filter rules kept from being exported
+        long getSavedSpans() {
+            return getFilteredSpans() + getCollapsedSpans() - getSummarySpans();
+        }
+
+        LatencyHistogram getExportLatency() {
+            return exportLatency;
+        }
+
+        JSONObject countersToJson() {
+            JSONObject json = new JSONObject();
+            json.put("queuedSpans", getQueuedSpans());
+            json.put("exportedSpans", getExportedSpans());
+            json.put("failedSpans", getFailedSpans());
+            json.put("spooledSpans", getSpooledSpans());
+            json.put("droppedSpans", getDroppedSpans());
+            json.put("retries", getRetries());
+            json.put("replayedPayloads", getReplayedPayloads());
+            json.put("rawBytes", getRawBytes());
+            json.put("compressedBytes", getCompressedBytes());
+            json.put("filteredSpans", getFilteredSpans());
+            json.put("collapsedSpans", getCollapsedSpans());
+            json.put("summarySpans", getSummarySpans());
+            json.put("savedSpans", getSavedSpans());
+            return json;
+        }
+
+        void addTo(RepositoryMetrics target) {
+            target.queuedSpans.add(getQueuedSpans());
+            target.exportedSpans.add(getExportedSpans());
+            target.failedSpans.add(getFailedSpans());
+            target.spooledSpans.add(getSpooledSpans());
+            target.droppedSpans.add(getDroppedSpans());
+            target.retries.add(getRetries());
+            target.replayedPayloads.add(getReplayedPayloads());
+            target.rawBytes.add(getRawBytes());
+            target.compressedBytes.add(getCompressedBytes());
+            target.filteredSpans.add(getFilteredSpans());
+            target.collapsedSpans.add(getCollapsedSpans());
+            target.summarySpans.add(getSummarySpans());
+            exportLatency.addTo(target.exportLatency);
+        }
+
+        void reset() {
+            for (LongAdder counter : List.of(
+                    queuedSpans,
+                    exportedSpans,
+                    failedSpans,
+                    spooledSpans,
+                    droppedSpans,
+                    retries,
+                    replayedPayloads,
+                    rawBytes,
+                    compressedBytes,
+                    filteredSpans,
+                    collapsedSpans,
+                    summarySpans)) {
+                counter.reset();
+            }
+            exportLatency.reset();
+        }
+
+        JSONObject toJson() {
+            JSONObject json = countersToJson();
+            json.put("exportLatencyMillis", exportLatency.toJson());
+            return json;
+        }
+    }
+
+    /**
+     * Fixed buckets histogram, counting since startup. Buckets are not cumulative.
+     */
+    static final class LatencyHistogram {
+        static final long[] BOUNDS_MILLIS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        LatencyHistogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long millis) {
+            int bucket = 0;
+            while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            sum.add(millis);
+        }
+
+        void addTo(LatencyHistogram target) {
+            for (int i = 0; i < buckets.length; i++) {
+                target.buckets[i].add(buckets[i].sum());
+            }
+            target.count.add(getCount());
+            target.sum.add(getSum());
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getSum() {
+            return sum.sum();
+        }
+
+        long getBucketCount(int bucket) {
+            return buckets[bucket].sum();
+        }
+
+        JSONObject toJson() {
+            JSONArray bucketsJson = new JSONArray();
+            for (int i = 0; i < buckets.length; i++) {
+                JSONObject bucket = new JSONObject();
+                bucket.put("upperBoundMillis", i < BOUNDS_MILLIS.length ? String.valueOf(BOUNDS_MILLIS[i]) : "+Inf");
+                bucket.put("count", buckets[i].sum());
+                bucketsJson.add(bucket);
+            }
+            JSONObject json = new JSONObject();
+            json.put("count", getCount());
+            json.put("sum", getSum());
+            json.put("buckets", bucketsJson);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Access-ordered cache of the exporter of each repository.
+ *
+ * <p>The cache is bounded by {@link #MAX_SIZE}, the least recently used exporter being evicted
+ * first, and the exporters left unused for {@link #IDLE_TTL_MILLIS} are expired by {@link
+ * IdleReaper}. Exporters leaving the cache are drained asynchronously: they are flushed, then shut
+ * down, while new exporters take over their repositories.
+ */
+final class ExporterCache {
+    private static final Logger LOGGER = Logger.getLogger(ExporterCache.class.getName());
+
+    static final int MAX_SIZE = SystemProperties.getInteger(ExporterCache.class.getName() + ".maxSize", 512);
+    static final long IDLE_TTL_MILLIS = SystemProperties.getLong(
+            ExporterCache.class.getName() + ".idleTtlMillis", TimeUnit.MINUTES.toMillis(30));
+
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final AtomicInteger draining = new AtomicInteger();
+
+    private static final class Entry {
+        private final SpanExporter exporter;
+        private long lastAccess;
+
+        Entry(SpanExporter exporter, long lastAccess) {
+            this.exporter = exporter;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    ExporterCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Returns the exporter of a repository, creating it if needed.
+     *
+     * @param factory creates the exporter, or returns null if the repository can't be exported
+     */
+    SpanExporter get(String repositoryName, Function<String, SpanExporter> factory) {
+        synchronized (this) {
+            Entry entry = entries.get(repositoryName);
+            if (entry != null) {
+                entry.lastAccess = System.currentTimeMillis();
+                return entry.exporter;
+            }
+        }
+
+        // Created outside the lock, it looks up the repository token
+        SpanExporter newExporter = factory.apply(repositoryName);
+        if (newExporter == null) {
+            return null;
+        }
+
+        SpanExporter exporter;
+        List<SpanExporter> leaving = new ArrayList<>();
+        synchronized (this) {
+            Entry entry = entries.get(repositoryName);
+            if (entry != null) {
+                // Created concurrently by another thread
+                leaving.add(newExporter);
+                exporter = entry.exporter;
+            } else {
+                entries.put(repositoryName, new Entry(newExporter, System.currentTimeMillis()));
+                created.increment();
+                exporter = newExporter;
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (entries.size() > maxSize) {
+                    leaving.add(eldest.next().exporter);
+                    eldest.remove();
+                    evicted.increment();
+                }
+            }
+        }
+        leaving.forEach(this::drain);
+        return exporter;
+    }
+
+    /**
+     * Drains the exporters not used for {@code ttlMillis}.
+     */
+    int expireIdle(long ttlMillis) {
+        long deadline = System.currentTimeMillis() - ttlMillis;
+        List<SpanExporter> leaving = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.lastAccess < deadline) {
+                    leaving.add(entry.exporter);
+                    iterator.remove();
+                }
+            }
+        }
+        expired.add(leaving.size());
+        leaving.forEach(this::drain);
+        return leaving.size();
+    }
+
+    /**
+     * Drains every exporter, the next exports create new ones.
+     */
+    void invalidateAll() {
+        List<SpanExporter> leaving;
+        synchronized (this) {
+            leaving = new ArrayList<>(entries.size());
+            entries.values().forEach(entry -> leaving.add(entry.exporter));
+            entries.clear();
+        }
+        leaving.forEach(this::drain);
+    }
+
+    private void drain(SpanExporter exporter) {
+        draining.incrementAndGet();
+        CompletableResultCode flushed;
+        try {
+            flushed = exporter.flush();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Exception thrown by the flush.", e);
+            flushed = CompletableResultCode.ofFailure();
+        }
+        flushed.whenComplete(() -> {
+            try {
+                exporter.shutdown();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Exception thrown by the shutdown.", e);
+            }
+            draining.decrementAndGet();
+        });
+    }
+
+    CompletableResultCode flushAll() {
+        List<CompletableResultCode> results = new ArrayList<>();
+        for (SpanExporter exporter : snapshot()) {
+            try {
+                results.add(exporter.flush());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Exception thrown by the flush.", e);
+                results.add(CompletableResultCode.ofFailure());
+            }
+        }
+        return CompletableResultCode.ofAll(results);
+    }
+
+    CompletableResultCode shutdownAll() {
+        List<SpanExporter> exporters;
+        synchronized (this) {
+            exporters = snapshot();
+            entries.clear();
+        }
+        List<CompletableResultCode> results = new ArrayList<>(exporters.size());
+        for (SpanExporter exporter : exporters) {
+            try {
+                results.add(exporter.shutdown());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Exception thrown by the shutdown.", e);
+                results.add(CompletableResultCode.ofFailure());
+            }
+        }
+        return CompletableResultCode.ofAll(results);
+    }
+
+    private synchronized List<SpanExporter> snapshot() {
+        List<SpanExporter> exporters = new ArrayList<>(entries.size());
+        entries.values().forEach(entry -> exporters.add(entry.exporter));
+        return exporters;
+    }
+
+    synchronized boolean contains(String repositoryName) {
+        return entries.containsKey(repositoryName);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getCreatedCount() {
+        return created.sum();
+    }
+
+    long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    long getExpiredCount() {
+        return expired.sum();
+    }
+
+    int getDrainingCount() {
+        return draining.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(entry.getKey()).append('=').append(entry.getValue().exporter);
+        }
+        return builder.append('}').toString();
+    }
+
+    @Extension
+    public static class IdleReaper extends AsyncPeriodicWork {
+        public IdleReaper() {
+            super("Mergify idle exporters reaper");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(5);
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINE;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            TracerService.expireIdleExporters();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+/**
+ * Per-execution index of the open blocks of a flow graph.
+ *
+ * <p>Each open {@link BlockStartNode} is classified once when it becomes a head and remembers its
+ * nearest stage, parallel branch and {@code node { }} workspace, so a new head is classified and attributed with a
+ * single lookup of its enclosing block instead of walking {@link FlowNode#getEnclosingBlocks()}. Blocks only keep
+ * node IDs and names, never the nodes themselves.
+ */
+final class FlowGraphIndex {
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+    private final Predicate<FlowNode> isStage;
+    private final Predicate<FlowNode> isBranch;
+
+    FlowGraphIndex(Predicate<FlowNode> isStage) {
+        this(isStage, node -> false);
+    }
+
+    FlowGraphIndex(Predicate<FlowNode> isStage, Predicate<FlowNode> isBranch) {
+        this.isStage = isStage;
+        this.isBranch = isBranch;
+    }
+
+    private Block newBlock(BlockStartNode start, @CheckForNull Block parent) {
+        boolean stage = isStage.test(start);
+        return new Block(
+                start.getId(), parent, stage, !stage && isBranch.test(start), getWorkspaceNode(start, parent));
+    }
+
+    // The WorkspaceAction is added to the start of a node block once its agent is allocated, after
+    // that start became a head but before its body starts, so a body reads it from its parent.
+    @CheckForNull
+    private static String getWorkspaceNode(BlockStartNode start, @CheckForNull Block parent) {
+        WorkspaceAction action = start.getAction(WorkspaceAction.class);
+        if (action == null
+                && parent != null
+                && parent.workspaceNode == null
+                && start.getParentIds().contains(parent.id)) {
+            for (FlowNode node : start.getParents()) {
+                action = node.getAction(WorkspaceAction.class);
+                if (action != null) {
+                    break;
+                }
+            }
+        }
+        if (action != null) {
+            return action.getNode();
+        }
+        return parent != null ? parent.workspaceNode : null;
+    }
+
+    /**
+     * Registers a new block start head.
+     */
+    @NonNull
+    Block open(@NonNull BlockStartNode start) {
+        Block block = newBlock(start, enclosing(start));
+        blocks.put(start.getId(), block);
+        return block;
+    }
+
+    /**
+     * Unregisters the block closed by a new block end head.
+     *
+     * @return the closed block, or {@code null} if it was not open in this index
+     */
+    @CheckForNull
+    Block close(@NonNull BlockEndNode<?> end) {
+        return blocks.remove(end.getStartNode().getId());
+    }
+
+    /**
+     * @return the innermost open block enclosing the node, or {@code null} for top-level nodes
+     */
+    @CheckForNull
+    Block enclosing(@NonNull FlowNode node) {
+        String id = node.getEnclosingId();
+        if (id == null) {
+            return null;
+        }
+        Block block = blocks.get(id);
+        if (block == null) {
+            // Blocks opened before this index existed, e.g. a build resumed after a restart
+            block = rebuild(node);
+        }
+        return block;
+    }
+
+    int size() {
+        return blocks.size();
+    }
+
+    private Block rebuild(FlowNode node) {
+        List<? extends BlockStartNode> enclosingBlocks = node.getEnclosingBlocks();
+        Block parent = null;
+        for (int i = enclosingBlocks.size() - 1; i >= 0; i--) {
+            BlockStartNode start = enclosingBlocks.get(i);
+            Block parentBlock = parent;
+            parent = blocks.computeIfAbsent(start.getId(), id -> newBlock(start, parentBlock));
+        }
+        return parent;
+    }
+
+    static final class Block {
+        private final String id;
+
+        @CheckForNull
+        private final Block parent;
+
+        private final boolean stage;
+        private final boolean branch;
+
+        @CheckForNull
+        private final String stageId;
+
+        @CheckForNull
+        private final String branchId;
+
+        // Innermost stage or parallel branch
+        @CheckForNull
+        private final String segmentId;
+
+        @CheckForNull
+        private final String workspaceNode;
+
+        private Block(
+                String id,
+                @CheckForNull Block parent,
+                boolean stage,
+                boolean branch,
+                @CheckForNull String workspaceNode) {
+            this.id = id;
+            this.parent = parent;
+            this.stage = stage;
+            this.branch = branch;
+            this.stageId = stage ? id : (parent != null ? parent.stageId : null);
+            this.branchId = branch ? id : (parent != null ? parent.branchId : null);
+            this.segmentId = stage || branch ? id : (parent != null ? parent.segmentId : null);
+            this.workspaceNode = workspaceNode;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        boolean isStage() {
+            return stage;
+        }
+
+        /**
+         * @return the ID of the innermost stage start node, this block included
+         */
+        @CheckForNull
+        String getStageId() {
+            return stageId;
+        }
+
+        boolean isBranch() {
+            return branch;
+        }
+
+        /**
+         * @return the ID of the innermost parallel branch start node, this block included
+         */
+        @CheckForNull
+        String getBranchId() {
+            return branchId;
+        }
+
+        /**
+         * @return the ID of the innermost stage or parallel branch start node enclosing this block,
+         *     this block excluded
+         */
+        @CheckForNull
+        String getParentSegmentId() {
+            return parent != null ? parent.segmentId : null;
+        }
+
+        /**
+         * @return the agent name of the innermost allocated {@code node { }} block, this block included
+         */
+        @CheckForNull
+        String getWorkspaceNode() {
+            return workspaceNode;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package io.jenkins.plugins.mergify;
+
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+/**
+ * A new flow graph head, as received by {@link Listener#onNewHead(FlowNode)}.
+ *
+ * <p>The timestamp is read on the receiving thread, from the {@link TimingAction} of the node when it
+ * has one, so spans keep accurate times even when the event is processed later by
+ * {@link GraphEventDispatcher}. The worker only reads the actions set when the node was created and
+ * never adds any, see {@link Listener#addAction}.
+ */
+record FlowNodeEvent(FlowNode node, long timestampMillis) {
+
+    static FlowNodeEvent of(FlowNode node) {
+        long startTime = TimingAction.getStartTime(node);
+        return new FlowNodeEvent(node, startTime > 0 ? startTime : System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,114 @@
+package io.jenkins.plugins.mergify;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves flow graph events off the CPS VM thread.
+ *
+ * <p>Events go on a bounded lock-free queue drained in order by a single daemon worker. When the
+ * queue is full, the submitting thread waits for room rather than dropping the event, since a lost
+ * stage start or end would corrupt the span tree.
+ */
+final class GraphEventDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(GraphEventDispatcher.class.getName());
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Queue<FlowNodeEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final int capacity;
+    private final Consumer<FlowNodeEvent> handler;
+    private volatile Thread worker;
+    private volatile boolean idle;
+
+    GraphEventDispatcher(int capacity, Consumer<FlowNodeEvent> handler) {
+        this.capacity = capacity;
+        this.handler = handler;
+    }
+
+    void submit(FlowNodeEvent event) {
+        ensureWorker();
+        boolean warned = false;
+        while (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            if (!warned) {
+                LOGGER.warning("Graph event queue is full (" + capacity + "), waiting for the worker");
+                warned = true;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        queue.offer(event);
+        submitted.incrementAndGet();
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Waits until every event submitted before this call has been processed.
+     *
+     * @return {@code true} if the queue caught up before the timeout
+     */
+    boolean awaitProcessed(long timeout, TimeUnit unit) {
+        long target = submitted.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (processed.get() < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        return true;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    private void ensureWorker() {
+        if (worker != null) {
+            return;
+        }
+        synchronized (this) {
+            if (worker != null) {
+                return;
+            }
+            Thread thread = new Thread(this::drain, "Mergify graph event dispatcher");
+            thread.setDaemon(true);
+            thread.start();
+            worker = thread;
+        }
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            FlowNodeEvent event = queue.poll();
+            if (event == null) {
+                idle = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            size.decrementAndGet();
+            try {
+                handler.accept(event);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to process flow node " + event.node(), e);
+            } finally {
+                processed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.jenkins.plugins.mergify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Gzip stream compressing into {@link ChunkedOutput} chunks.
+ *
+ * <p>The deflaters are pooled: their native buffers are allocated once instead of for each export.
+ */
+final class GzipChunkedOutput extends OutputStream {
+    private static final int DEFLATE_BUFFER_BYTES = 8 * 1024;
+    private static final int MAX_POOLED_DEFLATERS = Runtime.getRuntime().availableProcessors();
+    private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledDeflaters = new AtomicInteger();
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final ChunkedOutput chunks;
+    private final Deflater deflater;
+    private final DeflaterOutputStream deflated;
+    private final CRC32 crc = new CRC32();
+    private long rawBytes;
+    private boolean released;
+
+    GzipChunkedOutput(int level, int chunkBytes) throws IOException {
+        this.chunks = new ChunkedOutput(chunkBytes);
+        this.deflater = borrowDeflater(level);
+        this.deflated = new DeflaterOutputStream(chunks, deflater, DEFLATE_BUFFER_BYTES);
+        chunks.write(HEADER);
+    }
+
+    private static Deflater borrowDeflater(int level) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.setLevel(level);
+        }
+        return deflater;
+    }
+
+    private void releaseDeflater() {
+        if (released) {
+            return;
+        }
+        released = true;
+        deflater.reset();
+        if (pooledDeflaters.incrementAndGet() <= MAX_POOLED_DEFLATERS) {
+            deflaters.add(deflater);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        crc.update(b, off, len);
+        rawBytes += len;
+        deflated.write(b, off, len);
+    }
+
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Completes the gzip stream.
+     *
+     * @return the compressed chunks, all full but the last one
+     */
+    List<byte[]> finish() throws IOException {
+        try {
+            deflated.finish();
+        } finally {
+            releaseDeflater();
+        }
+        writeIntLE((int) crc.getValue());
+        writeIntLE((int) rawBytes);
+        return chunks.toList();
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        chunks.write(new byte[] {(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)});
+    }
+
+    // Returns the deflater to the pool if the stream was not finished, e.g. on an encoding error
+    @Override
+    public void close() {
+        releaseDeflater();
+    }
+}
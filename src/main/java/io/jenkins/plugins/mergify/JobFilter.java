@@ -0,0 +1,79 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides once per run whether it is traced, from the job patterns of {@link MergifyConfiguration}.
+ *
+ * <p>The decision of a run is taken when it starts and kept until it is finalized or deleted, so
+ * that changing the patterns does not stop or start tracing runs in the middle.
+ */
+final class JobFilter {
+    private static final JobFilter INSTANCE = new JobFilter();
+
+    // Run externalizable ID -> traced
+    private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+    private volatile JobNameTrie patterns;
+
+    static JobFilter get() {
+        return INSTANCE;
+    }
+
+    private JobNameTrie getPatterns() {
+        JobNameTrie trie = patterns;
+        if (trie == null) {
+            MergifyConfiguration config = MergifyConfiguration.get();
+            trie = config != null
+                    ? JobNameTrie.compile(config.getIncludedJobs(), config.getExcludedJobs())
+                    : JobNameTrie.compile(null, null);
+            patterns = trie;
+        }
+        return trie;
+    }
+
+    // Called when the configuration is saved, applies to the runs not decided yet
+    void reconfigure() {
+        patterns = null;
+    }
+
+    /**
+     * Decides whether a run that starts is traced. The decision is kept until the run is forgotten.
+     */
+    boolean decide(@NonNull Run<?, ?> run) {
+        return decisions.computeIfAbsent(run.getExternalizableId(), id -> isIncluded(run));
+    }
+
+    // Pins the decision of a run, e.g. for benchmarks
+    void decide(@NonNull Run<?, ?> run, boolean traced) {
+        decisions.put(run.getExternalizableId(), traced);
+    }
+
+    /**
+     * Runs that were not decided, e.g. started before a restart or already forgotten while their last
+     * events come in, are matched against the current patterns without keeping the decision.
+     */
+    boolean isTraced(@NonNull Run<?, ?> run) {
+        Boolean traced = decisions.get(run.getExternalizableId());
+        return traced != null ? traced : isIncluded(run);
+    }
+
+    private boolean isIncluded(Run<?, ?> run) {
+        return getPatterns().isIncluded(run.getParent().getFullName());
+    }
+
+    void forget(@NonNull Run<?, ?> run) {
+        decisions.remove(run.getExternalizableId());
+    }
+
+    int size() {
+        return decisions.size();
+    }
+
+    void clear() {
+        decisions.clear();
+        patterns = null;
+    }
+}
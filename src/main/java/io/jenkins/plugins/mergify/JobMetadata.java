@@ -4,6 +4,8 @@ import hudson.EnvVars;
 import hudson.model.*;
 import hudson.plugins.git.*;
 import hudson.plugins.git.util.BuildData;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanContext;
 import java.util.*;
@@ -18,6 +20,10 @@ import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 
 public class JobMetadata implements Action {
     private static final Logger LOGGER = Logger.getLogger(JobMetadata.class.getName());
+    private static final Pattern TRAILING_SLASH = Pattern.compile("/$");
+    private static final Pattern GIT_SUFFIX = Pattern.compile("\\.git$");
+    private static final Pattern REPOSITORY_NAME = Pattern.compile("[:/]([^:/]+)/([^:/]+?)(?:\\.git)?$");
+    private static final Pattern REMOTE_PREFIX = Pattern.compile("^[^/]+/");
     private final String pipelineName;
     private final String pipelineId;
     private final String pipelineUrl;
@@ -29,6 +35,10 @@ public class JobMetadata implements Action {
     private Map<String, String> repositoryURLs;
     private volatile String jobTraceId;
     private volatile String jobSpanId;
+    // Attributes shared by every span of the run, built once the SCM info is known
+    private transient volatile Attributes commonAttributes;
+    // Dashboard link rendered with the run actions, built once for the inputs it records
+    private transient volatile DashboardLink dashboardLink;
 
     public JobMetadata(Run<?, ?> run) {
         Job<?, ?> job = run.getParent();
@@ -65,11 +75,11 @@ public class JobMetadata implements Action {
         }
 
         // Remove .git suffix if present
-        url = url.replaceAll("/$", "").replaceAll("\\.git$", "");
+        url = TRAILING_SLASH.matcher(url).replaceAll("");
+        url = GIT_SUFFIX.matcher(url).replaceAll("");
 
         // Match GitHub organization and repository name
-        Pattern pattern = Pattern.compile("[:/]([^:/]+)/([^:/]+?)(?:\\.git)?$");
-        Matcher matcher = pattern.matcher(url);
+        Matcher matcher = REPOSITORY_NAME.matcher(url);
 
         if (matcher.find()) {
             return matcher.group(1) + "/" + matcher.group(2);
@@ -81,6 +91,23 @@ public class JobMetadata implements Action {
     public void setSpanContext(SpanContext spanContext) {
         this.jobTraceId = spanContext.getTraceId();
         this.jobSpanId = spanContext.getSpanId();
+        resolvePendingSpans();
+    }
+
+    String getJobTraceId() {
+        return jobTraceId;
+    }
+
+    // Hands the common attributes to the spans of this run parked by the exporter
+    private void resolvePendingSpans() {
+        String traceId = jobTraceId;
+        if (traceId == null) {
+            return;
+        }
+        Attributes attributes = getCommonAttributes();
+        if (attributes != null) {
+            TracerService.resolvePendingSpans(traceId, attributes);
+        }
     }
 
     @Override
@@ -95,28 +122,53 @@ public class JobMetadata implements Action {
 
     @Override
     public String getUrlName() {
+        String dashboardUrl = MergifyConfiguration.get().getDashboardUrl();
+        String repositoryURL = null;
+        for (String url : repositoryURLs.values()) {
+            repositoryURL = url;
+            break;
+        }
+        String traceId = jobTraceId;
+        String spanId = jobSpanId;
+
+        DashboardLink link = dashboardLink;
+        if (link == null || !link.isFor(dashboardUrl, repositoryURL, traceId, spanId)) {
+            link = new DashboardLink(
+                    dashboardUrl,
+                    repositoryURL,
+                    traceId,
+                    spanId,
+                    dashboardUrl + buildDashboardPath(repositoryURL, traceId, spanId));
+            dashboardLink = link;
+        }
+        return link.urlName();
+    }
+
+    private String buildDashboardPath(String repositoryURL, String traceId, String spanId) {
         String login = null;
         String repository = null;
-        for (Map.Entry<String, String> entry : repositoryURLs.entrySet()) {
-            String url = entry.getValue();
-            String repositoryName = getRepositoryName(url);
-            if (repositoryName != null) {
-                String[] parts = repositoryName.split("/", 2);
-                login = parts[0];
-                repository = parts[1];
-            }
-            break;
+        String repositoryName = getRepositoryName(repositoryURL);
+        if (repositoryName != null) {
+            String[] parts = repositoryName.split("/", 2);
+            login = parts[0];
+            repository = parts[1];
         }
-        String url = MergifyConfiguration.get().getDashboardUrl();
-        String path;
         try {
-            path = DashboardUrlBuilder.buildUrl(
-                    login, repository, this.pipelineName, this.pipelineName, this.jobTraceId, this.jobSpanId);
+            return DashboardUrlBuilder.buildUrl(login, repository, pipelineName, pipelineName, traceId, spanId);
         } catch (Exception e) {
             LOGGER.warning("Failed to build dashboard URL: " + e.getMessage());
-            path = "/ci-insights/jobs";
+            return "/ci-insights/jobs";
+        }
+    }
+
+    private record DashboardLink(
+            String dashboardUrl, String repositoryURL, String traceId, String spanId, String urlName) {
+        boolean isFor(String dashboardUrl, String repositoryURL, String traceId, String spanId) {
+            return Objects.equals(this.dashboardUrl, dashboardUrl)
+                    && Objects.equals(this.repositoryURL, repositoryURL)
+                    && Objects.equals(this.traceId, traceId)
+                    && Objects.equals(this.spanId, spanId);
         }
-        return url + path;
     }
 
     // Ensure safe deserialization
@@ -131,64 +183,84 @@ public class JobMetadata implements Action {
         setCommonSpanAttributes(span, null);
     }
 
+    // Spans ended before the SCM data is known only get their runner attributes here, the
+    // common ones are added by the exporter once the run resolves them (see PendingSpanBuffer).
     public void setCommonSpanAttributes(Span span, RunnerInfo runnerOverride) {
+        Attributes attributes = getCommonAttributes();
+        if (attributes != null) {
+            span.setAllAttributes(attributes);
+        }
+
+        RunnerInfo effectiveRunner = runnerOverride != null ? runnerOverride : runnerInfo;
+        if (effectiveRunner != null) {
+            span.setAllAttributes(effectiveRunner.getAttributes());
+        }
+    }
+
+    Attributes getCommonAttributes() {
+        Attributes attributes = commonAttributes;
+        if (attributes != null) {
+            return attributes;
+        }
+
         if (repositoryURLs.isEmpty()) {
-            LOGGER.warning("repositoryURLs is empty, skipping span");
-            return;
+            LOGGER.fine("repositoryURLs is empty, common attributes not known yet");
+            return null;
         }
 
         if (SCMCheckoutBranch == null) {
-            LOGGER.warning("SCMCheckoutBranch is null, skipping span");
-            return;
+            LOGGER.fine("SCMCheckoutBranch is null, common attributes not known yet");
+            return null;
         }
         if (SCMCheckoutCommit == null) {
-            LOGGER.warning("SCMCheckoutCommit is null, skipping span");
-            return;
+            LOGGER.fine("SCMCheckoutCommit is null, common attributes not known yet");
+            return null;
         }
 
-        span.setAttribute(TraceUtils.CICD_PROVIDER_NAME, "jenkins");
-        span.setAttribute(TraceUtils.CICD_PIPELINE_NAME, pipelineName);
-        span.setAttribute(TraceUtils.CICD_PIPELINE_RUN_ID, pipelineId);
-        // deprecated, but kept for compatibility
-        span.setAttribute(TraceUtils.CICD_PIPELINE_ID, pipelineId);
-        span.setAttribute(TraceUtils.CICD_PIPELINE_CREATED_AT, pipelineCreatedAt);
-        span.setAttribute(TraceUtils.CICD_PIPELINE_URL, Jenkins.get().getRootUrl() + pipelineUrl);
-        span.setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME, RunnerInfo.DEFAULT_GROUP_NAME);
-        if (SCMCheckoutBranch != null) {
-            span.setAttribute(TraceUtils.VCS_REF_HEAD_NAME, SCMCheckoutBranch.replaceFirst("^[^/]+/", ""));
-        } else {
-            span.setAttribute(TraceUtils.VCS_REF_HEAD_NAME, "<unknown>");
-        }
-        span.setAttribute(TraceUtils.VCS_REF_HEAD_REVISION, SCMCheckoutCommit);
+        attributes = buildCommonAttributes();
+        commonAttributes = attributes;
+        return attributes;
+    }
 
-        RunnerInfo effectiveRunner = runnerOverride != null ? runnerOverride : runnerInfo;
-        if (effectiveRunner != null) {
-            span.setAttribute(TraceUtils.CICD_PIPELINE_LABELS, effectiveRunner.getLabels());
-            span.setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_NAME, effectiveRunner.getName());
-            if (effectiveRunner.getId() != null) {
-                span.setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_ID, effectiveRunner.getId());
-            }
-        }
+    private Attributes buildCommonAttributes() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        String rootUrl = jenkins != null ? jenkins.getRootUrl() : null;
+
+        AttributesBuilder builder = Attributes.builder()
+                .put(TraceUtils.CICD_PROVIDER_NAME, "jenkins")
+                .put(TraceUtils.CICD_PIPELINE_NAME, pipelineName)
+                .put(TraceUtils.CICD_PIPELINE_RUN_ID, pipelineId)
+                // deprecated, but kept for compatibility
+                .put(TraceUtils.CICD_PIPELINE_ID, pipelineId)
+                .put(TraceUtils.CICD_PIPELINE_CREATED_AT, pipelineCreatedAt)
+                .put(TraceUtils.CICD_PIPELINE_URL, rootUrl + pipelineUrl)
+                .put(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME, RunnerInfo.DEFAULT_GROUP_NAME)
+                .put(TraceUtils.VCS_REF_HEAD_NAME, REMOTE_PREFIX.matcher(SCMCheckoutBranch).replaceFirst(""))
+                .put(TraceUtils.VCS_REF_HEAD_REVISION, SCMCheckoutCommit);
 
         for (Map.Entry<String, String> entry : repositoryURLs.entrySet()) {
             String name = entry.getKey();
             String url = entry.getValue();
             LOGGER.fine("Using Repository URL from " + name);
-            span.setAttribute(TraceUtils.VCS_REPOSITORY_URL_FULL, url);
-            span.setAttribute(TraceUtils.VCS_REPOSITORY_URL_SOURCE, name);
+            builder.put(TraceUtils.VCS_REPOSITORY_URL_FULL, url);
+            builder.put(TraceUtils.VCS_REPOSITORY_URL_SOURCE, name);
             String repositoryName = getRepositoryName(url);
             if (repositoryName != null) {
-                span.setAttribute(TraceUtils.VCS_REPOSITORY_NAME, repositoryName);
+                builder.put(TraceUtils.VCS_REPOSITORY_NAME, repositoryName);
             }
             break;
         }
+        return builder.build();
     }
 
     public void addRepositoryURL(String name, String url) {
         if (url == null || url.isEmpty()) {
             return;
         }
-        repositoryURLs.put(name, url);
+        if (!url.equals(repositoryURLs.put(name, url))) {
+            commonAttributes = null;
+            resolvePendingSpans();
+        }
     }
 
     public void setSCMCheckoutInfoFromEnvs(EnvVars envVars) {
@@ -198,6 +270,8 @@ public class JobMetadata implements Action {
         }
         SCMCheckoutCommit = envVars.get("GIT_COMMIT");
         SCMCheckoutBranch = envVars.get("GIT_BRANCH");
+        commonAttributes = null;
+        resolvePendingSpans();
     }
 
     public void setSCMCheckoutInfoFromBuildData(Run<?, ?> run) {
@@ -221,6 +295,8 @@ public class JobMetadata implements Action {
                 SCMCheckoutBranch = branch.getName();
                 break;
             }
+            commonAttributes = null;
+            resolvePendingSpans();
         }
     }
 
@@ -237,5 +313,7 @@ public class JobMetadata implements Action {
         List<BranchSpec> branches = gitSCM.getBranches();
         SCMCheckoutBranch = branches.isEmpty() ? null : branches.get(0).getName();
         SCMCheckoutCommit = client.revParse("HEAD").name();
+        commonAttributes = null;
+        resolvePendingSpans();
     }
 }
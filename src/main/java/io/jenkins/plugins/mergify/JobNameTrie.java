@@ -0,0 +1,106 @@
+package io.jenkins.plugins.mergify;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Include and exclude patterns on full job names, like {@code folder/job}, compiled into a
+ * character trie so that a name is matched in one pass whatever the number of patterns.
+ *
+ * <p>A pattern matches the job of that name and every job below it when it is a folder. A trailing
+ * {@code *} matches any characters, e.g. {@code infra/nightly-*}. The longest matching pattern
+ * decides, an exclude winning over an include of the same pattern. Names no pattern matches are
+ * included unless there are include patterns.
+ */
+final class JobNameTrie {
+    private static final JobNameTrie EMPTY = new JobNameTrie();
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>(4);
+        // Decision when the name ends here or continues with a folder separator
+        Boolean exact;
+        // Decision whatever follows, from a pattern ending with *
+        Boolean prefix;
+    }
+
+    private final Node root = new Node();
+    private boolean hasIncludes;
+
+    private JobNameTrie() {}
+
+    /**
+     * @param includes patterns separated by new lines, blank lines are ignored
+     * @param excludes patterns separated by new lines, blank lines are ignored
+     */
+    static JobNameTrie compile(String includes, String excludes) {
+        if (isBlank(includes) && isBlank(excludes)) {
+            return EMPTY;
+        }
+        JobNameTrie trie = new JobNameTrie();
+        trie.hasIncludes = trie.addAll(includes, true);
+        trie.addAll(excludes, false);
+        return trie;
+    }
+
+    private static boolean isBlank(String patterns) {
+        return patterns == null || patterns.isBlank();
+    }
+
+    private boolean addAll(String patterns, boolean included) {
+        boolean added = false;
+        if (patterns == null) {
+            return false;
+        }
+        for (String line : patterns.split("\\R")) {
+            String pattern = line.trim();
+            if (!pattern.isEmpty()) {
+                add(pattern, included);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    private void add(String pattern, boolean included) {
+        boolean wildcard = pattern.endsWith("*");
+        String prefix = wildcard ? pattern.substring(0, pattern.length() - 1) : pattern;
+        if (!wildcard && prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+        }
+        if (wildcard) {
+            node.prefix = merge(node.prefix, included);
+        } else {
+            node.exact = merge(node.exact, included);
+        }
+    }
+
+    private static Boolean merge(Boolean current, boolean included) {
+        return current == null ? included : current && included;
+    }
+
+    boolean isIncluded(String fullName) {
+        Boolean decision = null;
+        Node node = root;
+        int length = fullName.length();
+        for (int i = 0; ; i++) {
+            if (node.prefix != null) {
+                decision = node.prefix;
+            }
+            if (node.exact != null && (i == length || fullName.charAt(i) == '/')) {
+                decision = node.exact;
+            }
+            if (i == length) {
+                break;
+            }
+            node = node.children.get(fullName.charAt(i));
+            if (node == null) {
+                break;
+            }
+        }
+        return decision != null ? decision : !hasIncludes;
+    }
+}
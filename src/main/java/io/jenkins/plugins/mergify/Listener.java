@@ -5,42 +5,83 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.*;
 import hudson.model.listeners.RunListener;
+import hudson.model.queue.QueueListener;
 import hudson.plugins.git.GitSCM;
+import hudson.remoting.Channel;
 import hudson.scm.SCM;
 import hudson.scm.SCMRevisionState;
+import hudson.slaves.Cloud;
+import hudson.slaves.CloudProvisioningListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.NodeProvisioner;
 import hudson.tasks.BuildStep;
 import hudson.tasks.Builder;
 import hudson.tasks.Publisher;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.plugins.gitclient.GitClient;
+import org.jenkinsci.plugins.workflow.actions.ArgumentsAction;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
 import org.jenkinsci.plugins.workflow.actions.LabelAction;
-import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepEndNode;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepStartNode;
+import org.jenkinsci.plugins.workflow.cps.steps.ParallelStep;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.flow.GraphListener;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
 import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.support.steps.ExecutorStep;
 import org.jenkinsci.plugins.workflow.support.steps.StageStep;
 
 @Extension
 public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Synchronous {
     private static final Logger LOGGER = Logger.getLogger(Listener.class.getName());
-    private static final Map<FlowNode, Span> stageSpans = new ConcurrentHashMap<>();
-    private static final Map<BuildStep, Span> stepSpans = new ConcurrentHashMap<>();
-    private static final Map<Run<?, ?>, Span> buildSpans = new ConcurrentHashMap<>();
-    private static final Map<FlowNode, RunnerInfo> stageRunners = new ConcurrentHashMap<>();
+
+    // Process flow graph heads on a dedicated worker instead of the CPS VM thread.
+    static final boolean ASYNC = SystemProperties.getBoolean(Listener.class.getName() + ".async", false);
+    private static final int ASYNC_QUEUE_CAPACITY =
+            SystemProperties.getInteger(Listener.class.getName() + ".asyncQueueCapacity", 100_000);
+    private static final long FINALIZE_DRAIN_TIMEOUT_SECONDS = 30;
+    private static final long HEAD_TIMING_WINDOW = 1000;
+
+    private static final GraphEventDispatcher dispatcher =
+            new GraphEventDispatcher(ASYNC_QUEUE_CAPACITY, Listener::processNewHead);
+
+    // Actions computed by the async worker, added to their node by the CPS VM thread of its execution
+    private static final Map<FlowExecution, ConcurrentLinkedQueue<PendingAction>> pendingActions =
+            new ConcurrentHashMap<>();
+
+    // Time spent in onNewHead on the calling (CPS VM) thread since startup, see getHeadCount and getHeadNanos
+    private static final AtomicLong headCount = new AtomicLong();
+    private static final LongAdder headNanos = new LongAdder();
+
+    private record PendingAction(FlowNode node, Action action) {}
 
     @CheckForNull
     private static WorkflowRun getWorkflowRun(@NonNull FlowNode flowNode) {
@@ -59,7 +100,7 @@ public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Sy
         return null;
     }
 
-    private static boolean isStageStartNode(FlowNode node) {
+    static boolean isStageStartNode(FlowNode node) {
         if (!(node instanceof StepStartNode stepStartNode)) {
             return false;
         }
@@ -67,12 +108,18 @@ public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Sy
         return nodeDescriptor instanceof StageStep.DescriptorImpl && node.getAction(LabelAction.class) != null;
     }
 
-    private static boolean isStageEndNode(FlowNode node) {
-        if (!(node instanceof StepEndNode)) {
-            return false;
-        }
-        StepStartNode stepStartNode = ((StepEndNode) node).getStartNode();
-        return isStageStartNode(stepStartNode);
+    static boolean isBranchStartNode(FlowNode node) {
+        return node instanceof StepStartNode stepStartNode
+                && stepStartNode.isBody()
+                && stepStartNode.getDescriptor() instanceof ParallelStep.DescriptorImpl
+                && node.getAction(ThreadNameAction.class) != null;
+    }
+
+    // Block steps like dir or withCredentials, but not their body nor stages which have their own spans
+    static boolean isStepStartNode(FlowNode node) {
+        return node instanceof StepStartNode stepStartNode
+                && !stepStartNode.isBody()
+                && !(stepStartNode.getDescriptor() instanceof StageStep.DescriptorImpl);
     }
 
     static boolean isValidBuildStep(BuildStep step) {
@@ -85,106 +132,657 @@ public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Sy
         return "Stage(" + stepStartNode.getDisplayFunctionName() + ")";
     }
 
+    private static String getBranchName(FlowNode node) {
+        return "Branch(" + node.getAction(ThreadNameAction.class).getThreadName() + ")";
+    }
+
+    private static String getStepName(FlowNode node) {
+        return "Step(" + node.getDisplayFunctionName() + ")";
+    }
+
+    // Waits for the async worker to catch up, e.g. before reading state it maintains.
+    static void awaitPendingHeads(long timeout, TimeUnit unit) {
+        if (ASYNC && !dispatcher.awaitProcessed(timeout, unit)) {
+            LOGGER.warning("Timed out waiting for " + dispatcher.size() + " pending flow graph events");
+        }
+    }
+
+    static long getHeadCount() {
+        return headCount.get();
+    }
+
+    static long getHeadNanos() {
+        return headNanos.sum();
+    }
+
     // Pipeline stage Listener
     @Override
     public void onNewHead(FlowNode node) {
+        long start = System.nanoTime();
+        FlowNodeEvent event = FlowNodeEvent.of(node);
+        if (ASYNC) {
+            addPendingActions(node.getExecution());
+            reserveStageTraceparent(node);
+            dispatcher.submit(event);
+        } else {
+            processNewHead(event);
+        }
+        recordHeadTime(System.nanoTime() - start);
+    }
+
+    // The steps of a stage may ask for its traceparent before the async worker starts its span: the
+    // span ID is reserved on the calling thread, and used by startStageSpan
+    private static void reserveStageTraceparent(FlowNode node) {
+        if (!isStageStartNode(node)) {
+            return;
+        }
+        WorkflowRun run = getWorkflowRun(node);
+        if (run == null || !JobFilter.get().isTraced(run)) {
+            return;
+        }
+        SpanRegistry.RunSpans spans = SpanRegistry.get().getRun(run);
+        Span jobSpan = spans != null ? spans.getJobSpan() : null;
+        if (jobSpan == null) {
+            return;
+        }
+        SpanContext spanContext = SpanContext.create(
+                jobSpan.getSpanContext().getTraceId(),
+                ReservedSpanIds.reserveSpanId(),
+                TraceFlags.getSampled(),
+                TraceState.getDefault());
+        spans.putStageTraceparent(node.getId(), new TraceparentAction(spanContext).getTraceParent());
+    }
 
-        if (isStageStartNode(node)) {
-            startStageSpan(node);
-        } else if (isStageEndNode(node)) {
-            endStageSpan((StepEndNode) node);
+    private static void recordHeadTime(long nanos) {
+        headNanos.add(nanos);
+        long count = headCount.incrementAndGet();
+        if (count % HEAD_TIMING_WINDOW == 0) {
+            LOGGER.fine("onNewHead (async=" + ASYNC + "): " + getHeadNanos() / count
+                    + "ns per flow node on the calling thread, " + count + " flow nodes");
+        }
+    }
+
+    // Adding an action saves the node, which the async worker leaves to the CPS VM thread of its
+    // execution: the action is added there on the next head.
+    private static void addAction(FlowNode node, Action action) {
+        if (ASYNC) {
+            pendingActions
+                    .computeIfAbsent(node.getExecution(), execution -> new ConcurrentLinkedQueue<>())
+                    .add(new PendingAction(node, action));
         } else {
-            // Forward traceparent from parent nodes if not already set
-            if (node.getAction(TraceparentAction.class) == null) {
-                for (FlowNode parent : node.getParents()) {
-                    TraceparentAction parentSpan = parent.getAction(TraceparentAction.class);
-                    if (parentSpan != null) {
-                        node.addAction(parentSpan);
-                        break;
-                    }
+            node.addAction(action);
+        }
+    }
+
+    private static void addPendingActions(@CheckForNull FlowExecution execution) {
+        if (execution == null || pendingActions.isEmpty()) {
+            return;
+        }
+        ConcurrentLinkedQueue<PendingAction> actions = pendingActions.get(execution);
+        if (actions == null) {
+            return;
+        }
+        for (PendingAction pending = actions.poll(); pending != null; pending = actions.poll()) {
+            pending.node().addAction(pending.action());
+        }
+    }
+
+    // Once the execution is over, the actions left are added by the finalizing thread
+    private static void flushPendingActions(Run<?, ?> run) {
+        if (run instanceof WorkflowRun workflowRun && !pendingActions.isEmpty()) {
+            FlowExecution execution = workflowRun.getExecution();
+            addPendingActions(execution);
+            if (execution != null) {
+                pendingActions.remove(execution);
+            }
+        }
+    }
+
+    static void processNewHead(FlowNodeEvent event) {
+        FlowNode node = event.node();
+        WorkflowRun run = getWorkflowRun(node);
+        if (run == null || !JobFilter.get().isTraced(run)) {
+            return;
+        }
+        SpanRegistry.RunSpans spans = SpanRegistry.get().forRun(run);
+        FlowGraphIndex graphIndex = spans.getGraphIndex();
+        boolean tracingSteps = spans.isTracingSteps();
+        if (tracingSteps) {
+            endAtomicSteps(run, spans, node, event.timestampMillis());
+        }
+
+        if (node instanceof BlockStartNode blockStartNode) {
+            FlowGraphIndex.Block block = graphIndex.open(blockStartNode);
+            if (node instanceof StepStartNode stepStartNode
+                    && stepStartNode.getDescriptor() instanceof ExecutorStep.DescriptorImpl) {
+                trackExecutorAllocation(run, spans, stepStartNode, block, event.timestampMillis());
+            }
+            if (block.isStage()) {
+                startStageSpan(run, spans, (StepStartNode) node, block, event.timestampMillis());
+            } else if (block.isBranch()) {
+                startBranchSpan(run, spans, node, block, event.timestampMillis());
+            } else if (tracingSteps && isStepStartNode(node)) {
+                startStep(spans, node, block, false, event.timestampMillis());
+            }
+        } else if (node instanceof BlockEndNode<?> blockEndNode) {
+            FlowGraphIndex.Block block = graphIndex.close(blockEndNode);
+            if (block != null && block.isStage()) {
+                endStageSpan(run, spans, (StepEndNode) node, block, event.timestampMillis());
+            } else if (block != null && block.isBranch()) {
+                endBranchSpan(run, spans, blockEndNode, block, event.timestampMillis());
+            } else if (tracingSteps) {
+                SpanRegistry.PendingStep step = spans.removePendingStep(blockEndNode.getStartNode().getId());
+                if (step != null) {
+                    boolean error = node.getAction(ErrorAction.class) != null;
+                    endStep(run, spans, step, () -> error, event.timestampMillis());
                 }
             }
+        } else if (tracingSteps && node instanceof StepAtomNode) {
+            startStep(spans, node, graphIndex.enclosing(node), true, event.timestampMillis());
         }
 
-        trackRunnerInfo(node);
+        trackRunnerInfo(run, spans, graphIndex.enclosing(node));
     }
 
-    // When a pipeline node runs inside a `node { }` block (ExecutorStep), the enclosing
-    // block carries a WorkspaceAction with the agent name. Capture it into the
-    // JobMetadata (first-wins for job-level) and the stageRunners map (first-wins per stage).
-    private static void trackRunnerInfo(FlowNode node) {
-        WorkspaceAction workspace = null;
-        for (BlockStartNode block : node.getEnclosingBlocks()) {
-            WorkspaceAction action = block.getAction(WorkspaceAction.class);
-            if (action != null) {
-                workspace = action;
-                break;
+    private static void startStep(
+            SpanRegistry.RunSpans spans,
+            FlowNode node,
+            @CheckForNull FlowGraphIndex.Block block,
+            boolean atomic,
+            long startTimeMillis) {
+        spans.putPendingStep(new SpanRegistry.PendingStep(
+                getStepName(node),
+                node.getId(),
+                block != null ? block.getStageId() : null,
+                block != null ? block.getWorkspaceNode() : null,
+                startTimeMillis,
+                atomic));
+    }
+
+    // An atomic step ends when the next node, its child, becomes a head
+    private static void endAtomicSteps(
+            WorkflowRun run, SpanRegistry.RunSpans spans, FlowNode node, long endTimeMillis) {
+        for (String parentId : node.getParentIds()) {
+            SpanRegistry.PendingStep step = spans.removePendingAtomicStep(parentId);
+            if (step != null) {
+                endStep(run, spans, step, () -> hasError(node, parentId), endTimeMillis);
             }
         }
-        if (workspace == null) {
+    }
+
+    private static boolean hasError(FlowNode child, String nodeId) {
+        try {
+            FlowNode node = child.getExecution().getNode(nodeId);
+            return node != null && node.getAction(ErrorAction.class) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Steps shorter than the minimum duration are only counted on their stage, the others are
+    // exported as children of their stage, or of the job outside of any stage.
+    private static void endStep(
+            WorkflowRun run,
+            SpanRegistry.RunSpans spans,
+            SpanRegistry.PendingStep step,
+            BooleanSupplier error,
+            long endTimeMillis) {
+        long durationMillis = Math.max(0, endTimeMillis - step.startTimeMillis());
+        if (durationMillis < spans.getStepSpanMinDurationMillis()) {
+            spans.stepStats(step.stageId()).record(durationMillis);
+            return;
+        }
+
+        Span parent = step.stageId() != null ? spans.getStageSpan(step.stageId()) : null;
+        Span span = TraceUtils.startJobStepSpan(
+                run, parent != null ? parent : spans.getJobSpan(), step.name(), step.nodeId(), step.startTimeMillis());
+        RunnerInfo runner = step.workspaceNode() != null ? RunnerInfo.fromNodeName(step.workspaceNode()) : null;
+        TraceUtils.endJobStepSpan(span, run, error.getAsBoolean(), runner, endTimeMillis);
+    }
+
+    // A node block waits for its executor from its start to the start of its body
+    private static void trackExecutorAllocation(
+            WorkflowRun run,
+            SpanRegistry.RunSpans spans,
+            StepStartNode stepStartNode,
+            FlowGraphIndex.Block block,
+            long timestampMillis) {
+        if (!stepStartNode.isBody()) {
+            Object label = ArgumentsAction.getFilteredArguments(stepStartNode).get("label");
+            String labelExpression = label != null ? Util.fixEmptyAndTrim(label.toString()) : null;
+            spans.putPendingAllocation(
+                    stepStartNode.getId(), new SpanRegistry.PendingAllocation(labelExpression, timestampMillis));
+            return;
+        }
+        String allocationId = stepStartNode.getEnclosingId();
+        SpanRegistry.PendingAllocation allocation =
+                allocationId != null ? spans.removePendingAllocation(allocationId) : null;
+        if (allocation == null) {
             return;
         }
+        QueueWaits.Wait wait = QueueWaits.get().removeExecutorRequest(run, allocationId);
+        Span stageSpan = block.getStageId() != null ? spans.getStageSpan(block.getStageId()) : null;
+        String workspaceNode = block.getWorkspaceNode();
+        emitQueueSpan(
+                run,
+                stageSpan != null ? stageSpan : spans.getJobSpan(),
+                stepStartNode.getId(),
+                allocation.label(),
+                wait,
+                allocation.startTimeMillis(),
+                timestampMillis,
+                workspaceNode != null ? RunnerInfo.fromNodeName(workspaceNode) : null);
+    }
 
-        RunnerInfo info = RunnerInfo.fromNodeName(workspace.getNode());
+    // Time spent in the queue waiting for an executor, wait being null if the queue item was not followed
+    private static void emitQueueSpan(
+            Run<?, ?> run,
+            @CheckForNull Span parent,
+            String id,
+            @CheckForNull String label,
+            @CheckForNull QueueWaits.Wait wait,
+            long startTimeMillis,
+            long endTimeMillis,
+            @CheckForNull RunnerInfo runner) {
+        String name = "Queue(" + (label != null ? label : "any") + ")";
+        Span span = TraceUtils.startJobQueueSpan(run, parent, name, id, startTimeMillis);
+        if (span == null) {
+            return;
+        }
+        if (wait != null) {
+            wait.applyTo(span);
+        } else if (label != null) {
+            span.setAttribute(QueueWaits.QUEUE_LABEL, label);
+        }
+        AgentProvisioning.Timeline timeline =
+                runner != null ? AgentProvisioning.get().claim(runner.getName()) : null;
+        if (timeline != null) {
+            emitProvisioningSpans(run, span, timeline, runner);
+        }
+        TraceUtils.endJobStepSpan(span, run, false, runner, Math.max(startTimeMillis, endTimeMillis));
+        LOGGER.fine("Queue wait: " + name + " " + (endTimeMillis - startTimeMillis) + "ms");
+    }
 
+    // Cloud agent phases, children of the queue wait the agent was provisioned for
+    private static void emitProvisioningSpans(
+            Run<?, ?> run, Span queueSpan, AgentProvisioning.Timeline timeline, RunnerInfo runner) {
+        String nodeName = timeline.nodeName();
+        long launchedMillis = timeline.connectingMillis() > 0 ? timeline.connectingMillis() : timeline.onlineMillis();
+        emitProvisioningSpan(
+                run,
+                queueSpan,
+                "Provision(" + timeline.cloudName() + ")",
+                timeline,
+                timeline.requestedMillis(),
+                timeline.provisionedMillis(),
+                runner);
+        emitProvisioningSpan(
+                run,
+                queueSpan,
+                "Launch(" + nodeName + ")",
+                timeline,
+                timeline.launchingMillis() > 0 ? timeline.launchingMillis() : timeline.provisionedMillis(),
+                launchedMillis,
+                runner);
+        if (timeline.connectingMillis() > 0) {
+            emitProvisioningSpan(
+                    run,
+                    queueSpan,
+                    "Connect(" + nodeName + ")",
+                    timeline,
+                    timeline.connectingMillis(),
+                    timeline.onlineMillis(),
+                    runner);
+        }
+    }
+
+    private static void emitProvisioningSpan(
+            Run<?, ?> run,
+            Span queueSpan,
+            String name,
+            AgentProvisioning.Timeline timeline,
+            long startTimeMillis,
+            long endTimeMillis,
+            RunnerInfo runner) {
+        Span span = TraceUtils.startJobQueueSpan(run, queueSpan, name, timeline.nodeName(), startTimeMillis);
+        if (span == null) {
+            return;
+        }
+        if (timeline.cloudName() != null) {
+            span.setAttribute(AgentProvisioning.PROVISIONING_CLOUD, timeline.cloudName());
+        }
+        if (timeline.label() != null) {
+            span.setAttribute(AgentProvisioning.PROVISIONING_LABEL, timeline.label());
+        }
+        TraceUtils.endJobStepSpan(span, run, false, runner, Math.max(startTimeMillis, endTimeMillis));
+    }
+
+    // Resolves the traceparent of the innermost stage enclosing the node. Only stage start
+    // nodes persist a TraceparentAction, other nodes resolve it from the in-memory index.
+    @CheckForNull
+    static String findTraceparent(@NonNull FlowNode node) {
+        TraceparentAction action = node.getAction(TraceparentAction.class);
+        if (action != null) {
+            return action.getTraceParent();
+        }
         WorkflowRun run = getWorkflowRun(node);
-        if (run != null) {
-            TraceUtils.getJobMetadata(run).upgradeRunnerInfo(info);
+        if (run == null || !JobFilter.get().isTraced(run)) {
+            return null;
         }
 
-        for (BlockStartNode enclosing : node.getEnclosingBlocks()) {
-            if (isStageStartNode(enclosing)) {
-                stageRunners.putIfAbsent(enclosing, info);
-                break;
+        SpanRegistry.RunSpans spans = SpanRegistry.get().getRun(run);
+        if (spans == null || ASYNC) {
+            // Not indexed, e.g. after a restart, or not indexed yet by the async worker: use the
+            // traceparent reserved for the enclosing stage, or the action persisted on its start node
+            for (BlockStartNode block : node.getEnclosingBlocks()) {
+                if (isStageStartNode(block)) {
+                    String traceparent = spans != null ? spans.getStageTraceparent(block.getId()) : null;
+                    if (traceparent != null) {
+                        return traceparent;
+                    }
+                    action = block.getAction(TraceparentAction.class);
+                    return action != null ? action.getTraceParent() : null;
+                }
             }
+            return null;
+        }
+
+        FlowGraphIndex.Block enclosing = spans.getGraphIndex().enclosing(node);
+        String stageId = enclosing != null ? enclosing.getStageId() : null;
+        if (stageId == null) {
+            return null;
+        }
+        String traceparent = spans.getStageTraceparent(stageId);
+        if (traceparent != null) {
+            return traceparent;
+        }
+        // Stage started before a restart: use the action persisted on its start node
+        try {
+            FlowNode stage = node.getExecution().getNode(stageId);
+            action = stage != null ? stage.getAction(TraceparentAction.class) : null;
+        } catch (IOException e) {
+            action = null;
+        }
+        return action != null ? action.getTraceParent() : null;
+    }
+
+    // When a pipeline node runs inside a `node { }` block (ExecutorStep), the enclosing
+    // block carries a WorkspaceAction with the agent name. Capture it into the
+    // JobMetadata (first-wins for job-level) and the run's stage runners (first-wins per stage).
+    private static void trackRunnerInfo(
+            WorkflowRun run, SpanRegistry.RunSpans spans, @CheckForNull FlowGraphIndex.Block enclosing) {
+        if (enclosing == null) {
+            return;
+        }
+        String workspaceNode = enclosing.getWorkspaceNode();
+        if (workspaceNode == null) {
+            return;
+        }
+
+        RunnerInfo info = RunnerInfo.fromNodeName(workspaceNode);
+        TraceUtils.getJobMetadata(run).upgradeRunnerInfo(info);
+
+        String stageId = enclosing.getStageId();
+        if (stageId != null) {
+            spans.putStageRunnerIfAbsent(stageId, info);
         }
     }
 
     // Pipeline and Freestyle Job listener
     public void onStarted(Run<?, ?> run, @NonNull TaskListener listener) {
+        QueueWaits.Wait wait = QueueWaits.get().removeBuild(run.getQueueId());
+        if (!JobFilter.get().decide(run)) {
+            LOGGER.fine("build " + run.getFullDisplayName() + " started, not traced");
+            return;
+        }
         LOGGER.fine("build " + run.getFullDisplayName() + " started");
         Span span = TraceUtils.startJobSpan(run);
         if (span != null) {
-            buildSpans.put(run, span);
+            SpanRegistry.RunSpans spans = SpanRegistry.get().forRun(run);
+            spans.setJobSpan(span);
+            if (wait != null) {
+                // Starts before the job span, which starts with the build
+                emitQueueSpan(
+                        run,
+                        span,
+                        "queue",
+                        wait.label(),
+                        wait,
+                        wait.enteredMillis(),
+                        wait.leftMillis(),
+                        RunnerInfo.fromExecutor(run.getExecutor()));
+            }
+            MergifyConfiguration config = MergifyConfiguration.get();
+            if (run instanceof WorkflowRun && config != null && config.isStepSpans()) {
+                spans.setStepSpanMinDurationMillis(config.getStepSpanMinDurationMillis());
+            }
         }
     }
 
     // Pipeline and Freestyle Job listener
     public void onFinalized(Run<?, ?> run) {
+        boolean traced = JobFilter.get().isTraced(run);
+        JobFilter.get().forget(run);
+        if (!traced) {
+            return;
+        }
         LOGGER.fine("build " + run.getFullDisplayName() + " completed");
-        Span span = buildSpans.remove(run);
-        TraceUtils.endJobSpan(span, run);
+        if (run instanceof WorkflowRun) {
+            awaitPendingHeads(FINALIZE_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            flushPendingActions(run);
+        }
+        SpanRegistry.RunSpans spans = SpanRegistry.get().remove(run);
+        StepStats stepStats = spans != null ? spans.removeStepStats(null) : null;
+        if (stepStats != null) {
+            stepStats.applyTo(spans.getJobSpan());
+        }
+        if (spans != null && spans.getJobSpan() != null) {
+            List<String> criticalPath = spans.getCriticalPath().finish(System.currentTimeMillis());
+            if (!criticalPath.isEmpty()) {
+                spans.getJobSpan().setAttribute(CriticalPath.CRITICAL_PATH_SPAN_IDS, criticalPath);
+            }
+        }
+        TraceUtils.endJobSpan(spans != null ? spans.getJobSpan() : null, run);
+
+        JobMetadata jobMetadata = run.getAction(JobMetadata.class);
+        if (jobMetadata != null && jobMetadata.getJobTraceId() != null) {
+            TracerService.forgetPendingSpans(jobMetadata.getJobTraceId());
+        }
     }
 
-    private void startStageSpan(FlowNode node) {
-        WorkflowRun run = getWorkflowRun(node);
+    @Override
+    public void onDeleted(Run<?, ?> run) {
+        JobFilter.get().forget(run);
+        if (run instanceof WorkflowRun workflowRun && workflowRun.getExecution() != null) {
+            pendingActions.remove(workflowRun.getExecution());
+        }
+        SpanRegistry.RunSpans spans = SpanRegistry.get().remove(run);
+        if (spans != null) {
+            LOGGER.fine("build " + run.getFullDisplayName() + " deleted with open spans");
+            spans.endAll(run);
+        }
+    }
 
-        StepStartNode stepStartNode = (StepStartNode) node;
+    // The span of the innermost stage or parallel branch enclosing a block, else the job span, so that
+    // the span tree matches the one of the critical path
+    private static Span getParentSpan(SpanRegistry.RunSpans spans, FlowGraphIndex.Block block) {
+        String segmentId = block.getParentSegmentId();
+        Span span = null;
+        if (segmentId != null) {
+            span = spans.getStageSpan(segmentId);
+            if (span == null) {
+                span = spans.getBranchSpan(segmentId);
+            }
+        }
+        return span != null ? span : spans.getJobSpan();
+    }
+
+    private static void startStageSpan(
+            WorkflowRun run,
+            SpanRegistry.RunSpans spans,
+            StepStartNode stepStartNode,
+            FlowGraphIndex.Block block,
+            long startTimeMillis) {
         String stageName = getStageName(stepStartNode);
-        Span parentSpan = buildSpans.get(run);
-        Span span = TraceUtils.startJobStepSpan(run, parentSpan, stageName, stepStartNode.getId());
+        Span parent = getParentSpan(spans, block);
+        String reserved = spans.getStageTraceparent(stepStartNode.getId());
+        Supplier<Span> start =
+                () -> TraceUtils.startJobStepSpan(run, parent, stageName, stepStartNode.getId(), startTimeMillis);
+        Span span = reserved != null ? ReservedSpanIds.withTraceparent(reserved, start) : start.get();
         if (span != null) {
-            SpanContext spanContext = span.getSpanContext();
-            stepStartNode.addAction(new TraceparentAction(spanContext));
-            stageSpans.put(node, span);
+            TraceparentAction traceparent = new TraceparentAction(span.getSpanContext());
+            addAction(stepStartNode, traceparent);
+            spans.putStageSpan(stepStartNode.getId(), span);
+            spans.putStageTraceparent(stepStartNode.getId(), traceparent.getTraceParent());
+        } else {
+            spans.removeStageTraceparent(stepStartNode.getId());
         }
 
         LOGGER.fine("Stage started: " + stageName);
     }
 
-    private void endStageSpan(StepEndNode stepEndNode) {
+    private static void endStageSpan(
+            WorkflowRun run,
+            SpanRegistry.RunSpans spans,
+            StepEndNode stepEndNode,
+            FlowGraphIndex.Block block,
+            long endTimeMillis) {
         StepStartNode stepStartNode = stepEndNode.getStartNode();
-        Span span = stageSpans.remove(stepStartNode);
-
-        WorkflowRun run = getWorkflowRun(stepStartNode);
+        Span span = spans.removeStageSpan(stepStartNode.getId());
+        spans.removeStageTraceparent(stepStartNode.getId());
         ErrorAction error = stepEndNode.getError();
-        RunnerInfo stageRunner = stageRunners.remove(stepStartNode);
-        TraceUtils.endJobStepSpan(span, run, error != null, stageRunner);
+        RunnerInfo stageRunner = spans.removeStageRunner(stepStartNode.getId());
+        StepStats stepStats = spans.removeStepStats(stepStartNode.getId());
+        if (stepStats != null) {
+            stepStats.applyTo(span);
+        }
+        if (span != null) {
+            TraceUtils.endJobStepSpan(span, run, error != null, stageRunner, endTimeMillis);
+            addToCriticalPath(spans, stepStartNode, block, span, endTimeMillis);
+        }
 
         String stageName = getStageName(stepStartNode);
         LOGGER.fine("Stage stopped: " + stageName);
     }
 
+    private static void startBranchSpan(
+            WorkflowRun run,
+            SpanRegistry.RunSpans spans,
+            FlowNode node,
+            FlowGraphIndex.Block block,
+            long startTimeMillis) {
+        String branchName = getBranchName(node);
+        Span span = TraceUtils.startJobStepSpan(
+                run, getParentSpan(spans, block), branchName, node.getId(), startTimeMillis);
+        if (span != null) {
+            spans.putBranchSpan(node.getId(), span);
+        }
+
+        LOGGER.fine("Branch started: " + branchName);
+    }
+
+    private static void endBranchSpan(
+            WorkflowRun run,
+            SpanRegistry.RunSpans spans,
+            BlockEndNode<?> blockEndNode,
+            FlowGraphIndex.Block block,
+            long endTimeMillis) {
+        BlockStartNode start = blockEndNode.getStartNode();
+        Span span = spans.removeBranchSpan(start.getId());
+        if (span != null) {
+            boolean error = blockEndNode.getAction(ErrorAction.class) != null;
+            TraceUtils.endJobStepSpan(span, run, error, null, endTimeMillis);
+            addToCriticalPath(spans, start, block, span, endTimeMillis);
+        }
+
+        LOGGER.fine("Branch stopped: " + getBranchName(start));
+    }
+
+    // The critical path of the run is computed from its closed stages and branches when it is finalized
+    private static void addToCriticalPath(
+            SpanRegistry.RunSpans spans, FlowNode start, FlowGraphIndex.Block block, Span span, long endTimeMillis) {
+        long startTimeMillis = TimingAction.getStartTime(start);
+        if (startTimeMillis <= 0) {
+            startTimeMillis = endTimeMillis;
+        }
+        spans.getCriticalPath()
+                .add(
+                        start.getId(),
+                        block.getParentSegmentId(),
+                        span.getSpanContext().getSpanId(),
+                        startTimeMillis,
+                        endTimeMillis);
+    }
+
+    // Follows the queue items to emit the queue wait spans of builds and node blocks
+    @Extension
+    public static class QueueItemListener extends QueueListener {
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            QueueWaits.get().onEnter(wi, QueueWaits.State.WAITING, System.currentTimeMillis());
+        }
+
+        @Override
+        public void onEnterBlocked(Queue.BlockedItem bi) {
+            QueueWaits.get().onEnter(bi, QueueWaits.State.BLOCKED, System.currentTimeMillis());
+        }
+
+        @Override
+        public void onEnterBuildable(Queue.BuildableItem bi) {
+            QueueWaits.get().onEnter(bi, QueueWaits.State.BUILDABLE, System.currentTimeMillis());
+        }
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            QueueWaits.get().onLeft(li, System.currentTimeMillis());
+        }
+    }
+
+    // Follows the agents launched by clouds to break down the queue waits they served
+    @Extension
+    public static class CloudListener extends CloudProvisioningListener {
+        @Override
+        public void onStarted(Cloud cloud, Label label, Collection<NodeProvisioner.PlannedNode> plannedNodes) {
+            long now = System.currentTimeMillis();
+            for (NodeProvisioner.PlannedNode plannedNode : plannedNodes) {
+                AgentProvisioning.get().onRequested(cloud, label, plannedNode, now);
+            }
+        }
+
+        @Override
+        public void onComplete(NodeProvisioner.PlannedNode plannedNode, Node node) {
+            AgentProvisioning.get().onProvisioned(plannedNode, node.getNodeName(), System.currentTimeMillis());
+        }
+
+        @Override
+        public void onFailure(NodeProvisioner.PlannedNode plannedNode, Throwable t) {
+            AgentProvisioning.get().onFailed(plannedNode);
+        }
+
+        @Override
+        public void onRollback(NodeProvisioner.PlannedNode plannedNode, Node node, Throwable t) {
+            AgentProvisioning.get().onRolledBack(plannedNode, node.getNodeName());
+        }
+    }
+
+    @Extension
+    public static class AgentComputerListener extends ComputerListener {
+        @Override
+        public void preLaunch(Computer c, TaskListener taskListener) {
+            AgentProvisioning.get().onLaunching(c.getName(), System.currentTimeMillis());
+        }
+
+        @Override
+        public void preOnline(Computer c, Channel channel, FilePath root, TaskListener listener) {
+            AgentProvisioning.get().onConnecting(c.getName(), System.currentTimeMillis());
+        }
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            AgentProvisioning.get().onOnline(c.getName(), System.currentTimeMillis());
+        }
+    }
+
     // Freestyle Job step Listener
     @Extension
     public static class BuildStepListener extends hudson.model.BuildStepListener {
@@ -198,16 +796,19 @@ public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Sy
 
         @Override
         public void started(AbstractBuild build, BuildStep step, BuildListener listener) {
+            if (!JobFilter.get().isTraced(build)) {
+                return;
+            }
             if (!isValidBuildStep(step)) {
                 LOGGER.fine("Step ignored: " + step);
                 return;
             }
 
             String stepName = getStepName(step);
-            Span parentSpan = buildSpans.get(build);
-            Span span = TraceUtils.startJobStepSpan(build, parentSpan, stepName, step.toString());
+            SpanRegistry.RunSpans spans = SpanRegistry.get().forRun(build);
+            Span span = TraceUtils.startJobStepSpan(build, spans.getJobSpan(), stepName, step.toString());
             if (span != null) {
-                stepSpans.put(step, span);
+                spans.putStepSpan(SpanRegistry.stepKey(step), span);
                 SpanContext spanContext = span.getSpanContext();
                 build.addOrReplaceAction(new TraceparentAction(spanContext));
             }
@@ -217,11 +818,14 @@ public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Sy
 
         @Override
         public void finished(AbstractBuild build, BuildStep step, BuildListener listener, boolean canContinue) {
+            if (!JobFilter.get().isTraced(build)) {
+                return;
+            }
             if (!isValidBuildStep(step)) {
                 LOGGER.fine("Step ignored: " + step);
                 return;
             }
-            Span span = stepSpans.get(step);
+            Span span = SpanRegistry.get().forRun(build).removeStepSpan(SpanRegistry.stepKey(step));
 
             // Check if step failed by looking at build result
             // canContinue=false means step failed and build cannot continue
@@ -255,6 +859,9 @@ public class Listener extends RunListener<Run<?, ?>> implements GraphListener.Sy
                 File changelogFile,
                 SCMRevisionState pollingBaseline)
                 throws IOException, InterruptedException {
+            if (!JobFilter.get().isTraced(run)) {
+                return;
+            }
             LOGGER.fine("SCM checkout hooks!");
 
             JobMetadata jobSpanMetadata = TraceUtils.getJobMetadata(run);
@@ -9,7 +9,10 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import javax.servlet.ServletException;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
@@ -22,8 +25,35 @@ import org.kohsuke.stapler.verb.POST;
 @Extension
 public class MergifyConfiguration extends GlobalConfiguration implements MergifyConfigurationProvider {
 
+    static final int DEFAULT_HTTP_POOL_SIZE = 4;
+    static final int DEFAULT_HTTP_MAX_IN_FLIGHT = 64;
+    static final int DEFAULT_BATCH_MAX_QUEUE_SIZE = 20480;
+    static final int DEFAULT_BATCH_MAX_EXPORT_BATCH_SIZE = 4096;
+    static final long DEFAULT_BATCH_SCHEDULE_DELAY_MILLIS = 5000;
+    static final long DEFAULT_BATCH_EXPORTER_TIMEOUT_MILLIS = 60000;
+    static final PayloadCompression DEFAULT_PAYLOAD_COMPRESSION = PayloadCompression.GZIP;
+    static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    static final long DEFAULT_STEP_SPAN_MIN_DURATION_MILLIS = 1000;
+
     private List<OrgApiKey> orgApiKeys;
     private String url;
+    private int httpPoolSize = DEFAULT_HTTP_POOL_SIZE;
+    private int httpMaxInFlight = DEFAULT_HTTP_MAX_IN_FLIGHT;
+    private int batchMaxQueueSize = DEFAULT_BATCH_MAX_QUEUE_SIZE;
+    private int batchMaxExportBatchSize = DEFAULT_BATCH_MAX_EXPORT_BATCH_SIZE;
+    private long batchScheduleDelayMillis = DEFAULT_BATCH_SCHEDULE_DELAY_MILLIS;
+    private long batchExporterTimeoutMillis = DEFAULT_BATCH_EXPORTER_TIMEOUT_MILLIS;
+    private boolean adaptiveBatching;
+    private PayloadCompression payloadCompression = DEFAULT_PAYLOAD_COMPRESSION;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private List<SpanFilterRule> spanFilterRules;
+    private String includedJobs;
+    private String excludedJobs;
+    private boolean stepSpans;
+    private long stepSpanMinDurationMillis = DEFAULT_STEP_SPAN_MIN_DURATION_MILLIS;
+
+    // Lowercase organization name -> decrypted API key, replaced as a whole when the keys change
+    private transient volatile Map<String, String> apiKeyIndex;
 
     public MergifyConfiguration() {
         load();
@@ -33,6 +63,10 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
         if (url == null) {
             url = "https://api.mergify.com";
         }
+        if (spanFilterRules == null) {
+            spanFilterRules = new ArrayList<>();
+        }
+        indexApiKeys();
     }
 
     public static MergifyConfiguration get() {
@@ -40,16 +74,32 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
     }
 
     public String getApiKeyForOrg(String organizationName) {
+        if (organizationName == null) {
+            return null;
+        }
+        Map<String, String> index = apiKeyIndex;
+        if (index == null) {
+            index = indexApiKeys();
+        }
+        return index.get(organizationName.toLowerCase(Locale.ROOT));
+    }
+
+    // GitHub organization names are case-insensitive, the first key configured for a name wins
+    private Map<String, String> indexApiKeys() {
+        Map<String, String> index = new HashMap<>();
         List<OrgApiKey> orgApiKeys = getOrgApiKeys();
         if (orgApiKeys != null) {
             for (OrgApiKey entry : orgApiKeys) {
-                if (entry.getOrganizationName().equals(organizationName)) {
-                    // Return decrypted API key
-                    return entry.getApiKey().getPlainText();
+                if (entry.getOrganizationName() != null && entry.getApiKey() != null) {
+                    index.putIfAbsent(
+                            entry.getOrganizationName().toLowerCase(Locale.ROOT),
+                            entry.getApiKey().getPlainText());
                 }
             }
         }
-        return null;
+        Map<String, String> snapshot = Map.copyOf(index);
+        apiKeyIndex = snapshot;
+        return snapshot;
     }
 
     @Exported
@@ -59,6 +109,7 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
 
     public void setOrgApiKeys(List<OrgApiKey> orgApiKeys) {
         this.orgApiKeys = orgApiKeys;
+        indexApiKeys();
         save();
     }
 
@@ -72,6 +123,151 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
         save();
     }
 
+    @Exported
+    public int getHttpPoolSize() {
+        return httpPoolSize;
+    }
+
+    public void setHttpPoolSize(int httpPoolSize) {
+        this.httpPoolSize = httpPoolSize > 0 ? httpPoolSize : DEFAULT_HTTP_POOL_SIZE;
+        save();
+    }
+
+    @Exported
+    public int getHttpMaxInFlight() {
+        return httpMaxInFlight;
+    }
+
+    public void setHttpMaxInFlight(int httpMaxInFlight) {
+        this.httpMaxInFlight = httpMaxInFlight > 0 ? httpMaxInFlight : DEFAULT_HTTP_MAX_IN_FLIGHT;
+        save();
+    }
+
+    @Exported
+    public int getBatchMaxQueueSize() {
+        return batchMaxQueueSize;
+    }
+
+    public void setBatchMaxQueueSize(int batchMaxQueueSize) {
+        this.batchMaxQueueSize = batchMaxQueueSize > 0 ? batchMaxQueueSize : DEFAULT_BATCH_MAX_QUEUE_SIZE;
+        save();
+    }
+
+    @Exported
+    public int getBatchMaxExportBatchSize() {
+        return batchMaxExportBatchSize;
+    }
+
+    public void setBatchMaxExportBatchSize(int batchMaxExportBatchSize) {
+        this.batchMaxExportBatchSize =
+                batchMaxExportBatchSize > 0 ? batchMaxExportBatchSize : DEFAULT_BATCH_MAX_EXPORT_BATCH_SIZE;
+        save();
+    }
+
+    @Exported
+    public long getBatchScheduleDelayMillis() {
+        return batchScheduleDelayMillis;
+    }
+
+    public void setBatchScheduleDelayMillis(long batchScheduleDelayMillis) {
+        this.batchScheduleDelayMillis =
+                batchScheduleDelayMillis > 0 ? batchScheduleDelayMillis : DEFAULT_BATCH_SCHEDULE_DELAY_MILLIS;
+        save();
+    }
+
+    @Exported
+    public long getBatchExporterTimeoutMillis() {
+        return batchExporterTimeoutMillis;
+    }
+
+    public void setBatchExporterTimeoutMillis(long batchExporterTimeoutMillis) {
+        this.batchExporterTimeoutMillis =
+                batchExporterTimeoutMillis > 0 ? batchExporterTimeoutMillis : DEFAULT_BATCH_EXPORTER_TIMEOUT_MILLIS;
+        save();
+    }
+
+    @Exported
+    public boolean isAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+
+    public void setAdaptiveBatching(boolean adaptiveBatching) {
+        this.adaptiveBatching = adaptiveBatching;
+        save();
+    }
+
+    @Exported
+    public PayloadCompression getPayloadCompression() {
+        return payloadCompression != null ? payloadCompression : DEFAULT_PAYLOAD_COMPRESSION;
+    }
+
+    public void setPayloadCompression(PayloadCompression payloadCompression) {
+        this.payloadCompression = payloadCompression;
+        save();
+    }
+
+    @Exported
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel =
+                compressionLevel >= 1 && compressionLevel <= 9 ? compressionLevel : DEFAULT_COMPRESSION_LEVEL;
+        save();
+    }
+
+    @Exported
+    public List<SpanFilterRule> getSpanFilterRules() {
+        return spanFilterRules;
+    }
+
+    public void setSpanFilterRules(List<SpanFilterRule> spanFilterRules) {
+        this.spanFilterRules = spanFilterRules != null ? new ArrayList<>(spanFilterRules) : new ArrayList<>();
+        save();
+    }
+
+    @Exported
+    public String getIncludedJobs() {
+        return includedJobs;
+    }
+
+    public void setIncludedJobs(String includedJobs) {
+        this.includedJobs = Util.fixEmptyAndTrim(includedJobs);
+        save();
+    }
+
+    @Exported
+    public String getExcludedJobs() {
+        return excludedJobs;
+    }
+
+    public void setExcludedJobs(String excludedJobs) {
+        this.excludedJobs = Util.fixEmptyAndTrim(excludedJobs);
+        save();
+    }
+
+    @Exported
+    public boolean isStepSpans() {
+        return stepSpans;
+    }
+
+    public void setStepSpans(boolean stepSpans) {
+        this.stepSpans = stepSpans;
+        save();
+    }
+
+    @Exported
+    public long getStepSpanMinDurationMillis() {
+        return stepSpanMinDurationMillis;
+    }
+
+    public void setStepSpanMinDurationMillis(long stepSpanMinDurationMillis) {
+        this.stepSpanMinDurationMillis =
+                stepSpanMinDurationMillis >= 0 ? stepSpanMinDurationMillis : DEFAULT_STEP_SPAN_MIN_DURATION_MILLIS;
+        save();
+    }
+
     @Exported
     public String getDashboardUrl() {
         if (url != null && url.equals("https://api.mergify.com")) {
@@ -82,8 +278,16 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
 
     @Override
     public boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
-        orgApiKeys = null; // form binding might omit empty lists
-        req.bindJSON(this, json);
+        // Every setter saves, the configuration is written and applied once when committed
+        try (BulkChange bc = new BulkChange(this)) {
+            orgApiKeys = null; // form binding might omit empty lists
+            spanFilterRules = new ArrayList<>();
+            req.bindJSON(this, json);
+            indexApiKeys();
+            bc.commit();
+        } catch (IOException e) {
+            throw new FormException("Failed to save the Mergify configuration", e, "url");
+        }
         return true;
     }
 
@@ -92,7 +296,9 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
         if (BulkChange.contains(this)) return;
 
         super.save();
+        JobFilter.get().reconfigure();
         TracerService.clearMergifySpanExporters();
+        TracerService.applyBatchTuning(this);
     }
 
     @SuppressWarnings("lgtm[jenkins/no-permission-check]")
@@ -125,6 +331,63 @@ public class MergifyConfiguration extends GlobalConfiguration implements Mergify
         return (HttpURLConnection) url.openConnection();
     }
 
+    @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+    @POST
+    public FormValidation doCheckHttpPoolSize(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+    @POST
+    public FormValidation doCheckHttpMaxInFlight(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+    @POST
+    public FormValidation doCheckBatchMaxExportBatchSize(
+            @QueryParameter String value, @QueryParameter String batchMaxQueueSize) {
+        FormValidation validation = FormValidation.validatePositiveInteger(value);
+        if (validation.kind != FormValidation.Kind.OK) {
+            return validation;
+        }
+        try {
+            if (Integer.parseInt(value) > Integer.parseInt(batchMaxQueueSize)) {
+                return FormValidation.warning("Batches can't be larger than the queue, the queue size will be used.");
+            }
+        } catch (NumberFormatException e) {
+            // The queue size is validated on its own
+        }
+        return FormValidation.ok();
+    }
+
+    @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+    @POST
+    public FormValidation doCheckStepSpanMinDurationMillis(@QueryParameter String value) {
+        try {
+            if (Long.parseLong(value) < 0) {
+                return FormValidation.error("The duration cannot be negative.");
+            }
+        } catch (NumberFormatException e) {
+            return FormValidation.error("Not a number");
+        }
+        return FormValidation.ok();
+    }
+
+    @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+    @POST
+    public FormValidation doCheckCompressionLevel(@QueryParameter String value) {
+        try {
+            int level = Integer.parseInt(value);
+            if (level < 1 || level > 9) {
+                return FormValidation.error("The gzip level goes from 1, the fastest, to 9, the smallest.");
+            }
+        } catch (NumberFormatException e) {
+            return FormValidation.error("Not a number");
+        }
+        return FormValidation.ok();
+    }
+
     @POST
     public FormValidation doTestConnection(@QueryParameter("url") final String value)
             throws IOException, ServletException {
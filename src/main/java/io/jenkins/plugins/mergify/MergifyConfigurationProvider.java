@@ -1,8 +1,50 @@
 package io.jenkins.plugins.mergify;
 
+import java.util.List;
+
 // Mainly for testing purposes
 public interface MergifyConfigurationProvider {
     String getUrl();
 
     String getApiKeyForOrg(String org);
+
+    default int getHttpPoolSize() {
+        return MergifyConfiguration.DEFAULT_HTTP_POOL_SIZE;
+    }
+
+    default int getHttpMaxInFlight() {
+        return MergifyConfiguration.DEFAULT_HTTP_MAX_IN_FLIGHT;
+    }
+
+    default int getBatchMaxQueueSize() {
+        return MergifyConfiguration.DEFAULT_BATCH_MAX_QUEUE_SIZE;
+    }
+
+    default int getBatchMaxExportBatchSize() {
+        return MergifyConfiguration.DEFAULT_BATCH_MAX_EXPORT_BATCH_SIZE;
+    }
+
+    default long getBatchScheduleDelayMillis() {
+        return MergifyConfiguration.DEFAULT_BATCH_SCHEDULE_DELAY_MILLIS;
+    }
+
+    default long getBatchExporterTimeoutMillis() {
+        return MergifyConfiguration.DEFAULT_BATCH_EXPORTER_TIMEOUT_MILLIS;
+    }
+
+    default boolean isAdaptiveBatching() {
+        return false;
+    }
+
+    default PayloadCompression getPayloadCompression() {
+        return MergifyConfiguration.DEFAULT_PAYLOAD_COMPRESSION;
+    }
+
+    default int getCompressionLevel() {
+        return MergifyConfiguration.DEFAULT_COMPRESSION_LEVEL;
+    }
+
+    default List<SpanFilterRule> getSpanFilterRules() {
+        return List.of();
+    }
 }
@@ -0,0 +1,184 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * HTTP client shared by the exporters of every repository.
+ *
+ * <p>All repositories are sent to the same API host, so a single client keeps the connections
+ * alive and multiplexes the requests over HTTP/2 when the server supports it. The client runs on
+ * {@code poolSize} threads, and at most {@code maxInFlight} requests are pending, the others
+ * waiting in order for a slot. Cancelling the status returned for a request aborts it, or drops it
+ * if it is still waiting.
+ */
+final class MergifyHttpSender {
+    private static final Logger LOGGER = Logger.getLogger(MergifyHttpSender.class.getName());
+
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final int poolSize;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private volatile boolean closing;
+
+    MergifyHttpSender(int poolSize, int maxInFlight) {
+        this.poolSize = Math.max(1, poolSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.executor = Executors.newFixedThreadPool(
+                this.poolSize, new NamingThreadFactory(new DaemonThreadFactory(), "Mergify HTTP sender"));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
+                .build();
+        this.permits = new Semaphore(this.maxInFlight);
+    }
+
+    /**
+     * Statuses worth retrying later, the others won't change by sending the payload again.
+     */
+    static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    boolean hasLimits(int poolSize, int maxInFlight) {
+        return this.poolSize == Math.max(1, poolSize) && this.maxInFlight == Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Posts a gzipped OTLP protobuf payload.
+     *
+     * @return the HTTP status of the response
+     */
+    CompletableFuture<Integer> send(URI endpoint, String token, byte[] payload) {
+        return send(endpoint, token, HttpRequest.BodyPublishers.ofByteArray(payload), "gzip");
+    }
+
+    /**
+     * Posts a payload split in chunks, written one after the other with the Content-Length of
+     * their total size.
+     *
+     * @param contentEncoding the compression of the payload, null if it is not compressed
+     */
+    CompletableFuture<Integer> send(URI endpoint, String token, List<byte[]> chunks, String contentEncoding) {
+        long length = 0;
+        for (byte[] chunk : chunks) {
+            length += chunk.length;
+        }
+        HttpRequest.BodyPublisher body =
+                HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofByteArrays(chunks), length);
+        return send(endpoint, token, body, contentEncoding);
+    }
+
+    private CompletableFuture<Integer> send(
+            URI endpoint, String token, HttpRequest.BodyPublisher body, String contentEncoding) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(endpoint)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/x-protobuf")
+                .POST(body);
+        if (contentEncoding != null) {
+            builder.header("Content-Encoding", contentEncoding);
+        }
+        HttpRequest request = builder.build();
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        waiting.add(() -> {
+            // Cancelled while waiting for a slot
+            if (status.isDone()) {
+                done();
+                return;
+            }
+            try {
+                CompletableFuture<HttpResponse<Void>> response = client.sendAsync(
+                                request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((received, error) -> {
+                            done();
+                            if (error != null) {
+                                status.completeExceptionally(error);
+                            } else {
+                                status.complete(received.statusCode());
+                            }
+                        });
+                status.whenComplete((code, error) -> {
+                    if (status.isCancelled()) {
+                        response.cancel(true);
+                    }
+                });
+            } catch (RuntimeException e) {
+                done();
+                status.completeExceptionally(e);
+            }
+        });
+        dispatch();
+        return status;
+    }
+
+    private void dispatch() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    private void done() {
+        permits.release();
+        dispatch();
+        if (closing && isIdle()) {
+            executor.shutdown();
+        }
+    }
+
+    private boolean isIdle() {
+        return waiting.isEmpty() && permits.availablePermits() == maxInFlight;
+    }
+
+    int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Releases the client threads once the pending requests are done.
+     */
+    void close() {
+        closing = true;
+        if (isIdle()) {
+            executor.shutdown();
+        }
+        LOGGER.fine("Closing HTTP sender, " + getInFlight() + " requests in flight");
+    }
+
+    @Override
+    public String toString() {
+        return "MergifyHttpSender{poolSize=" + poolSize + ", maxInFlight=" + maxInFlight + '}';
+    }
+}
@@ -0,0 +1,63 @@
+package io.jenkins.plugins.mergify;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import hudson.Extension;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import jenkins.metrics.api.MetricProvider;
+
+/**
+ * Publishes the listener, span registry and runner cache figures and the export pipeline totals to
+ * the metrics plugin when it is installed.
+ *
+ * <p>The metric set of a provider is fixed, so the per-repository figures are only served by
+ * {@link MergifyMetricsAction}.
+ */
+@Extension(optional = true)
+public class MergifyMetricProvider extends MetricProvider {
+    private static final String PREFIX = "mergify.";
+
+    @Override
+    public MetricSet getMetricSet() {
+        return () -> {
+            Map<String, Metric> metrics = new HashMap<>();
+            metrics.put(PREFIX + "processor.queue.size", processorGauge(TunableSpanProcessor::getQueueSize));
+            metrics.put(PREFIX + "processor.spans.ended", processorGauge(TunableSpanProcessor::getEndedSpanCount));
+            metrics.put(PREFIX + "processor.spans.dropped", processorGauge(TunableSpanProcessor::getDroppedSpanCount));
+            metrics.put(PREFIX + "listener.heads", (Gauge<Long>) Listener::getHeadCount);
+            metrics.put(PREFIX + "listener.heads.nanos", (Gauge<Long>) Listener::getHeadNanos);
+            metrics.put(PREFIX + "registry.runs", (Gauge<Integer>) () -> SpanRegistry.get().size());
+            metrics.put(PREFIX + "registry.spans.open", (Gauge<Integer>) () -> SpanRegistry.get().openSpanCount());
+            metrics.put(PREFIX + "runner_info.cache.size", (Gauge<Integer>) () -> RunnerInfoCache.get().size());
+            metrics.put(PREFIX + "runner_info.cache.hits", (Gauge<Long>) () -> RunnerInfoCache.get().getHitCount());
+            metrics.put(PREFIX + "runner_info.cache.misses", (Gauge<Long>) () -> RunnerInfoCache.get().getMissCount());
+            metrics.put(PREFIX + "spans.queued", totalGauge(ExportMetrics.RepositoryMetrics::getQueuedSpans));
+            metrics.put(PREFIX + "spans.exported", totalGauge(ExportMetrics.RepositoryMetrics::getExportedSpans));
+            metrics.put(PREFIX + "spans.failed", totalGauge(ExportMetrics.RepositoryMetrics::getFailedSpans));
+            metrics.put(PREFIX + "spans.spooled", totalGauge(ExportMetrics.RepositoryMetrics::getSpooledSpans));
+            metrics.put(PREFIX + "spans.dropped", totalGauge(ExportMetrics.RepositoryMetrics::getDroppedSpans));
+            metrics.put(
+                    PREFIX + "spans.dropped.unattributed",
+                    (Gauge<Long>) () -> ExportMetrics.get().getUnattributedDroppedSpans());
+            metrics.put(PREFIX + "spans.filtered.saved", totalGauge(ExportMetrics.RepositoryMetrics::getSavedSpans));
+            metrics.put(PREFIX + "export.retries", totalGauge(ExportMetrics.RepositoryMetrics::getRetries));
+            metrics.put(PREFIX + "bytes.raw", totalGauge(ExportMetrics.RepositoryMetrics::getRawBytes));
+            metrics.put(PREFIX + "bytes.compressed", totalGauge(ExportMetrics.RepositoryMetrics::getCompressedBytes));
+            return metrics;
+        };
+    }
+
+    private static Gauge<Long> totalGauge(ToLongFunction<ExportMetrics.RepositoryMetrics> counter) {
+        return () -> ExportMetrics.get().total(counter);
+    }
+
+    private static Gauge<Long> processorGauge(ToLongFunction<TunableSpanProcessor> counter) {
+        return () -> {
+            TunableSpanProcessor processor = TracerService.getSpanProcessor();
+            return processor != null ? counter.applyAsLong(processor) : 0L;
+        };
+    }
+}
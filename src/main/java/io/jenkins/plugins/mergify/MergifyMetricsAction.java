@@ -0,0 +1,40 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import java.io.IOException;
+import java.io.PrintWriter;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * Serves the export pipeline metrics as JSON on {@code /mergify-metrics/}.
+ */
+@Extension
+public class MergifyMetricsAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "mergify-metrics";
+    }
+
+    public void doIndex(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        try (PrintWriter writer = rsp.getWriter()) {
+            writer.write(TracerService.describeMetrics().toString(2));
+        }
+    }
+}
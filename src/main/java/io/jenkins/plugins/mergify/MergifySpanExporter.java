@@ -1,63 +1,130 @@
 package io.jenkins.plugins.mergify;
 
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.exporter.logging.LoggingSpanExporter;
-import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
 
 final class MergifySpanExporter implements SpanExporter {
     private static final Logger LOGGER = Logger.getLogger(MergifySpanExporter.class.getName());
+    private static final int PENDING_SPANS_CAPACITY =
+            SystemProperties.getInteger(MergifySpanExporter.class.getName() + ".pendingSpansCapacity", 10_000);
+    private static final int PENDING_SPANS_PER_TRACE =
+            SystemProperties.getInteger(MergifySpanExporter.class.getName() + ".pendingSpansPerTrace", 1_000);
+    private static final Duration PENDING_SPANS_MAX_AGE = Duration.ofMinutes(
+            SystemProperties.getInteger(MergifySpanExporter.class.getName() + ".pendingSpansMaxAgeMinutes", 15));
+    private static final Duration REPLAY_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration SHUTDOWN_DRAIN_TIMEOUT = Duration.ofSeconds(10);
     private static SpanExporter testExporter = null;
-    private final Map<String, OtlpHttpSpanExporter> spanExporters = new ConcurrentHashMap<>();
+    private final ExporterCache spanExporters = new ExporterCache(ExporterCache.MAX_SIZE);
+    private final Map<String, ExportLane> exportLanes = new ConcurrentHashMap<>();
     private final LoggingSpanExporter logExporter = LoggingSpanExporter.create();
     private final MergifyConfigurationProvider config;
+    private final PendingSpanBuffer pendingSpans = new PendingSpanBuffer(
+            PENDING_SPANS_CAPACITY, PENDING_SPANS_PER_TRACE, PENDING_SPANS_MAX_AGE, this::exportReleased);
+    private final SpanSpool spool;
+    private MergifyHttpSender sender;
+    // Compiled from the configured rules, rebuilt when the configuration changes
+    private volatile SpanFilter spanFilter;
 
     public MergifySpanExporter(MergifyConfigurationProvider config) {
+        this(config, null);
+    }
+
+    MergifySpanExporter(MergifyConfigurationProvider config, SpanSpool spool) {
         this.config = config;
+        this.spool = spool;
+    }
+
+    // Parked spans are released from build threads, don't export them there
+    private void exportReleased(Collection<SpanData> spans) {
+        Timer.get().submit(() -> {
+            CompletableResultCode result;
+            try {
+                result = export(spans);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to export " + spans.size() + " released spans", e);
+                return;
+            }
+            result.whenComplete(() -> {
+                if (!result.isSuccess()) {
+                    LOGGER.warning("Failed to export " + spans.size() + " released spans");
+                }
+            });
+        });
+    }
+
+    void resolvePendingSpans(String traceId, Attributes commonAttributes) {
+        pendingSpans.resolve(traceId, commonAttributes);
+    }
+
+    void abandonPendingSpans(String traceId) {
+        pendingSpans.abandon(traceId);
+    }
+
+    void forgetPendingSpans(String traceId) {
+        pendingSpans.forget(traceId);
+    }
+
+    void sweepPendingSpans() {
+        int swept = pendingSpans.sweep(System.currentTimeMillis());
+        LOGGER.fine("Pending spans: " + pendingSpans.size() + " parked, " + swept + " expired traces dropped");
     }
 
     public static void setTestExporter(SpanExporter newTestExporter) {
         testExporter = newTestExporter;
     }
 
-    private static Map<String, List<SpanData>> groupByRepositoryName(Collection<SpanData> collection) {
+    static Map<String, List<SpanData>> groupByRepositoryName(Collection<SpanData> collection) {
         return collection.stream()
                 .filter(span -> span.getAttributes().get(TraceUtils.VCS_REPOSITORY_NAME) != null)
                 .collect(Collectors.groupingBy(
                         span -> span.getAttributes().get(TraceUtils.VCS_REPOSITORY_NAME), Collectors.toList()));
     }
 
-    OtlpHttpSpanExporter createExporter(String endpoint, String token) {
-        return OtlpHttpSpanExporter.builder()
-                .addHeader("Authorization", "Bearer " + token)
-                .setEndpoint(endpoint)
-                .setCompression("gzip")
-                .build();
+    private String getEndpoint(String repositoryName) {
+        return config.getUrl() + "/v1/repos/" + repositoryName + "/ci/traces";
+    }
+
+    SpanExporter createExporter(String repositoryName, String endpoint, String token) {
+        return new RepositorySpanExporter(
+                URI.create(endpoint),
+                token,
+                getSender(),
+                ExportMetrics.get().repository(repositoryName),
+                config.getPayloadCompression(),
+                config.getCompressionLevel());
     }
 
     private SpanExporter getSpanExporter(String repositoryName) {
         if (testExporter != null) {
             return testExporter;
         }
-
-        OtlpHttpSpanExporter exporter = spanExporters.get(repositoryName);
-        if (exporter != null) {
-            return exporter;
-        }
         if (config == null) {
             return null;
         }
+        return spanExporters.get(repositoryName, this::newSpanExporter);
+    }
 
-        String url = config.getUrl();
+    private SpanExporter newSpanExporter(String repositoryName) {
         String token = config.getApiKeyForOrg(repositoryName.split("/")[0]);
         LOGGER.log(Level.FINE, "Getting token {0}", token);
         if (token == null) {
@@ -65,9 +132,7 @@ final class MergifySpanExporter implements SpanExporter {
             return null;
         }
 
-        OtlpHttpSpanExporter newExporter = createExporter(url + "/v1/repos/" + repositoryName + "/ci/traces", token);
-        spanExporters.put(repositoryName, newExporter);
-        return newExporter;
+        return createExporter(repositoryName, getEndpoint(repositoryName), token);
     }
 
     boolean shouldLogSpan() {
@@ -81,7 +146,8 @@ final class MergifySpanExporter implements SpanExporter {
     @Override
     public CompletableResultCode export(Collection<SpanData> collection) {
 
-        Map<String, List<SpanData>> groupedByRepositoryName = groupByRepositoryName(collection);
+        Map<String, List<SpanData>> groupedByRepositoryName =
+                groupByRepositoryName(filter(pendingSpans.enrichOrPark(collection)));
         LOGGER.info(
                 "Exporting " + collection.size() + " spans across " + groupedByRepositoryName.size() + " repositories");
 
@@ -94,62 +160,204 @@ final class MergifySpanExporter implements SpanExporter {
                 results.add(logExporter.export(spans));
             }
 
-            CompletableResultCode exportResult;
-            SpanExporter exporter = getSpanExporter(repositoryName);
-            if (exporter == null) {
-                results.add(CompletableResultCode.ofSuccess());
-                return;
+            ExportMetrics.get().repository(repositoryName).onQueued(spans.size());
+            results.add(getExportLane(repositoryName).offer(spans));
+        });
+
+        return CompletableResultCode.ofAll(results);
+    }
+
+    private Collection<SpanData> filter(Collection<SpanData> spans) {
+        SpanFilter filter = spanFilter;
+        if (filter == null) {
+            if (config == null) {
+                return spans;
             }
+            List<SpanFilterRule> rules = config.getSpanFilterRules();
+            filter = new SpanFilter(rules != null ? rules : List.of());
+            spanFilter = filter;
+        }
+        return filter.isEmpty() ? spans : filter.apply(spans);
+    }
 
-            try {
-                exportResult = exporter.export(spans);
-            } catch (RuntimeException e) {
-                LOGGER.log(Level.WARNING, "Exception thrown by the export.", e);
-                results.add(CompletableResultCode.ofFailure());
-                return;
+    private ExportLane getExportLane(String repositoryName) {
+        return exportLanes.computeIfAbsent(
+                repositoryName,
+                name -> new ExportLane(name, spans -> exportToRepository(name, spans), spans -> spool(name, spans)));
+    }
+
+    Collection<ExportLane> getExportLanes() {
+        return exportLanes.values();
+    }
+
+    private CompletableResultCode exportToRepository(String repositoryName, List<SpanData> spans) {
+        ExportMetrics.RepositoryMetrics metrics = ExportMetrics.get().repository(repositoryName);
+        CompletableResultCode exportResult;
+        SpanExporter exporter = getSpanExporter(repositoryName);
+        if (exporter == null) {
+            metrics.onDropped(spans.size());
+            return CompletableResultCode.ofSuccess();
+        }
+
+        // Keep the spooled spans ordered and don't wait on an API that is known to be failing
+        if (spool != null && spool.hasBacklog(repositoryName)) {
+            return spool(repositoryName, spans) ? CompletableResultCode.ofSuccess() : CompletableResultCode.ofFailure();
+        }
+
+        long start = System.nanoTime();
+        try {
+            exportResult = exporter.export(spans);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Exception thrown by the export.", e);
+            metrics.onFailed(spans.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return spool(repositoryName, spans) ? CompletableResultCode.ofSuccess() : CompletableResultCode.ofFailure();
+        }
+        exportResult.whenComplete(() -> {
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (exportResult.isSuccess()) {
+                metrics.onExported(spans.size(), latencyMillis);
+            } else {
+                metrics.onFailed(spans.size(), latencyMillis);
             }
-            results.add(exportResult);
         });
+        return spoolOnFailure(repositoryName, spans, exportResult);
+    }
 
-        return CompletableResultCode.ofAll(results);
+    private CompletableResultCode spoolOnFailure(
+            String repositoryName, List<SpanData> spans, CompletableResultCode exportResult) {
+        if (spool == null) {
+            return exportResult;
+        }
+        CompletableResultCode result = new CompletableResultCode();
+        exportResult.whenComplete(() -> {
+            if (exportResult.isSuccess() || spool(repositoryName, spans)) {
+                result.succeed();
+            } else {
+                result.fail();
+            }
+        });
+        // Failed by the export lane on timeout: fail the export too, which aborts its request and spools the spans
+        result.whenComplete(() -> {
+            if (!exportResult.isDone()) {
+                exportResult.fail();
+            }
+        });
+        return result;
     }
 
-    public CompletableResultCode flush() {
-        List<CompletableResultCode> results = new ArrayList<>(this.spanExporters.size());
+    private boolean spool(String repositoryName, List<SpanData> spans) {
+        ExportMetrics.RepositoryMetrics metrics = ExportMetrics.get().repository(repositoryName);
+        if (spool == null) {
+            metrics.onDropped(spans.size());
+            return false;
+        }
+        try {
+            boolean spooled = spool.append(repositoryName, encode(spans));
+            if (spooled) {
+                LOGGER.fine("Spooled " + spans.size() + " spans of repository `" + repositoryName + "`");
+                metrics.onSpooled(spans.size());
+            } else {
+                metrics.onDropped(spans.size());
+            }
+            return spooled;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to encode " + spans.size() + " spans for the spool", e);
+            metrics.onDropped(spans.size());
+            return false;
+        }
+    }
 
-        for (SpanExporter spanExporter : this.spanExporters.values()) {
-            CompletableResultCode flushResult;
-            try {
-                flushResult = spanExporter.flush();
-            } catch (RuntimeException e) {
-                LOGGER.log(Level.WARNING, "Exception thrown by the flush.", e);
-                results.add(CompletableResultCode.ofFailure());
-                continue;
+    // Gzipped OTLP protobuf request body
+    static byte[] encode(Collection<SpanData> spans) throws IOException {
+        return OtlpTraceEncoder.encodeGzip(spans).toByteArray();
+    }
+
+    void replaySpool() {
+        if (spool != null) {
+            spool.replay(this::sendSpooled);
+        }
+    }
+
+    private boolean sendSpooled(String repositoryName, byte[] payload) {
+        if (config == null) {
+            return false;
+        }
+        boolean sent = trySendSpooled(repositoryName, payload);
+        ExportMetrics.get().repository(repositoryName).onRetry(sent);
+        return sent;
+    }
+
+    private boolean trySendSpooled(String repositoryName, byte[] payload) {
+        String token = config.getApiKeyForOrg(repositoryName.split("/")[0]);
+        if (token == null) {
+            LOGGER.warning("No token found for repository: " + repositoryName + ", dropping spooled spans");
+            return true;
+        }
+        try {
+            int status = getSender()
+                    .send(URI.create(getEndpoint(repositoryName)), token, payload)
+                    .get(REPLAY_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            if (MergifyHttpSender.isSuccess(status)) {
+                return true;
             }
+            if (MergifyHttpSender.isRetryable(status)) {
+                LOGGER.fine("Replay of spooled spans of repository `" + repositoryName + "` got HTTP " + status);
+                return false;
+            }
+            LOGGER.warning("Spooled spans of repository `" + repositoryName + "` rejected with HTTP " + status
+                    + ", dropping them");
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.fine("Replay of spooled spans of repository `" + repositoryName + "` failed: " + e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            results.add(flushResult);
+    // Rebuilt when the pool size or the in-flight limit are reconfigured
+    private synchronized MergifyHttpSender getSender() {
+        int poolSize = config.getHttpPoolSize();
+        int maxInFlight = config.getHttpMaxInFlight();
+        if (sender == null || !sender.hasLimits(poolSize, maxInFlight)) {
+            if (sender != null) {
+                sender.close();
+            }
+            sender = new MergifyHttpSender(poolSize, maxInFlight);
+            LOGGER.fine("Created " + sender);
         }
+        return sender;
+    }
+
+    public CompletableResultCode flush() {
+        List<CompletableResultCode> results = new ArrayList<>(exportLanes.size() + 1);
+
+        for (ExportLane exportLane : exportLanes.values()) {
+            results.add(exportLane.flush());
+        }
+        results.add(spanExporters.flushAll());
 
         return CompletableResultCode.ofAll(results);
     }
 
     public CompletableResultCode shutdown() {
-        List<CompletableResultCode> results = new ArrayList<>(spanExporters.size());
+        List<CompletableResultCode> pending = new ArrayList<>(exportLanes.size());
+        for (ExportLane exportLane : exportLanes.values()) {
+            pending.add(exportLane.flush());
+        }
+        CompletableResultCode.ofAll(pending).join(SHUTDOWN_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
 
-        for (SpanExporter spanExporter : spanExporters.values()) {
-            CompletableResultCode shutdownResult;
-            try {
-                shutdownResult = spanExporter.shutdown();
-            } catch (RuntimeException e) {
-                LOGGER.log(Level.WARNING, "Exception thrown by the shutdown.", e);
-                results.add(CompletableResultCode.ofFailure());
-                continue;
-            }
+        CompletableResultCode result = spanExporters.shutdownAll();
 
-            results.add(shutdownResult);
+        synchronized (this) {
+            if (sender != null) {
+                sender.close();
+                sender = null;
+            }
         }
 
-        return CompletableResultCode.ofAll(results);
+        return result;
     }
 
     @Override
@@ -157,8 +365,78 @@ final class MergifySpanExporter implements SpanExporter {
         SpanExporter.super.close();
     }
 
+    // The current exporters finish their pending exports while new ones take over, the span filter
+    // rules are compiled again
     public void clearSpanExporters() {
-        spanExporters.clear();
+        spanExporters.invalidateAll();
+        spanFilter = null;
+    }
+
+    void expireIdleExporters() {
+        int expired = spanExporters.expireIdle(ExporterCache.IDLE_TTL_MILLIS);
+        int pruned = pruneExportLanes();
+        LOGGER.fine("Span exporters: " + spanExporters.size() + " live, " + expired + " expired, "
+                + spanExporters.getDrainingCount() + " draining, " + pruned + " export lanes pruned");
+    }
+
+    /**
+     * Removes the idle export lanes of the repositories whose exporter left the cache, along with
+     * their metrics.
+     */
+    int pruneExportLanes() {
+        int pruned = 0;
+        for (ExportLane lane : exportLanes.values()) {
+            String repositoryName = lane.getRepositoryName();
+            if (!spanExporters.contains(repositoryName)
+                    && lane.isIdle()
+                    && exportLanes.remove(repositoryName, lane)) {
+                ExportMetrics.get().evict(repositoryName);
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    ExporterCache getSpanExporters() {
+        return spanExporters;
+    }
+
+    /**
+     * Current state of the lanes, exporters, HTTP sender and spool, with the export counters.
+     */
+    JSONObject describeMetrics() {
+        JSONObject lanes = new JSONObject();
+        for (ExportLane lane : exportLanes.values()) {
+            JSONObject json = new JSONObject();
+            json.put("queuedSpans", lane.getQueuedSpans());
+            json.put("inFlight", lane.getInFlight());
+            json.put("timedOutBatches", lane.getTimedOutBatches());
+            json.put("consecutiveFailures", lane.getConsecutiveFailures());
+            lanes.put(lane.getRepositoryName(), json);
+        }
+
+        JSONObject exporters = new JSONObject();
+        exporters.put("live", spanExporters.size());
+        exporters.put("created", spanExporters.getCreatedCount());
+        exporters.put("evicted", spanExporters.getEvictedCount());
+        exporters.put("expired", spanExporters.getExpiredCount());
+        exporters.put("draining", spanExporters.getDrainingCount());
+
+        JSONObject json = new JSONObject();
+        json.put("pendingSpans", pendingSpans.size());
+        json.put("spoolBytes", spool != null ? spool.sizeBytes() : 0);
+        json.put("exporters", exporters);
+        synchronized (this) {
+            if (sender != null) {
+                JSONObject http = new JSONObject();
+                http.put("inFlight", sender.getInFlight());
+                http.put("waiting", sender.getWaiting());
+                json.put("http", http);
+            }
+        }
+        json.put("lanes", lanes);
+        json.putAll(ExportMetrics.get().toJson());
+        return json;
     }
 
     public String toString() {
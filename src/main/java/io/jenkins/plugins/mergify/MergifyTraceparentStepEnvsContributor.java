@@ -19,9 +19,9 @@ public class MergifyTraceparentStepEnvsContributor extends StepEnvironmentContri
             return;
         }
 
-        TraceparentAction action = node.getAction(TraceparentAction.class);
-        if (action != null) {
-            envs.put("MERGIFY_TRACEPARENT", action.getTraceParent());
+        String traceparent = Listener.findTraceparent(node);
+        if (traceparent != null) {
+            envs.put("MERGIFY_TRACEPARENT", traceparent);
         }
     }
 }
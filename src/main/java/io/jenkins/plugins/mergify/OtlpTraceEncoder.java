@@ -0,0 +1,581 @@
+package io.jenkins.plugins.mergify;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes spans as an OTLP {@code ExportTraceServiceRequest}, streaming the protobuf bytes into
+ * the compressor instead of building the request in memory first.
+ *
+ * <p>The encoding is done in two passes over the batch: the first one sizes the nested messages,
+ * the second one writes them. Attributes repeated across the spans of a batch, like the common run
+ * attributes, are encoded once and copied.
+ */
+final class OtlpTraceEncoder {
+    private static final int WRITE_BUFFER_BYTES = 8 * 1024;
+    // Bounds the encoded attributes kept for a batch
+    private static final int MAX_CACHED_KEY_VALUES = 4096;
+
+    // opentelemetry/proto/collector/trace/v1 and opentelemetry/proto/trace/v1
+    private static final int REQUEST_RESOURCE_SPANS = 1;
+    private static final int RESOURCE_SPANS_RESOURCE = 1;
+    private static final int RESOURCE_SPANS_SCOPE_SPANS = 2;
+    private static final int RESOURCE_SPANS_SCHEMA_URL = 3;
+    private static final int SCOPE_SPANS_SCOPE = 1;
+    private static final int SCOPE_SPANS_SPANS = 2;
+    private static final int SCOPE_SPANS_SCHEMA_URL = 3;
+    private static final int SPAN_TRACE_ID = 1;
+    private static final int SPAN_SPAN_ID = 2;
+    private static final int SPAN_TRACE_STATE = 3;
+    private static final int SPAN_PARENT_SPAN_ID = 4;
+    private static final int SPAN_NAME = 5;
+    private static final int SPAN_KIND = 6;
+    private static final int SPAN_START_TIME = 7;
+    private static final int SPAN_END_TIME = 8;
+    private static final int SPAN_ATTRIBUTES = 9;
+    private static final int SPAN_DROPPED_ATTRIBUTES_COUNT = 10;
+    private static final int SPAN_EVENTS = 11;
+    private static final int SPAN_DROPPED_EVENTS_COUNT = 12;
+    private static final int SPAN_LINKS = 13;
+    private static final int SPAN_DROPPED_LINKS_COUNT = 14;
+    private static final int SPAN_STATUS = 15;
+    private static final int SPAN_FLAGS = 16;
+    private static final int EVENT_TIME = 1;
+    private static final int EVENT_NAME = 2;
+    private static final int EVENT_ATTRIBUTES = 3;
+    private static final int EVENT_DROPPED_ATTRIBUTES_COUNT = 4;
+    private static final int LINK_TRACE_ID = 1;
+    private static final int LINK_SPAN_ID = 2;
+    private static final int LINK_TRACE_STATE = 3;
+    private static final int LINK_ATTRIBUTES = 4;
+    private static final int LINK_DROPPED_ATTRIBUTES_COUNT = 5;
+    private static final int LINK_FLAGS = 6;
+    private static final int STATUS_MESSAGE = 2;
+    private static final int STATUS_CODE = 3;
+    // opentelemetry/proto/resource/v1 and opentelemetry/proto/common/v1
+    private static final int RESOURCE_ATTRIBUTES = 1;
+    private static final int SCOPE_NAME = 1;
+    private static final int SCOPE_VERSION = 2;
+    private static final int SCOPE_ATTRIBUTES = 3;
+    private static final int KEY_VALUE_KEY = 1;
+    private static final int KEY_VALUE_VALUE = 2;
+    private static final int ANY_VALUE_STRING = 1;
+    private static final int ANY_VALUE_BOOL = 2;
+    private static final int ANY_VALUE_INT = 3;
+    private static final int ANY_VALUE_DOUBLE = 4;
+    private static final int ANY_VALUE_ARRAY = 5;
+    private static final int ARRAY_VALUE_VALUES = 1;
+
+    private static final int SPAN_FLAGS_CONTEXT_HAS_IS_REMOTE = 0x100;
+    private static final int SPAN_FLAGS_CONTEXT_IS_REMOTE = 0x200;
+
+    private final Map<AttributeKey<?>, Map<Object, byte[]>> keyValues = new HashMap<>();
+    private int cachedKeyValues;
+
+    private OtlpTraceEncoder() {}
+
+    /**
+     * Request body, with the size of the protobuf it holds.
+     */
+    record EncodedRequest(List<byte[]> chunks, long rawBytes) {
+        static long size(List<byte[]> chunks) {
+            long size = 0;
+            for (byte[] chunk : chunks) {
+                size += chunk.length;
+            }
+            return size;
+        }
+
+        long compressedBytes() {
+            return size(chunks);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[Math.toIntExact(compressedBytes())];
+            int position = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, bytes, position, chunk.length);
+                position += chunk.length;
+            }
+            return bytes;
+        }
+    }
+
+    static EncodedRequest encodeGzip(Collection<SpanData> spans) throws IOException {
+        return encodeGzip(spans, Deflater.DEFAULT_COMPRESSION, ChunkedOutput.CHUNK_BYTES);
+    }
+
+    /**
+     * @param level the gzip compression level, ignored by the other compressions
+     */
+    static EncodedRequest encode(Collection<SpanData> spans, PayloadCompression compression, int level)
+            throws IOException {
+        return switch (compression) {
+            case NONE -> encodeUncompressed(spans);
+            case GZIP -> encodeGzip(spans, level, ChunkedOutput.CHUNK_BYTES);
+            case ZSTD -> encodeZstd(spans);
+        };
+    }
+
+    private static EncodedRequest encodeUncompressed(Collection<SpanData> spans) throws IOException {
+        ChunkedOutput out = new ChunkedOutput(ChunkedOutput.CHUNK_BYTES);
+        new OtlpTraceEncoder().writeRequest(spans, out);
+        List<byte[]> chunks = out.toList();
+        return new EncodedRequest(chunks, EncodedRequest.size(chunks));
+    }
+
+    // The zstd compressor works on whole buffers: the request is encoded first, so that the whole
+    // uncompressed request and its compressed copy are held at once, unlike with gzip
+    private static EncodedRequest encodeZstd(Collection<SpanData> spans) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try {
+            new OtlpTraceEncoder().writeRequest(spans, raw);
+        } catch (IOException e) {
+            // Not thrown when writing into an array
+            throw new IllegalStateException(e);
+        }
+        byte[] input = raw.toByteArray();
+        ZstdCompressor compressor = new ZstdCompressor();
+        byte[] compressed = new byte[compressor.maxCompressedLength(input.length)];
+        int length = compressor.compress(input, 0, input.length, compressed, 0, compressed.length);
+        ChunkedOutput out = new ChunkedOutput(ChunkedOutput.CHUNK_BYTES);
+        out.write(compressed, 0, length);
+        return new EncodedRequest(out.toList(), input.length);
+    }
+
+    static EncodedRequest encodeGzip(Collection<SpanData> spans, int level, int chunkBytes) throws IOException {
+        try (GzipChunkedOutput out = new GzipChunkedOutput(level, chunkBytes)) {
+            new OtlpTraceEncoder().writeRequest(spans, out);
+            return new EncodedRequest(out.finish(), out.getRawBytes());
+        }
+    }
+
+    /**
+     * Writes the uncompressed request.
+     */
+    static void encode(Collection<SpanData> spans, OutputStream out) throws IOException {
+        new OtlpTraceEncoder().writeRequest(spans, out);
+    }
+
+    private static final class ScopeGroup {
+        final InstrumentationScopeInfo scope;
+        final List<SpanData> spans = new ArrayList<>();
+        int[] spanSizes;
+        int scopeSize;
+        int size;
+
+        ScopeGroup(InstrumentationScopeInfo scope) {
+            this.scope = scope;
+        }
+    }
+
+    private static final class ResourceGroup {
+        final Resource resource;
+        final Map<InstrumentationScopeInfo, ScopeGroup> scopes = new IdentityHashMap<>();
+        int resourceSize;
+        int size;
+
+        ResourceGroup(Resource resource) {
+            this.resource = resource;
+        }
+    }
+
+    // Spans of one SDK share their resource and scope instances
+    private static Collection<ResourceGroup> group(Collection<SpanData> spans) {
+        Map<Resource, ResourceGroup> resources = new IdentityHashMap<>();
+        for (SpanData span : spans) {
+            resources
+                    .computeIfAbsent(span.getResource(), ResourceGroup::new)
+                    .scopes
+                    .computeIfAbsent(span.getInstrumentationScopeInfo(), ScopeGroup::new)
+                    .spans
+                    .add(span);
+        }
+        return resources.values();
+    }
+
+    private void writeRequest(Collection<SpanData> spans, OutputStream out) throws IOException {
+        Collection<ResourceGroup> resources = group(spans);
+        for (ResourceGroup resource : resources) {
+            size(resource);
+        }
+
+        ProtoWriter writer = new ProtoWriter(out, WRITE_BUFFER_BYTES);
+        for (ResourceGroup resource : resources) {
+            writer.writeLengthDelimited(REQUEST_RESOURCE_SPANS, resource.size);
+            writer.writeLengthDelimited(RESOURCE_SPANS_RESOURCE, resource.resourceSize);
+            writeAttributes(writer, RESOURCE_ATTRIBUTES, resource.resource.getAttributes());
+            for (ScopeGroup scope : resource.scopes.values()) {
+                writer.writeLengthDelimited(RESOURCE_SPANS_SCOPE_SPANS, scope.size);
+                writer.writeLengthDelimited(SCOPE_SPANS_SCOPE, scope.scopeSize);
+                writer.writeString(SCOPE_NAME, scope.scope.getName());
+                writer.writeString(SCOPE_VERSION, scope.scope.getVersion());
+                writeAttributes(writer, SCOPE_ATTRIBUTES, scope.scope.getAttributes());
+                for (int i = 0; i < scope.spans.size(); i++) {
+                    writer.writeLengthDelimited(SCOPE_SPANS_SPANS, scope.spanSizes[i]);
+                    writeSpan(writer, scope.spans.get(i));
+                }
+                writer.writeString(SCOPE_SPANS_SCHEMA_URL, scope.scope.getSchemaUrl());
+            }
+            writer.writeString(RESOURCE_SPANS_SCHEMA_URL, resource.resource.getSchemaUrl());
+        }
+        writer.flush();
+    }
+
+    private void size(ResourceGroup resource) {
+        resource.resourceSize = attributesSize(RESOURCE_ATTRIBUTES, resource.resource.getAttributes());
+        int size = ProtoWriter.lengthDelimitedSize(RESOURCE_SPANS_RESOURCE, resource.resourceSize)
+                + ProtoWriter.stringFieldSize(RESOURCE_SPANS_SCHEMA_URL, resource.resource.getSchemaUrl());
+        for (ScopeGroup scope : resource.scopes.values()) {
+            size(scope);
+            size += ProtoWriter.lengthDelimitedSize(RESOURCE_SPANS_SCOPE_SPANS, scope.size);
+        }
+        resource.size = size;
+    }
+
+    private void size(ScopeGroup scope) {
+        scope.scopeSize = ProtoWriter.stringFieldSize(SCOPE_NAME, scope.scope.getName())
+                + ProtoWriter.stringFieldSize(SCOPE_VERSION, scope.scope.getVersion())
+                + attributesSize(SCOPE_ATTRIBUTES, scope.scope.getAttributes());
+        int size = ProtoWriter.lengthDelimitedSize(SCOPE_SPANS_SCOPE, scope.scopeSize)
+                + ProtoWriter.stringFieldSize(SCOPE_SPANS_SCHEMA_URL, scope.scope.getSchemaUrl());
+        scope.spanSizes = new int[scope.spans.size()];
+        for (int i = 0; i < scope.spanSizes.length; i++) {
+            scope.spanSizes[i] = spanSize(scope.spans.get(i));
+            size += ProtoWriter.lengthDelimitedSize(SCOPE_SPANS_SPANS, scope.spanSizes[i]);
+        }
+        scope.size = size;
+    }
+
+    private int spanSize(SpanData span) {
+        SpanContext context = span.getSpanContext();
+        SpanContext parent = span.getParentSpanContext();
+        int size = ProtoWriter.lengthDelimitedSize(SPAN_TRACE_ID, 16)
+                + ProtoWriter.lengthDelimitedSize(SPAN_SPAN_ID, 8)
+                + ProtoWriter.stringFieldSize(SPAN_TRACE_STATE, encodeTraceState(context.getTraceState()))
+                + (parent.isValid() ? ProtoWriter.lengthDelimitedSize(SPAN_PARENT_SPAN_ID, 8) : 0)
+                + ProtoWriter.stringFieldSize(SPAN_NAME, span.getName())
+                + ProtoWriter.tagSize(SPAN_KIND)
+                + ProtoWriter.varintSize(spanKind(span))
+                + fixed64FieldSize(SPAN_START_TIME, span.getStartEpochNanos())
+                + fixed64FieldSize(SPAN_END_TIME, span.getEndEpochNanos())
+                + attributesSize(SPAN_ATTRIBUTES, span.getAttributes())
+                + uint32FieldSize(
+                        SPAN_DROPPED_ATTRIBUTES_COUNT,
+                        span.getTotalAttributeCount() - span.getAttributes().size());
+        for (EventData event : span.getEvents()) {
+            size += ProtoWriter.lengthDelimitedSize(SPAN_EVENTS, eventSize(event));
+        }
+        size += uint32FieldSize(SPAN_DROPPED_EVENTS_COUNT, span.getTotalRecordedEvents() - span.getEvents().size());
+        for (LinkData link : span.getLinks()) {
+            size += ProtoWriter.lengthDelimitedSize(SPAN_LINKS, linkSize(link));
+        }
+        size += uint32FieldSize(SPAN_DROPPED_LINKS_COUNT, span.getTotalRecordedLinks() - span.getLinks().size());
+        size += ProtoWriter.lengthDelimitedSize(SPAN_STATUS, statusSize(span.getStatus()));
+        size += ProtoWriter.tagSize(SPAN_FLAGS) + 4;
+        return size;
+    }
+
+    private void writeSpan(ProtoWriter writer, SpanData span) throws IOException {
+        SpanContext context = span.getSpanContext();
+        SpanContext parent = span.getParentSpanContext();
+        writer.writeLengthDelimited(SPAN_TRACE_ID, 16);
+        writer.writeBytes(context.getTraceIdBytes());
+        writer.writeLengthDelimited(SPAN_SPAN_ID, 8);
+        writer.writeBytes(context.getSpanIdBytes());
+        writer.writeString(SPAN_TRACE_STATE, encodeTraceState(context.getTraceState()));
+        if (parent.isValid()) {
+            writer.writeLengthDelimited(SPAN_PARENT_SPAN_ID, 8);
+            writer.writeBytes(parent.getSpanIdBytes());
+        }
+        writer.writeString(SPAN_NAME, span.getName());
+        writer.writeTag(SPAN_KIND, ProtoWriter.VARINT);
+        writer.writeVarint(spanKind(span));
+        writeFixed64(writer, SPAN_START_TIME, span.getStartEpochNanos());
+        writeFixed64(writer, SPAN_END_TIME, span.getEndEpochNanos());
+        writeAttributes(writer, SPAN_ATTRIBUTES, span.getAttributes());
+        writeUInt32(
+                writer, SPAN_DROPPED_ATTRIBUTES_COUNT, span.getTotalAttributeCount() - span.getAttributes().size());
+        for (EventData event : span.getEvents()) {
+            writer.writeLengthDelimited(SPAN_EVENTS, eventSize(event));
+            writeFixed64(writer, EVENT_TIME, event.getEpochNanos());
+            writer.writeString(EVENT_NAME, event.getName());
+            writeAttributes(writer, EVENT_ATTRIBUTES, event.getAttributes());
+            writeUInt32(
+                    writer,
+                    EVENT_DROPPED_ATTRIBUTES_COUNT,
+                    event.getTotalAttributeCount() - event.getAttributes().size());
+        }
+        writeUInt32(writer, SPAN_DROPPED_EVENTS_COUNT, span.getTotalRecordedEvents() - span.getEvents().size());
+        for (LinkData link : span.getLinks()) {
+            SpanContext linked = link.getSpanContext();
+            writer.writeLengthDelimited(SPAN_LINKS, linkSize(link));
+            writer.writeLengthDelimited(LINK_TRACE_ID, 16);
+            writer.writeBytes(linked.getTraceIdBytes());
+            writer.writeLengthDelimited(LINK_SPAN_ID, 8);
+            writer.writeBytes(linked.getSpanIdBytes());
+            writer.writeString(LINK_TRACE_STATE, encodeTraceState(linked.getTraceState()));
+            writeAttributes(writer, LINK_ATTRIBUTES, link.getAttributes());
+            writeUInt32(
+                    writer,
+                    LINK_DROPPED_ATTRIBUTES_COUNT,
+                    link.getTotalAttributeCount() - link.getAttributes().size());
+            writer.writeTag(LINK_FLAGS, ProtoWriter.FIXED32);
+            writer.writeFixed32(flags(linked, linked.isRemote()));
+        }
+        writeUInt32(writer, SPAN_DROPPED_LINKS_COUNT, span.getTotalRecordedLinks() - span.getLinks().size());
+        StatusData status = span.getStatus();
+        writer.writeLengthDelimited(SPAN_STATUS, statusSize(status));
+        writer.writeString(STATUS_MESSAGE, status.getDescription());
+        int statusCode = statusCode(status);
+        if (statusCode != 0) {
+            writer.writeTag(STATUS_CODE, ProtoWriter.VARINT);
+            writer.writeVarint(statusCode);
+        }
+        writer.writeTag(SPAN_FLAGS, ProtoWriter.FIXED32);
+        writer.writeFixed32(flags(context, parent.isRemote()));
+    }
+
+    private int eventSize(EventData event) {
+        return fixed64FieldSize(EVENT_TIME, event.getEpochNanos())
+                + ProtoWriter.stringFieldSize(EVENT_NAME, event.getName())
+                + attributesSize(EVENT_ATTRIBUTES, event.getAttributes())
+                + uint32FieldSize(
+                        EVENT_DROPPED_ATTRIBUTES_COUNT,
+                        event.getTotalAttributeCount() - event.getAttributes().size());
+    }
+
+    private int linkSize(LinkData link) {
+        SpanContext linked = link.getSpanContext();
+        return ProtoWriter.lengthDelimitedSize(LINK_TRACE_ID, 16)
+                + ProtoWriter.lengthDelimitedSize(LINK_SPAN_ID, 8)
+                + ProtoWriter.stringFieldSize(LINK_TRACE_STATE, encodeTraceState(linked.getTraceState()))
+                + attributesSize(LINK_ATTRIBUTES, link.getAttributes())
+                + uint32FieldSize(
+                        LINK_DROPPED_ATTRIBUTES_COUNT,
+                        link.getTotalAttributeCount() - link.getAttributes().size())
+                + ProtoWriter.tagSize(LINK_FLAGS)
+                + 4;
+    }
+
+    private static int statusSize(StatusData status) {
+        int statusCode = statusCode(status);
+        return ProtoWriter.stringFieldSize(STATUS_MESSAGE, status.getDescription())
+                + (statusCode != 0 ? ProtoWriter.tagSize(STATUS_CODE) + ProtoWriter.varintSize(statusCode) : 0);
+    }
+
+    private static int statusCode(StatusData status) {
+        return switch (status.getStatusCode()) {
+            case UNSET -> 0;
+            case OK -> 1;
+            case ERROR -> 2;
+        };
+    }
+
+    private static int spanKind(SpanData span) {
+        return switch (span.getKind()) {
+            case INTERNAL -> 1;
+            case SERVER -> 2;
+            case CLIENT -> 3;
+            case PRODUCER -> 4;
+            case CONSUMER -> 5;
+        };
+    }
+
+    private static int flags(SpanContext context, boolean remote) {
+        return (context.getTraceFlags().asByte() & 0xff)
+                | SPAN_FLAGS_CONTEXT_HAS_IS_REMOTE
+                | (remote ? SPAN_FLAGS_CONTEXT_IS_REMOTE : 0);
+    }
+
+    // W3C tracestate header value
+    private static String encodeTraceState(TraceState traceState) {
+        if (traceState.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        traceState.forEach((key, value) -> {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(key).append('=').append(value);
+        });
+        return builder.toString();
+    }
+
+    // Like the other proto3 scalars, zero timestamps are omitted
+    private static int fixed64FieldSize(int field, long value) {
+        return value != 0 ? ProtoWriter.tagSize(field) + 8 : 0;
+    }
+
+    private static void writeFixed64(ProtoWriter writer, int field, long value) throws IOException {
+        if (value != 0) {
+            writer.writeTag(field, ProtoWriter.FIXED64);
+            writer.writeFixed64(value);
+        }
+    }
+
+    private static int uint32FieldSize(int field, int value) {
+        return value != 0 ? ProtoWriter.tagSize(field) + ProtoWriter.varintSize(value & 0xFFFFFFFFL) : 0;
+    }
+
+    private static void writeUInt32(ProtoWriter writer, int field, int value) throws IOException {
+        if (value != 0) {
+            writer.writeTag(field, ProtoWriter.VARINT);
+            writer.writeVarint(value & 0xFFFFFFFFL);
+        }
+    }
+
+    private int attributesSize(int field, Attributes attributes) {
+        int[] size = {0};
+        attributes.forEach(
+                (key, value) -> size[0] += ProtoWriter.lengthDelimitedSize(field, keyValue(key, value).length));
+        return size[0];
+    }
+
+    private void writeAttributes(ProtoWriter writer, int field, Attributes attributes) throws IOException {
+        if (attributes.isEmpty()) {
+            return;
+        }
+        IOException[] error = {null};
+        attributes.forEach((key, value) -> {
+            if (error[0] != null) {
+                return;
+            }
+            byte[] keyValue = keyValue(key, value);
+            try {
+                writer.writeLengthDelimited(field, keyValue.length);
+                writer.writeBytes(keyValue);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    // Encoded KeyValue message, cached for the batch
+    private byte[] keyValue(AttributeKey<?> key, Object value) {
+        Map<Object, byte[]> values = keyValues.computeIfAbsent(key, k -> new HashMap<>());
+        byte[] encoded = values.get(value);
+        if (encoded == null) {
+            encoded = encodeKeyValue(key, value);
+            if (cachedKeyValues < MAX_CACHED_KEY_VALUES) {
+                values.put(value, encoded);
+                cachedKeyValues++;
+            }
+        }
+        return encoded;
+    }
+
+    private static byte[] encodeKeyValue(AttributeKey<?> key, Object value) {
+        int anyValueSize = anyValueSize(key, value);
+        byte[] encoded =
+                new byte[ProtoWriter.stringFieldSize(KEY_VALUE_KEY, key.getKey())
+                        + ProtoWriter.lengthDelimitedSize(KEY_VALUE_VALUE, anyValueSize)];
+        ProtoWriter writer = new ProtoWriter(encoded);
+        try {
+            writer.writeString(KEY_VALUE_KEY, key.getKey());
+            writer.writeLengthDelimited(KEY_VALUE_VALUE, anyValueSize);
+            writeAnyValue(writer, key, value);
+        } catch (IOException e) {
+            // Not thrown when writing into an array
+            throw new IllegalStateException(e);
+        }
+        return encoded;
+    }
+
+    private static int anyValueSize(AttributeKey<?> key, Object value) {
+        return switch (key.getType()) {
+            case STRING -> ProtoWriter.lengthDelimitedSize(ANY_VALUE_STRING, ProtoWriter.utf8Length((String) value));
+            case BOOLEAN -> ProtoWriter.tagSize(ANY_VALUE_BOOL) + 1;
+            case LONG -> ProtoWriter.tagSize(ANY_VALUE_INT) + ProtoWriter.varintSize((Long) value);
+            case DOUBLE -> ProtoWriter.tagSize(ANY_VALUE_DOUBLE) + 8;
+            case STRING_ARRAY, BOOLEAN_ARRAY, LONG_ARRAY, DOUBLE_ARRAY -> ProtoWriter.lengthDelimitedSize(
+                    ANY_VALUE_ARRAY, arrayValueSize(key, (List<?>) value));
+            default -> ProtoWriter.lengthDelimitedSize(ANY_VALUE_STRING, ProtoWriter.utf8Length(String.valueOf(value)));
+        };
+    }
+
+    private static int arrayValueSize(AttributeKey<?> key, List<?> values) {
+        int size = 0;
+        for (Object element : values) {
+            size += ProtoWriter.lengthDelimitedSize(ARRAY_VALUE_VALUES, elementSize(key, element));
+        }
+        return size;
+    }
+
+    private static int elementSize(AttributeKey<?> arrayKey, Object element) {
+        return switch (arrayKey.getType()) {
+            case STRING_ARRAY -> ProtoWriter.lengthDelimitedSize(
+                    ANY_VALUE_STRING, ProtoWriter.utf8Length((String) element));
+            case BOOLEAN_ARRAY -> ProtoWriter.tagSize(ANY_VALUE_BOOL) + 1;
+            case LONG_ARRAY -> ProtoWriter.tagSize(ANY_VALUE_INT) + ProtoWriter.varintSize((Long) element);
+            default -> ProtoWriter.tagSize(ANY_VALUE_DOUBLE) + 8;
+        };
+    }
+
+    private static void writeAnyValue(ProtoWriter writer, AttributeKey<?> key, Object value) throws IOException {
+        switch (key.getType()) {
+            case STRING -> writeStringValue(writer, (String) value);
+            case BOOLEAN -> writeBooleanValue(writer, (Boolean) value);
+            case LONG -> writeLongValue(writer, (Long) value);
+            case DOUBLE -> writeDoubleValue(writer, (Double) value);
+            case STRING_ARRAY, BOOLEAN_ARRAY, LONG_ARRAY, DOUBLE_ARRAY -> {
+                List<?> values = (List<?>) value;
+                writer.writeLengthDelimited(ANY_VALUE_ARRAY, arrayValueSize(key, values));
+                for (Object element : values) {
+                    writer.writeLengthDelimited(ARRAY_VALUE_VALUES, elementSize(key, element));
+                    switch (key.getType()) {
+                        case STRING_ARRAY -> writeStringValue(writer, (String) element);
+                        case BOOLEAN_ARRAY -> writeBooleanValue(writer, (Boolean) element);
+                        case LONG_ARRAY -> writeLongValue(writer, (Long) element);
+                        default -> writeDoubleValue(writer, (Double) element);
+                    }
+                }
+            }
+            default -> writeStringValue(writer, String.valueOf(value));
+        }
+    }
+
+    // AnyValue fields are part of a oneof, they are written even when empty
+    private static void writeStringValue(ProtoWriter writer, String value) throws IOException {
+        writer.writeLengthDelimited(ANY_VALUE_STRING, ProtoWriter.utf8Length(value));
+        writer.writeUtf8(value);
+    }
+
+    private static void writeBooleanValue(ProtoWriter writer, boolean value) throws IOException {
+        writer.writeTag(ANY_VALUE_BOOL, ProtoWriter.VARINT);
+        writer.writeVarint(value ? 1 : 0);
+    }
+
+    private static void writeLongValue(ProtoWriter writer, long value) throws IOException {
+        writer.writeTag(ANY_VALUE_INT, ProtoWriter.VARINT);
+        writer.writeVarint(value);
+    }
+
+    private static void writeDoubleValue(ProtoWriter writer, double value) throws IOException {
+        writer.writeTag(ANY_VALUE_DOUBLE, ProtoWriter.FIXED64);
+        writer.writeFixed64(Double.doubleToRawLongBits(value));
+    }
+}
@@ -0,0 +1,30 @@
+package io.jenkins.plugins.mergify;
+
+/**
+ * Compression of the export request bodies.
+ */
+public enum PayloadCompression {
+    NONE("None", null),
+    GZIP("gzip", "gzip"),
+    // Falls back to gzip when the API rejects it. Compresses whole requests, which takes more heap than gzip
+    ZSTD("zstd", "zstd");
+
+    private final String displayName;
+    private final String contentEncoding;
+
+    PayloadCompression(String displayName, String contentEncoding) {
+        this.displayName = displayName;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return the Content-Encoding header value, null when the body is not compressed
+     */
+    String getContentEncoding() {
+        return contentEncoding;
+    }
+}
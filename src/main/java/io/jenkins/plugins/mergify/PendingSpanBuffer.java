@@ -0,0 +1,270 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.trace.data.DelegatingSpanData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parks the spans that ended before the SCM data of their run was known.
+ *
+ * <p>Such spans have no common run attributes and would be discarded for lack of a repository
+ * name. They are kept per trace ID until {@link #resolve} provides the attributes of the run, then
+ * enriched in one batch and handed to the release callback. Once a run is over without SCM data,
+ * {@link #abandon} drops its parked spans and the ones still to come, until {@link #forget}, after
+ * which the late spans of a recently forgotten trace are dropped as well.
+ *
+ * <p>A trace parks at most {@code maxSpansPerTrace} spans, so that one run never checking out
+ * any code cannot fill the buffer shared by all runs, and {@link Sweeper} drops the traces parked
+ * for longer than {@code maxAge}.
+ */
+final class PendingSpanBuffer {
+    private static final Logger LOGGER = Logger.getLogger(PendingSpanBuffer.class.getName());
+
+    // Late spans of a forgotten trace may still sit in the batch processor queue
+    private static final int MAX_FORGOTTEN = 4096;
+
+    private final Map<String, Attributes> resolved = new ConcurrentHashMap<>();
+    private final Map<String, ParkedTrace> parked = new ConcurrentHashMap<>();
+    // Traces that will never resolve
+    private final Set<String> abandoned = ConcurrentHashMap.newKeySet();
+    private final Set<String> forgotten = Collections.newSetFromMap(newLruMap(MAX_FORGOTTEN));
+    // Traces with spans dropped on a full buffer, for which a warning was logged
+    private final Set<String> overflowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    private final int capacity;
+    private final int maxSpansPerTrace;
+    private final long maxAgeMillis;
+    private final Consumer<Collection<SpanData>> release;
+
+    PendingSpanBuffer(
+            int capacity, int maxSpansPerTrace, Duration maxAge, Consumer<Collection<SpanData>> release) {
+        this.capacity = capacity;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.release = release;
+    }
+
+    private static <K, V> Map<K, V> newLruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private static boolean isEnriched(SpanData span) {
+        Attributes attributes = span.getAttributes();
+        return attributes.get(TraceUtils.VCS_REPOSITORY_NAME) != null
+                || attributes.get(TraceUtils.CICD_PIPELINE_RUN_ID) != null;
+    }
+
+    private static SpanData enrich(SpanData span, Attributes common) {
+        return new EnrichedSpanData(span, common);
+    }
+
+    /**
+     * Enriches the spans of resolved traces and parks those of unresolved ones.
+     *
+     * @return the spans ready to export
+     */
+    Collection<SpanData> enrichOrPark(Collection<SpanData> spans) {
+        long nowMillis = System.currentTimeMillis();
+        List<SpanData> ready = new ArrayList<>(spans.size());
+        for (SpanData span : spans) {
+            if (isEnriched(span)) {
+                ready.add(span);
+                continue;
+            }
+            Attributes common = resolved.get(span.getTraceId());
+            if (common != null) {
+                ready.add(enrich(span, common));
+            } else if (abandoned.contains(span.getTraceId()) || forgotten.contains(span.getTraceId())) {
+                ExportMetrics.get().onUnattributedDropped(1);
+            } else {
+                park(span, nowMillis);
+            }
+        }
+        return ready;
+    }
+
+    private void park(SpanData span, long nowMillis) {
+        if (parkedCount.incrementAndGet() > capacity) {
+            parkedCount.decrementAndGet();
+            overflow(span.getTraceId(), "Pending span buffer is full (" + capacity + ")");
+            return;
+        }
+        AtomicBoolean added = new AtomicBoolean();
+        parked.compute(span.getTraceId(), (traceId, trace) -> {
+            ParkedTrace newTrace = trace != null ? trace : new ParkedTrace(nowMillis);
+            added.set(newTrace.spans.size() < maxSpansPerTrace && newTrace.spans.add(span));
+            return newTrace;
+        });
+        if (!added.get()) {
+            parkedCount.decrementAndGet();
+            overflow(span.getTraceId(), "Pending span buffer holds " + maxSpansPerTrace + " spans per trace");
+            return;
+        }
+        // The trace may have been resolved meanwhile
+        Attributes common = resolved.get(span.getTraceId());
+        if (common != null) {
+            releaseParked(span.getTraceId(), common);
+        }
+    }
+
+    private void overflow(String traceId, String reason) {
+        if (overflowed.add(traceId)) {
+            LOGGER.warning(reason + ", dropping the spans of trace " + traceId + " that do not fit");
+        }
+        ExportMetrics.get().onUnattributedDropped(1);
+    }
+
+    /**
+     * Records the common attributes of a trace and releases its parked spans.
+     */
+    void resolve(String traceId, Attributes common) {
+        resolved.put(traceId, common);
+        releaseParked(traceId, common);
+    }
+
+    /**
+     * Drops the parked spans of a trace that did not resolve and can no longer do so, e.g. because its
+     * run is over, and the spans of that trace still to come.
+     */
+    void abandon(String traceId) {
+        if (!resolved.containsKey(traceId)) {
+            abandoned.add(traceId);
+            drop(traceId);
+        }
+    }
+
+    /**
+     * Drops a trace once no more of its spans are expected. Spans of that trace arriving late are
+     * dropped as long as it is among the most recently forgotten traces.
+     */
+    void forget(String traceId) {
+        forgotten.add(traceId);
+        resolved.remove(traceId);
+        abandoned.remove(traceId);
+        overflowed.remove(traceId);
+        drop(traceId);
+    }
+
+    /**
+     * Drops the traces parked for longer than the maximum age.
+     *
+     * @return the number of traces dropped
+     */
+    int sweep(long nowMillis) {
+        int swept = 0;
+        for (Map.Entry<String, ParkedTrace> entry : parked.entrySet()) {
+            ParkedTrace trace = entry.getValue();
+            if (nowMillis - trace.parkedMillis > maxAgeMillis && parked.remove(entry.getKey(), trace)) {
+                dropped(entry.getKey(), trace);
+                swept++;
+            }
+        }
+        return swept;
+    }
+
+    private void drop(String traceId) {
+        ParkedTrace trace = parked.remove(traceId);
+        if (trace != null) {
+            dropped(traceId, trace);
+        }
+    }
+
+    private void dropped(String traceId, ParkedTrace trace) {
+        parkedCount.addAndGet(-trace.spans.size());
+        LOGGER.fine("Dropping " + trace.spans.size() + " spans of trace " + traceId + " without SCM data");
+        ExportMetrics.get().onUnattributedDropped(trace.spans.size());
+    }
+
+    int size() {
+        return parkedCount.get();
+    }
+
+    private void releaseParked(String traceId, Attributes common) {
+        ParkedTrace trace = parked.remove(traceId);
+        if (trace == null) {
+            return;
+        }
+        List<SpanData> spans = trace.spans;
+        parkedCount.addAndGet(-spans.size());
+        List<SpanData> enriched = new ArrayList<>(spans.size());
+        for (SpanData span : spans) {
+            enriched.add(enrich(span, common));
+        }
+        LOGGER.fine("Releasing " + enriched.size() + " parked spans of trace " + traceId);
+        release.accept(enriched);
+    }
+
+    private static final class ParkedTrace {
+        // When the first span of the trace was parked
+        private final long parkedMillis;
+        private final List<SpanData> spans = new ArrayList<>();
+
+        ParkedTrace(long parkedMillis) {
+            this.parkedMillis = parkedMillis;
+        }
+    }
+
+    private static final class EnrichedSpanData extends DelegatingSpanData {
+        private final Attributes attributes;
+
+        EnrichedSpanData(SpanData delegate, Attributes common) {
+            super(delegate);
+            this.attributes = common.toBuilder().putAll(delegate.getAttributes()).build();
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public int getTotalAttributeCount() {
+            return attributes.size();
+        }
+    }
+
+    @Extension
+    public static class Sweeper extends AsyncPeriodicWork {
+        public Sweeper() {
+            super("Mergify pending spans sweeper");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINE;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            TracerService.sweepPendingSpans();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package io.jenkins.plugins.mergify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Protocol buffers wire format writer, buffering into a stream or filling a byte array of the exact
+ * encoded size.
+ *
+ * <p>Strings are written as UTF-8 straight from their chars, the callers compute their length with
+ * {@link #utf8Length(String)} to size the enclosing messages.
+ */
+final class ProtoWriter {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    ProtoWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    // Writes into the array, which must be exactly as large as what is written
+    ProtoWriter(byte[] target) {
+        this.out = null;
+        this.buffer = target;
+    }
+
+    static int varintSize(long value) {
+        return (63 - Long.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+
+    static int tagSize(int field) {
+        return varintSize((long) field << 3);
+    }
+
+    static int lengthDelimitedSize(int field, int length) {
+        return tagSize(field) + varintSize(length) + length;
+    }
+
+    // Lone surrogates are encoded as '?', like String.getBytes does
+    static int utf8Length(String value) {
+        int length = value.length();
+        int utf8Length = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utf8Length += 1;
+            } else if (isSurrogatePair(value, i)) {
+                utf8Length += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                utf8Length += 2;
+            }
+        }
+        return utf8Length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index))
+                && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    /**
+     * @return the size of a string field, 0 for an empty string as proto3 omits it
+     */
+    static int stringFieldSize(int field, String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        return lengthDelimitedSize(field, utf8Length(value));
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            if (out == null) {
+                throw new IllegalStateException("Encoded size exceeds " + buffer.length + " bytes");
+            }
+            flush();
+        }
+    }
+
+    void writeTag(int field, int wireType) throws IOException {
+        writeVarint(((long) field << 3) | wireType);
+    }
+
+    void writeVarint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeFixed32(int value) throws IOException {
+        ensure(4);
+        for (int i = 0; i < 4; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeFixed64(long value) throws IOException {
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            ensure(buffer.length);
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    void writeLengthDelimited(int field, int length) throws IOException {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(length);
+    }
+
+    void writeUtf8(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            ensure(4);
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >>> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >>> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >>> 12));
+                buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes a string field, skipped when empty as proto3 omits it.
+     */
+    void writeString(int field, String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        writeLengthDelimited(field, utf8Length(value));
+        writeUtf8(value);
+    }
+
+    void flush() throws IOException {
+        if (out != null && position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Job;
+import hudson.model.Label;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.queue.CauseOfBlockage;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.support.steps.ExecutorStepExecution;
+
+/**
+ * Time spent by queue items waiting for an executor, and why.
+ *
+ * <p>Items are followed from the queue listener events, keyed by item ID. When they leave the queue,
+ * builds are kept by queue ID until they start, and the executor requests of pipeline
+ * {@code node { }} blocks by run and start node ID of the block until its body starts. Items that
+ * are never claimed are evicted, oldest first.
+ */
+final class QueueWaits {
+    static final AttributeKey<String> QUEUE_LABEL = AttributeKey.stringKey("mergify.queue.label");
+    static final AttributeKey<String> QUEUE_BLOCKAGE_TYPE = AttributeKey.stringKey("mergify.queue.blockage.type");
+    static final AttributeKey<String> QUEUE_BLOCKAGE_REASON = AttributeKey.stringKey("mergify.queue.blockage.reason");
+    static final AttributeKey<Long> QUEUE_WAITING_MILLIS = AttributeKey.longKey("mergify.queue.waiting_ms");
+    static final AttributeKey<Long> QUEUE_BLOCKED_MILLIS = AttributeKey.longKey("mergify.queue.blocked_ms");
+    static final AttributeKey<Long> QUEUE_BUILDABLE_MILLIS = AttributeKey.longKey("mergify.queue.buildable_ms");
+
+    static final int MAX_LEFT_ITEMS = 4096;
+
+    private static final QueueWaits INSTANCE = new QueueWaits();
+
+    enum State {
+        // Quiet period
+        WAITING,
+        // Blocked by another build, a throttle or a lock
+        BLOCKED,
+        // Waiting for a free executor
+        BUILDABLE
+    }
+
+    /**
+     * A queue item that left the queue.
+     *
+     * @param stateMillis time spent in each {@link State}, by ordinal
+     * @param blockageType simple class name of the last cause of blockage, e.g. {@code BecauseLabelIsBusy}
+     */
+    record Wait(
+            long enteredMillis,
+            long leftMillis,
+            @CheckForNull String label,
+            @CheckForNull String blockageType,
+            @CheckForNull String blockageReason,
+            long[] stateMillis) {
+
+        long getMillis(State state) {
+            return stateMillis[state.ordinal()];
+        }
+
+        void applyTo(Span span) {
+            if (label != null) {
+                span.setAttribute(QUEUE_LABEL, label);
+            }
+            if (blockageType != null) {
+                span.setAttribute(QUEUE_BLOCKAGE_TYPE, blockageType);
+                span.setAttribute(QUEUE_BLOCKAGE_REASON, blockageReason);
+            }
+            span.setAttribute(QUEUE_WAITING_MILLIS, getMillis(State.WAITING));
+            span.setAttribute(QUEUE_BLOCKED_MILLIS, getMillis(State.BLOCKED));
+            span.setAttribute(QUEUE_BUILDABLE_MILLIS, getMillis(State.BUILDABLE));
+        }
+    }
+
+    private static final class Tracked {
+        private final long enteredMillis;
+        private final long[] stateMillis = new long[State.values().length];
+        private State state;
+        private long stateSinceMillis;
+        private String blockageType;
+        private String blockageReason;
+
+        Tracked(long enteredMillis) {
+            this.enteredMillis = enteredMillis;
+            this.stateSinceMillis = enteredMillis;
+        }
+
+        synchronized void enter(State newState, @CheckForNull CauseOfBlockage cause, long nowMillis) {
+            leave(nowMillis);
+            state = newState;
+            if (cause != null) {
+                blockageType = cause.getClass().getSimpleName();
+                blockageReason = cause.getShortDescription();
+            }
+        }
+
+        private void leave(long nowMillis) {
+            if (state != null) {
+                stateMillis[state.ordinal()] += Math.max(0, nowMillis - stateSinceMillis);
+            }
+            stateSinceMillis = nowMillis;
+        }
+
+        synchronized Wait left(@CheckForNull String label, long nowMillis) {
+            leave(nowMillis);
+            state = null;
+            return new Wait(enteredMillis, nowMillis, label, blockageType, blockageReason, stateMillis.clone());
+        }
+    }
+
+    private final Map<Long, Tracked> queued = new ConcurrentHashMap<>();
+    // Queue ID -> wait of builds that did not start yet
+    private final Map<Long, Wait> builds = newLruMap();
+    // Run externalizable ID and node block start ID -> wait of node blocks whose body did not start yet
+    private final Map<String, Wait> executorRequests = newLruMap();
+
+    static QueueWaits get() {
+        return INSTANCE;
+    }
+
+    private static <K> Map<K, Wait> newLruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<K, Wait>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Wait> eldest) {
+                return size() > MAX_LEFT_ITEMS;
+            }
+        });
+    }
+
+    @CheckForNull
+    static String getLabel(@CheckForNull Label label) {
+        return label != null ? label.getExpression() : null;
+    }
+
+    private static String executorRequestKey(String runId, String nodeId) {
+        return runId + "\n" + nodeId;
+    }
+
+    // The start node of the node block requesting the executor
+    @CheckForNull
+    private static String getNodeId(ExecutorStepExecution.PlaceholderTask task) {
+        try {
+            FlowNode node = task.getNode();
+            return node != null ? node.getId() : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    void onEnter(@NonNull Queue.Item item, State state, long nowMillis) {
+        CauseOfBlockage cause = state == State.WAITING ? null : item.getCauseOfBlockage();
+        queued.computeIfAbsent(item.getId(), id -> new Tracked(item.getInQueueSince()))
+                .enter(state, cause, nowMillis);
+    }
+
+    void onLeft(@NonNull Queue.LeftItem item, long nowMillis) {
+        Tracked tracked = queued.remove(item.getId());
+        if (tracked == null || item.isCancelled()) {
+            return;
+        }
+        Wait wait = tracked.left(getLabel(item.getAssignedLabel()), nowMillis);
+        if (item.task instanceof Job) {
+            builds.put(item.getId(), wait);
+        } else if (item.task instanceof ExecutorStepExecution.PlaceholderTask task
+                && task.getOwnerExecutable() instanceof Run<?, ?> run) {
+            String nodeId = getNodeId(task);
+            if (nodeId != null) {
+                executorRequests.put(executorRequestKey(run.getExternalizableId(), nodeId), wait);
+            }
+        }
+    }
+
+    @CheckForNull
+    Wait removeBuild(long queueId) {
+        return builds.remove(queueId);
+    }
+
+    /**
+     * @param nodeId the ID of the start node of the node block
+     */
+    @CheckForNull
+    Wait removeExecutorRequest(@NonNull Run<?, ?> run, @NonNull String nodeId) {
+        return executorRequests.remove(executorRequestKey(run.getExternalizableId(), nodeId));
+    }
+
+    int size() {
+        return queued.size() + builds.size() + executorRequests.size();
+    }
+
+    void clear() {
+        queued.clear();
+        builds.clear();
+        executorRequests.clear();
+    }
+}
@@ -0,0 +1,111 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exports the spans of one repository through the shared {@link MergifyHttpSender}.
+ */
+final class RepositorySpanExporter implements SpanExporter {
+    private static final Logger LOGGER = Logger.getLogger(RepositorySpanExporter.class.getName());
+
+    private final URI endpoint;
+    private final String token;
+    private final MergifyHttpSender sender;
+    private final ExportMetrics.RepositoryMetrics metrics;
+    private final int compressionLevel;
+    private volatile PayloadCompression compression;
+    private final Set<CompletableResultCode> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+
+    RepositorySpanExporter(
+            URI endpoint,
+            String token,
+            MergifyHttpSender sender,
+            ExportMetrics.RepositoryMetrics metrics,
+            PayloadCompression compression,
+            int compressionLevel) {
+        this.endpoint = endpoint;
+        this.token = token;
+        this.sender = sender;
+        this.metrics = metrics;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (shutdown) {
+            return CompletableResultCode.ofFailure();
+        }
+
+        CompletableResultCode result = new CompletableResultCode();
+        pending.add(result);
+        result.whenComplete(() -> pending.remove(result));
+        send(spans, compression, result);
+        return result;
+    }
+
+    private void send(Collection<SpanData> spans, PayloadCompression compression, CompletableResultCode result) {
+        OtlpTraceEncoder.EncodedRequest payload;
+        try {
+            payload = OtlpTraceEncoder.encode(spans, compression, compressionLevel);
+            metrics.onEncoded(payload.rawBytes(), payload.compressedBytes());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to encode " + spans.size() + " spans", e);
+            result.fail();
+            return;
+        }
+
+        CompletableFuture<Integer> request =
+                sender.send(endpoint, token, payload.chunks(), compression.getContentEncoding());
+        // The result is failed by the export lane when it times out, abort the request then
+        result.whenComplete(() -> request.cancel(true));
+        request.whenComplete((status, error) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (error != null) {
+                LOGGER.warning("Failed to export " + spans.size() + " spans to " + endpoint + ": " + error);
+                result.fail();
+            } else if (MergifyHttpSender.isSuccess(status)) {
+                result.succeed();
+            } else if (status == 415 && compression == PayloadCompression.ZSTD) {
+                LOGGER.warning(endpoint + " does not accept zstd payloads, sending gzip instead");
+                this.compression = PayloadCompression.GZIP;
+                send(spans, PayloadCompression.GZIP, result);
+            } else {
+                LOGGER.warning("Failed to export " + spans.size() + " spans to " + endpoint + ": HTTP " + status);
+                result.fail();
+            }
+        });
+    }
+
+    // Completed once the exports pending so far are done
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofAll(new ArrayList<>(pending));
+    }
+
+    // The sender is shared, it is closed by MergifySpanExporter
+    @Override
+    public CompletableResultCode shutdown() {
+        shutdown = true;
+        return flush();
+    }
+
+    @Override
+    public String toString() {
+        return "RepositorySpanExporter{endpoint=" + endpoint + '}';
+    }
+}
@@ -0,0 +1,56 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.sdk.trace.IdGenerator;
+import java.util.function.Supplier;
+
+/**
+ * Generates random IDs, except for the spans started by {@link #withTraceparent}, which get the span
+ * ID of a traceparent recorded beforehand.
+ *
+ * <p>In async mode, stage spans are started by the graph event worker, possibly after the steps of
+ * the stage asked for its traceparent on the CPS VM thread. That thread reserves the span ID of the
+ * stage when its start node becomes a head, so the traceparent is known before the span exists.
+ */
+final class ReservedSpanIds implements IdGenerator {
+    static final ReservedSpanIds INSTANCE = new ReservedSpanIds();
+
+    private static final IdGenerator RANDOM = IdGenerator.random();
+    // "00-" + 32 hex trace ID + "-" + 16 hex span ID + "-01"
+    private static final int TRACEPARENT_SPAN_ID_START = 36;
+    private static final int TRACEPARENT_SPAN_ID_END = 52;
+
+    private static final ThreadLocal<String> reserved = new ThreadLocal<>();
+
+    private ReservedSpanIds() {}
+
+    static String reserveSpanId() {
+        return RANDOM.generateSpanId();
+    }
+
+    /**
+     * Starts a span with the span ID of the traceparent.
+     */
+    static <T> T withTraceparent(String traceparent, Supplier<T> start) {
+        reserved.set(traceparent.substring(TRACEPARENT_SPAN_ID_START, TRACEPARENT_SPAN_ID_END));
+        try {
+            return start.get();
+        } finally {
+            reserved.remove();
+        }
+    }
+
+    @Override
+    public String generateSpanId() {
+        String spanId = reserved.get();
+        if (spanId != null) {
+            reserved.remove();
+            return spanId;
+        }
+        return RANDOM.generateSpanId();
+    }
+
+    @Override
+    public String generateTraceId() {
+        return RANDOM.generateTraceId();
+    }
+}
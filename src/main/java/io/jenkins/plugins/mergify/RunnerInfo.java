@@ -4,6 +4,8 @@ import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.Node;
 import hudson.model.labels.LabelAtom;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
 import java.util.List;
 import java.util.stream.Collectors;
 import jenkins.model.Jenkins;
@@ -15,11 +17,24 @@ public final class RunnerInfo {
     private final Integer id;
     private final String name;
     private final List<String> labels;
+    // Persisted with the JobMetadata of the run in build.xml, so only rebuilt from the fields above
+    private transient volatile Attributes attributes;
 
     public RunnerInfo(Integer id, String name, List<String> labels) {
         this.id = id;
         this.name = (name == null || name.isEmpty()) ? BUILT_IN_NODE_NAME : name;
         this.labels = labels == null ? List.of() : List.copyOf(labels);
+        this.attributes = buildAttributes();
+    }
+
+    private Attributes buildAttributes() {
+        AttributesBuilder builder = Attributes.builder()
+                .put(TraceUtils.CICD_PIPELINE_LABELS, labels != null ? labels : List.of())
+                .put(TraceUtils.CICD_PIPELINE_RUNNER_NAME, name);
+        if (id != null) {
+            builder.put(TraceUtils.CICD_PIPELINE_RUNNER_ID, id.longValue());
+        }
+        return builder.build();
     }
 
     public Integer getId() {
@@ -34,6 +49,17 @@ public final class RunnerInfo {
         return labels;
     }
 
+    // Span attributes describing this runner
+    public Attributes getAttributes() {
+        Attributes result = attributes;
+        if (result == null) {
+            // Loaded from build.xml
+            result = buildAttributes();
+            attributes = result;
+        }
+        return result;
+    }
+
     public static RunnerInfo fromExecutor(Executor executor) {
         if (executor == null) {
             return null;
@@ -44,6 +70,10 @@ public final class RunnerInfo {
     }
 
     public static RunnerInfo fromNodeName(String nodeName) {
+        return RunnerInfoCache.get().forNodeName(nodeName);
+    }
+
+    static RunnerInfo resolveNodeName(String nodeName) {
         return new RunnerInfo(null, nodeName, extractLabels(resolveNode(nodeName)));
     }
 
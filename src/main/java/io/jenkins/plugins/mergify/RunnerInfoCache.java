@@ -0,0 +1,126 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import jenkins.model.NodeListener;
+import jenkins.util.SystemProperties;
+
+/**
+ * Shared cache of {@link RunnerInfo} per node name.
+ *
+ * <p>Entries are invalidated when a node is created, updated, deleted, goes online or offline, and
+ * dropped altogether when the node configuration changes, e.g. after a label edit.
+ */
+final class RunnerInfoCache {
+    private static final Logger LOGGER = Logger.getLogger(RunnerInfoCache.class.getName());
+
+    static final int MAX_SIZE = SystemProperties.getInteger(RunnerInfoCache.class.getName() + ".maxSize", 4096);
+
+    private static final RunnerInfoCache INSTANCE = new RunnerInfoCache(MAX_SIZE);
+
+    private final Map<String, RunnerInfo> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final int maxSize;
+
+    RunnerInfoCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    static RunnerInfoCache get() {
+        return INSTANCE;
+    }
+
+    private static String key(String nodeName) {
+        return (nodeName == null || nodeName.isEmpty()) ? RunnerInfo.BUILT_IN_NODE_NAME : nodeName;
+    }
+
+    RunnerInfo forNodeName(String nodeName) {
+        String key = key(nodeName);
+        RunnerInfo info = entries.get(key);
+        if (info != null) {
+            hits.increment();
+            return info;
+        }
+        misses.increment();
+        info = RunnerInfo.resolveNodeName(key);
+        if (entries.size() >= maxSize) {
+            // Any entry will do: a node evicted while still in use is simply resolved again
+            Iterator<String> keys = entries.keySet().iterator();
+            if (keys.hasNext()) {
+                entries.remove(keys.next());
+            }
+        }
+        entries.put(key, info);
+        return info;
+    }
+
+    void invalidate(String nodeName) {
+        entries.remove(key(nodeName));
+    }
+
+    void invalidateAll() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    @Extension
+    public static class NodeInvalidator extends NodeListener {
+        @Override
+        protected void onCreated(Node node) {
+            get().invalidate(node.getNodeName());
+        }
+
+        @Override
+        protected void onUpdated(Node oldOne, Node newOne) {
+            get().invalidate(oldOne.getNodeName());
+            get().invalidate(newOne.getNodeName());
+        }
+
+        @Override
+        protected void onDeleted(Node node) {
+            get().invalidate(node.getNodeName());
+        }
+    }
+
+    @Extension
+    public static class ComputerInvalidator extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            get().invalidate(c.getName());
+        }
+
+        @Override
+        public void onOffline(Computer c, OfflineCause cause) {
+            get().invalidate(c.getName());
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            RunnerInfoCache cache = get();
+            LOGGER.fine("Node configuration changed, dropping " + cache.size() + " cached runners ("
+                    + cache.getHitCount() + " hits, " + cache.getMissCount() + " misses so far)");
+            cache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.trace.IdGenerator;
+import io.opentelemetry.sdk.trace.data.DelegatingSpanData;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the {@link SpanFilterRule}s to the spans about to be exported, the first matching rule
+ * of a span deciding.
+ *
+ * <p>Only spans without children are filtered, so that traces stay connected. Children end before
+ * their parent, so a span has no children if none was seen in its batch or recently. Collapsed spans
+ * are replaced by one summary span per parent and batch, counting them and their total duration.
+ */
+final class SpanFilter {
+    static final AttributeKey<Long> COLLAPSED_SPAN_COUNT = AttributeKey.longKey("mergify.collapsed.span_count");
+    static final AttributeKey<Long> COLLAPSED_DURATION_MILLIS =
+            AttributeKey.longKey("mergify.collapsed.duration_ms");
+
+    // Parent span IDs remembered across batches
+    static final int MAX_RECENT_PARENTS = 65536;
+
+    private final List<SpanFilterRule> rules;
+    private final Set<String> recentParents;
+
+    SpanFilter(List<SpanFilterRule> rules) {
+        this(rules, MAX_RECENT_PARENTS);
+    }
+
+    SpanFilter(List<SpanFilterRule> rules, int maxRecentParents) {
+        this.rules = List.copyOf(rules);
+        this.recentParents = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxRecentParents;
+            }
+        });
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    private SpanFilterRule.Action decide(SpanData span) {
+        Attributes attributes = span.getAttributes();
+        if (!"step".equals(attributes.get(TraceUtils.CICD_PIPELINE_TASK_SCOPE))) {
+            return null;
+        }
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(span.getEndEpochNanos() - span.getStartEpochNanos());
+        String taskName = attributes.get(TraceUtils.CICD_PIPELINE_TASK_NAME);
+        String taskResult = attributes.get(TraceUtils.CICD_PIPELINE_TASK_RUN_RESULT);
+        for (SpanFilterRule rule : rules) {
+            if (rule.matches(taskName, durationMillis, taskResult)) {
+                return rule.getAction();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the spans to export, the kept ones followed by the summary spans
+     */
+    synchronized List<SpanData> apply(Collection<SpanData> spans) {
+        Map<SpanData, SpanFilterRule.Action> filtered = new IdentityHashMap<>();
+        for (SpanData span : spans) {
+            SpanFilterRule.Action action = decide(span);
+            if (action != null) {
+                filtered.put(span, action);
+            }
+        }
+        if (filtered.isEmpty()) {
+            recordParents(spans);
+            return spans instanceof List<SpanData> list ? list : new ArrayList<>(spans);
+        }
+
+        // Keep the filtered spans that are the parent of a kept or collapsed one, until none is left
+        boolean changed = true;
+        while (changed) {
+            Set<String> parents = new HashSet<>();
+            for (SpanData span : spans) {
+                if (filtered.get(span) != SpanFilterRule.Action.DROP) {
+                    parents.add(span.getParentSpanId());
+                }
+            }
+            changed = filtered.keySet()
+                    .removeIf(span -> parents.contains(span.getSpanId()) || recentParents.contains(span.getSpanId()));
+        }
+
+        List<SpanData> kept = new ArrayList<>(spans.size());
+        Map<String, List<SpanData>> collapsedByParent = new LinkedHashMap<>();
+        for (SpanData span : spans) {
+            SpanFilterRule.Action action = filtered.get(span);
+            if (action == null) {
+                kept.add(span);
+            } else if (action == SpanFilterRule.Action.COLLAPSE) {
+                collapsedByParent
+                        .computeIfAbsent(span.getTraceId() + "/" + span.getParentSpanId(), key -> new ArrayList<>())
+                        .add(span);
+            } else {
+                onFiltered(span, 1, 0, 0);
+            }
+        }
+        for (List<SpanData> collapsed : collapsedByParent.values()) {
+            SpanData summary = new SummarySpanData(collapsed);
+            onFiltered(summary, 0, collapsed.size(), 1);
+            kept.add(summary);
+        }
+        recordParents(kept);
+        return kept;
+    }
+
+    private void recordParents(Collection<SpanData> spans) {
+        for (SpanData span : spans) {
+            if (span.getParentSpanContext().isValid()) {
+                recentParents.add(span.getParentSpanId());
+            }
+        }
+    }
+
+    private static void onFiltered(SpanData span, int dropped, int collapsed, int summaries) {
+        String repositoryName = span.getAttributes().get(TraceUtils.VCS_REPOSITORY_NAME);
+        if (repositoryName != null) {
+            ExportMetrics.get().repository(repositoryName).onFiltered(dropped, collapsed, summaries);
+        }
+    }
+
+    private static final class SummarySpanData extends DelegatingSpanData {
+        private final SpanContext spanContext;
+        private final String name;
+        private final long startEpochNanos;
+        private final long endEpochNanos;
+        private final Attributes attributes;
+        private final StatusData status;
+
+        SummarySpanData(List<SpanData> collapsed) {
+            super(collapsed.get(0));
+            SpanData first = collapsed.get(0);
+            this.spanContext = SpanContext.create(
+                    first.getTraceId(),
+                    IdGenerator.random().generateSpanId(),
+                    first.getSpanContext().getTraceFlags(),
+                    first.getSpanContext().getTraceState());
+
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            long totalNanos = 0;
+            boolean failed = false;
+            for (SpanData span : collapsed) {
+                start = Math.min(start, span.getStartEpochNanos());
+                end = Math.max(end, span.getEndEpochNanos());
+                totalNanos += span.getEndEpochNanos() - span.getStartEpochNanos();
+                failed |= span.getStatus().getStatusCode() == StatusCode.ERROR;
+            }
+            this.startEpochNanos = start;
+            this.endEpochNanos = end;
+            this.name = "Collapsed(" + collapsed.size() + " spans)";
+            this.status = failed ? StatusData.error() : StatusData.ok();
+            this.attributes = first.getAttributes().toBuilder()
+                    .put(TraceUtils.CICD_PIPELINE_TASK_NAME, name)
+                    .put(TraceUtils.CICD_PIPELINE_TASK_RUN_ID, spanContext.getSpanId())
+                    .put(TraceUtils.CICD_PIPELINE_TASK_RUN_RESULT, failed ? "failure" : "success")
+                    .put(COLLAPSED_SPAN_COUNT, (long) collapsed.size())
+                    .put(COLLAPSED_DURATION_MILLIS, TimeUnit.NANOSECONDS.toMillis(totalNanos))
+                    .build();
+        }
+
+        @Override
+        public SpanContext getSpanContext() {
+            return spanContext;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getStartEpochNanos() {
+            return startEpochNanos;
+        }
+
+        @Override
+        public long getEndEpochNanos() {
+            return endEpochNanos;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public int getTotalAttributeCount() {
+            return attributes.size();
+        }
+
+        @Override
+        public StatusData getStatus() {
+            return status;
+        }
+
+        @Override
+        public List<EventData> getEvents() {
+            return List.of();
+        }
+
+        @Override
+        public int getTotalRecordedEvents() {
+            return 0;
+        }
+
+        @Override
+        public List<LinkData> getLinks() {
+            return List.of();
+        }
+
+        @Override
+        public int getTotalRecordedLinks() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import java.util.regex.Pattern;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+/**
+ * Drops or collapses the stage and step spans matching a task name pattern, a duration and a
+ * result. The job spans are never filtered.
+ */
+public class SpanFilterRule extends AbstractDescribableImpl<SpanFilterRule> {
+    static final String ANY_RESULT = "any";
+
+    public enum Action {
+        DROP("Drop"),
+        COLLAPSE("Collapse into one summary span per parent");
+
+        private final String displayName;
+
+        Action(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final String namePattern;
+    private final long maxDurationMillis;
+    private final String result;
+    private final Action action;
+
+    private transient volatile Pattern compiledNamePattern;
+
+    @DataBoundConstructor
+    public SpanFilterRule(String namePattern, long maxDurationMillis, String result, Action action) {
+        this.namePattern = Util.fixEmptyAndTrim(namePattern);
+        this.maxDurationMillis = Math.max(0, maxDurationMillis);
+        this.result = Util.fixEmpty(result) != null ? result : ANY_RESULT;
+        this.action = action != null ? action : Action.COLLAPSE;
+    }
+
+    // Glob on the task name: `*` matches any characters, the rest is literal
+    static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : glob.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public String getNamePattern() {
+        return namePattern;
+    }
+
+    public long getMaxDurationMillis() {
+        return maxDurationMillis;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @param taskName the cicd.pipeline.task.name of the span
+     * @param taskResult the cicd.pipeline.task.run.result of the span
+     */
+    boolean matches(String taskName, long durationMillis, String taskResult) {
+        if (maxDurationMillis > 0 && durationMillis >= maxDurationMillis) {
+            return false;
+        }
+        if (!ANY_RESULT.equals(result) && !result.equals(taskResult)) {
+            return false;
+        }
+        if (namePattern == null) {
+            return true;
+        }
+        Pattern pattern = compiledNamePattern;
+        if (pattern == null) {
+            pattern = compileGlob(namePattern);
+            compiledNamePattern = pattern;
+        }
+        return taskName != null && pattern.matcher(taskName).matches();
+    }
+
+    @Override
+    public String toString() {
+        return "SpanFilterRule{namePattern='" + namePattern + "', maxDurationMillis=" + maxDurationMillis
+                + ", result=" + result + ", action=" + action + '}';
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<SpanFilterRule> {
+        @Override
+        public String getDisplayName() {
+            return "Span filter rule";
+        }
+
+        public ListBoxModel doFillResultItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Any", ANY_RESULT);
+            items.add("Success", "success");
+            items.add("Failure", "failure");
+            return items;
+        }
+
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        @POST
+        public FormValidation doCheckMaxDurationMillis(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStep;
+import io.opentelemetry.api.trace.Span;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the open spans of every running build.
+ *
+ * <p>State is scoped to each run and keyed by the run externalizable ID plus the flow node ID or
+ * build step key, so no live {@link Run}, {@code FlowNode} or {@link BuildStep} object is retained.
+ * Entries are dropped when the run is finalized or deleted, and {@link Sweeper} ends and drops the
+ * ones whose run is gone or no longer building.
+ */
+final class SpanRegistry {
+    private static final Logger LOGGER = Logger.getLogger(SpanRegistry.class.getName());
+
+    private static final SpanRegistry INSTANCE = new SpanRegistry();
+
+    private final Map<String, RunSpans> runs = new ConcurrentHashMap<>();
+
+    static SpanRegistry get() {
+        return INSTANCE;
+    }
+
+    static String stepKey(BuildStep step) {
+        // The same BuildStep instance is shared by concurrent builds of one project,
+        // but it only runs once at a time within a given build.
+        return step.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(step));
+    }
+
+    @NonNull
+    RunSpans forRun(@NonNull Run<?, ?> run) {
+        return forRun(run.getExternalizableId());
+    }
+
+    @NonNull
+    RunSpans forRun(@NonNull String runId) {
+        RunSpans spans = runs.computeIfAbsent(runId, RunSpans::new);
+        spans.touch();
+        return spans;
+    }
+
+    @CheckForNull
+    RunSpans getRun(@NonNull Run<?, ?> run) {
+        return runs.get(run.getExternalizableId());
+    }
+
+    @CheckForNull
+    RunSpans remove(@NonNull Run<?, ?> run) {
+        return runs.remove(run.getExternalizableId());
+    }
+
+    int size() {
+        return runs.size();
+    }
+
+    int openSpanCount() {
+        int count = 0;
+        for (RunSpans spans : runs.values()) {
+            count += spans.openSpanCount();
+        }
+        return count;
+    }
+
+    void clear() {
+        runs.clear();
+    }
+
+    /**
+     * Ends and drops the entries of runs that are gone or no longer building and that have not
+     * been touched for at least {@code gracePeriodMillis}.
+     *
+     * @return the number of dropped runs
+     */
+    int sweep(long gracePeriodMillis) {
+        long now = System.currentTimeMillis();
+        int swept = 0;
+        for (RunSpans spans : runs.values()) {
+            if (now - spans.getLastAccess() < gracePeriodMillis) {
+                continue;
+            }
+            Run<?, ?> run = Run.fromExternalizableId(spans.getRunId());
+            if (run != null && run.isBuilding()) {
+                continue;
+            }
+            if (!runs.remove(spans.getRunId(), spans)) {
+                continue;
+            }
+            LOGGER.fine("Ending orphaned spans of " + spans.getRunId());
+            spans.endAll(run);
+            swept++;
+        }
+        return swept;
+    }
+
+    /**
+     * A pipeline step that started and is not exported yet, its span only being created when it
+     * ends and turns out to be long enough.
+     *
+     * @param stageId the ID of the innermost stage start node running it, or {@code null}
+     * @param atomic whether it is a {@code StepAtomNode}, ended by its first child, or a block step
+     */
+    record PendingStep(
+            String name,
+            String nodeId,
+            @CheckForNull String stageId,
+            @CheckForNull String workspaceNode,
+            long startTimeMillis,
+            boolean atomic) {}
+
+    /**
+     * A pipeline {@code node { }} block waiting for its executor.
+     *
+     * @param label the requested label, or {@code null} for any executor
+     */
+    record PendingAllocation(@CheckForNull String label, long startTimeMillis) {}
+
+    static final class RunSpans {
+        // Key of the step stats of the steps outside of any stage
+        private static final String JOB_STEP_STATS = "";
+
+        private final String runId;
+        private final Map<String, Span> stageSpans = new ConcurrentHashMap<>();
+        private final Map<String, Span> branchSpans = new ConcurrentHashMap<>();
+        private final Map<String, Span> stepSpans = new ConcurrentHashMap<>();
+        private final Map<String, RunnerInfo> stageRunners = new ConcurrentHashMap<>();
+        private final Map<String, String> stageTraceparents = new ConcurrentHashMap<>();
+        private final Map<String, PendingStep> pendingSteps = new ConcurrentHashMap<>();
+        private final Map<String, StepStats> stepStats = new ConcurrentHashMap<>();
+        private final Map<String, PendingAllocation> pendingAllocations = new ConcurrentHashMap<>();
+        private final FlowGraphIndex graphIndex =
+                new FlowGraphIndex(Listener::isStageStartNode, Listener::isBranchStartNode);
+        private final CriticalPath criticalPath = new CriticalPath();
+        private volatile Span jobSpan;
+        private volatile long lastAccess;
+        // Negative when steps are not traced
+        private volatile long stepSpanMinDurationMillis = -1;
+
+        RunSpans(String runId) {
+            this.runId = runId;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        String getRunId() {
+            return runId;
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        FlowGraphIndex getGraphIndex() {
+            return graphIndex;
+        }
+
+        CriticalPath getCriticalPath() {
+            return criticalPath;
+        }
+
+        @CheckForNull
+        Span getJobSpan() {
+            return jobSpan;
+        }
+
+        void setJobSpan(Span span) {
+            this.jobSpan = span;
+        }
+
+        void putStageSpan(String nodeId, Span span) {
+            stageSpans.put(nodeId, span);
+        }
+
+        @CheckForNull
+        Span getStageSpan(String nodeId) {
+            return stageSpans.get(nodeId);
+        }
+
+        @CheckForNull
+        Span removeStageSpan(String nodeId) {
+            return stageSpans.remove(nodeId);
+        }
+
+        void putBranchSpan(String nodeId, Span span) {
+            branchSpans.put(nodeId, span);
+        }
+
+        @CheckForNull
+        Span getBranchSpan(String nodeId) {
+            return branchSpans.get(nodeId);
+        }
+
+        @CheckForNull
+        Span removeBranchSpan(String nodeId) {
+            return branchSpans.remove(nodeId);
+        }
+
+        void putStageTraceparent(String nodeId, String traceparent) {
+            stageTraceparents.put(nodeId, traceparent);
+        }
+
+        @CheckForNull
+        String getStageTraceparent(String nodeId) {
+            return stageTraceparents.get(nodeId);
+        }
+
+        void removeStageTraceparent(String nodeId) {
+            stageTraceparents.remove(nodeId);
+        }
+
+        void putStepSpan(String stepKey, Span span) {
+            stepSpans.put(stepKey, span);
+        }
+
+        @CheckForNull
+        Span removeStepSpan(String stepKey) {
+            return stepSpans.remove(stepKey);
+        }
+
+        void putStageRunnerIfAbsent(String nodeId, RunnerInfo info) {
+            stageRunners.putIfAbsent(nodeId, info);
+        }
+
+        @CheckForNull
+        RunnerInfo removeStageRunner(String nodeId) {
+            return stageRunners.remove(nodeId);
+        }
+
+        boolean isTracingSteps() {
+            return stepSpanMinDurationMillis >= 0;
+        }
+
+        long getStepSpanMinDurationMillis() {
+            return stepSpanMinDurationMillis;
+        }
+
+        void setStepSpanMinDurationMillis(long stepSpanMinDurationMillis) {
+            this.stepSpanMinDurationMillis = stepSpanMinDurationMillis;
+        }
+
+        void putPendingStep(PendingStep step) {
+            pendingSteps.put(step.nodeId(), step);
+        }
+
+        @CheckForNull
+        PendingStep removePendingStep(String nodeId) {
+            return pendingSteps.remove(nodeId);
+        }
+
+        @CheckForNull
+        PendingStep removePendingAtomicStep(String nodeId) {
+            PendingStep step = pendingSteps.get(nodeId);
+            return step != null && step.atomic() && pendingSteps.remove(nodeId, step) ? step : null;
+        }
+
+        int pendingStepCount() {
+            return pendingSteps.size();
+        }
+
+        /**
+         * @param stageId the ID of a stage start node, or {@code null} for the steps outside of any stage
+         */
+        @NonNull
+        StepStats stepStats(@CheckForNull String stageId) {
+            return stepStats.computeIfAbsent(stageId != null ? stageId : JOB_STEP_STATS, id -> new StepStats());
+        }
+
+        @CheckForNull
+        StepStats removeStepStats(@CheckForNull String stageId) {
+            return stepStats.remove(stageId != null ? stageId : JOB_STEP_STATS);
+        }
+
+        void putPendingAllocation(String nodeId, PendingAllocation allocation) {
+            pendingAllocations.put(nodeId, allocation);
+        }
+
+        @CheckForNull
+        PendingAllocation removePendingAllocation(String nodeId) {
+            return pendingAllocations.remove(nodeId);
+        }
+
+        int openSpanCount() {
+            return stageSpans.size()
+                    + branchSpans.size()
+                    + stepSpans.size()
+                    + (jobSpan != null ? 1 : 0);
+        }
+
+        void endAll(@CheckForNull Run<?, ?> run) {
+            for (Span span : stageSpans.values()) {
+                TraceUtils.endJobStepSpan(span, run, true);
+            }
+            stageSpans.clear();
+            for (Span span : branchSpans.values()) {
+                TraceUtils.endJobStepSpan(span, run, true);
+            }
+            branchSpans.clear();
+            criticalPath.clear();
+            for (Span span : stepSpans.values()) {
+                TraceUtils.endJobStepSpan(span, run, true);
+            }
+            stepSpans.clear();
+            stageRunners.clear();
+            stageTraceparents.clear();
+            pendingSteps.clear();
+            pendingAllocations.clear();
+            stepStats.clear();
+
+            Span span = jobSpan;
+            jobSpan = null;
+            if (span == null) {
+                return;
+            }
+            if (run != null) {
+                TraceUtils.endJobSpan(span, run);
+            } else {
+                span.end();
+            }
+        }
+    }
+
+    @Extension
+    public static class Sweeper extends AsyncPeriodicWork {
+        private static final long RECURRENCE_PERIOD = TimeUnit.MINUTES.toMillis(15);
+
+        public Sweeper() {
+            super("Mergify span registry sweeper");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return RECURRENCE_PERIOD;
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINE;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            SpanRegistry registry = SpanRegistry.get();
+            int swept = registry.sweep(RECURRENCE_PERIOD);
+            LOGGER.fine("Span registry: " + registry.size() + " runs, " + registry.openSpanCount()
+                    + " open spans, " + swept + " orphaned runs swept");
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jenkins.util.SystemProperties;
+
+/**
+ * Disk spool of encoded OTLP payloads, one lane per repository.
+ *
+ * <p>Each lane is an append-only log split in segment files, each record being framed as
+ * {@code [length][crc32][payload]}. Segments are numbered in creation order across all lanes.
+ * Payloads are replayed in order by {@link Replayer}; a lane whose delivery fails is retried with
+ * an exponential backoff. Delivery is at least once: the read position is only kept in memory, so
+ * a restart replays the current segment from its start. Segments are forced to disk when rolled
+ * and on each replay, and a lane left empty by its replay is removed.
+ *
+ * <p>The spool is bounded by {@link #MAX_BYTES}: when full, the oldest segments are dropped first,
+ * whatever their lane.
+ */
+final class SpanSpool {
+    private static final Logger LOGGER = Logger.getLogger(SpanSpool.class.getName());
+
+    static final long MAX_BYTES =
+            SystemProperties.getLong(SpanSpool.class.getName() + ".maxBytes", 256L * 1024 * 1024);
+    static final long SEGMENT_BYTES =
+            SystemProperties.getLong(SpanSpool.class.getName() + ".segmentBytes", 8L * 1024 * 1024);
+
+    static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+    /**
+     * Delivers a spooled payload.
+     */
+    interface Sender {
+        /**
+         * @return false if the payload should be retried later
+         */
+        boolean send(String repositoryName, byte[] payload);
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    SpanSpool(Path directory, long maxBytes, long segmentBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        load();
+    }
+
+    // Picks up the segments left by a previous run of the controller
+    private void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> laneDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path laneDirectory : laneDirectories) {
+                String repositoryName =
+                        URLDecoder.decode(laneDirectory.getFileName().toString(), StandardCharsets.UTF_8);
+                Lane lane = new Lane(repositoryName, laneDirectory);
+                lane.load();
+                if (lane.hasBacklog()) {
+                    lanes.put(repositoryName, lane);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the span spool from " + directory, e);
+        }
+        if (totalBytes.get() > 0) {
+            LOGGER.info("Span spool holds " + totalBytes.get() + " bytes for " + lanes.size() + " repositories");
+        }
+    }
+
+    private Lane lane(String repositoryName) {
+        return lanes.computeIfAbsent(
+                repositoryName,
+                name -> new Lane(name, directory.resolve(URLEncoder.encode(name, StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Appends a payload at the end of the lane of a repository.
+     *
+     * @return false if the payload could not be spooled and is lost
+     */
+    boolean append(String repositoryName, byte[] payload) {
+        int recordSize = HEADER_BYTES + payload.length;
+        try {
+            if (!reserve(recordSize)) {
+                LOGGER.warning("Span spool is full (" + maxBytes + " bytes), dropping " + payload.length
+                        + " bytes of spans of repository `" + repositoryName + "`");
+                return false;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to make room in the span spool", e);
+            return false;
+        }
+        try {
+            while (true) {
+                Lane lane = lane(repositoryName);
+                if (lane.append(payload)) {
+                    return true;
+                }
+                // Removed once empty by a replay meanwhile
+                lanes.remove(repositoryName, lane);
+            }
+        } catch (IOException e) {
+            totalBytes.addAndGet(-recordSize);
+            LOGGER.log(Level.WARNING, "Failed to spool spans of repository `" + repositoryName + "`", e);
+            return false;
+        }
+    }
+
+    // Counts the record in the spool size, after making room by dropping the oldest segments of
+    // any lane
+    private synchronized boolean reserve(int recordSize) throws IOException {
+        if (recordSize > maxBytes) {
+            return false;
+        }
+        while (totalBytes.get() + recordSize > maxBytes) {
+            Lane oldest = null;
+            long oldestSequence = Long.MAX_VALUE;
+            for (Lane lane : lanes.values()) {
+                long sequence = lane.firstSequence();
+                if (sequence >= 0 && sequence < oldestSequence) {
+                    oldest = lane;
+                    oldestSequence = sequence;
+                }
+            }
+            if (oldest == null) {
+                return false;
+            }
+            // The segment may have been replayed meanwhile, which made room as well
+            oldest.drop(oldestSequence);
+        }
+        totalBytes.addAndGet(recordSize);
+        return true;
+    }
+
+    /**
+     * Whether the repository still has spooled payloads, in which case new ones should be
+     * appended after them rather than sent directly.
+     */
+    boolean hasBacklog(String repositoryName) {
+        Lane lane = lanes.get(repositoryName);
+        return lane != null && lane.hasBacklog();
+    }
+
+    /**
+     * Sends the spooled payloads of every lane that is not backing off.
+     */
+    void replay(Sender sender) {
+        long now = System.currentTimeMillis();
+        for (Lane lane : lanes.values()) {
+            if (lane.hasBacklog() && now >= lane.nextAttemptMillis) {
+                lane.replay(sender);
+            }
+            lane.force();
+            if (lane.retireIfEmpty()) {
+                lanes.remove(lane.repositoryName, lane);
+            }
+        }
+    }
+
+    long sizeBytes() {
+        return totalBytes.get();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private record Record(long sequence, long offset, int size, byte[] payload) {}
+
+    private final class Lane {
+        private final String repositoryName;
+        private final Path directory;
+        // Segment sequence -> size in bytes, the first one being read and the last one written
+        private final TreeMap<Long, Long> segments = new TreeMap<>();
+        private FileChannel active;
+        private long activeSequence = -1;
+        // Whether the active segment was written since it was last forced to disk
+        private boolean dirty;
+        // Set once removed from the spool, a new lane is then used for the repository
+        private boolean retired;
+        private long readOffset;
+        private volatile long nextAttemptMillis;
+        private long backoffMillis;
+
+        Lane(String repositoryName, Path directory) {
+            this.repositoryName = repositoryName;
+            this.directory = directory;
+        }
+
+        private Path segmentPath(long sequence) {
+            return directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        }
+
+        synchronized void load() throws IOException {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long size = Files.size(file);
+                    long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(sequence, size);
+                    totalBytes.addAndGet(size);
+                    nextSequence.accumulateAndGet(sequence + 1, Math::max);
+                }
+            }
+        }
+
+        synchronized boolean hasBacklog() {
+            return !segments.isEmpty();
+        }
+
+        // The record size is already counted by the spool
+        synchronized boolean append(byte[] payload) throws IOException {
+            if (retired) {
+                return false;
+            }
+            int recordSize = HEADER_BYTES + payload.length;
+            if (active == null || segments.get(activeSequence) + recordSize > segmentBytes) {
+                roll();
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+            buffer.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+            while (buffer.hasRemaining()) {
+                active.write(buffer);
+            }
+            segments.merge(activeSequence, (long) recordSize, Long::sum);
+            dirty = true;
+            return true;
+        }
+
+        // The oldest segment of the lane, or -1 if it has none
+        synchronized long firstSequence() {
+            return segments.isEmpty() ? -1 : segments.firstKey();
+        }
+
+        // Drops the oldest segment of the lane to make room, unless it is no longer the given one
+        synchronized void drop(long sequence) throws IOException {
+            if (!segments.isEmpty() && segments.firstKey() == sequence) {
+                LOGGER.warning("Span spool is full, dropping segment " + sequence + " of repository `"
+                        + repositoryName + "`");
+                delete(sequence);
+            }
+        }
+
+        synchronized void force() {
+            if (active != null && dirty) {
+                try {
+                    active.force(false);
+                    dirty = false;
+                } catch (IOException e) {
+                    LOGGER.log(
+                            Level.WARNING, "Failed to sync the span spool of repository `" + repositoryName + "`", e);
+                }
+            }
+        }
+
+        // Retires the lane if it has nothing left to replay, along with its directory
+        synchronized boolean retireIfEmpty() {
+            if (!segments.isEmpty()) {
+                return false;
+            }
+            retired = true;
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to delete the span spool directory " + directory, e);
+            }
+            return true;
+        }
+
+        private void roll() throws IOException {
+            if (active != null) {
+                active.force(false);
+                dirty = false;
+                active.close();
+            }
+            Files.createDirectories(directory);
+            activeSequence = nextSequence.getAndIncrement();
+            active = FileChannel.open(
+                    segmentPath(activeSequence),
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            segments.put(activeSequence, 0L);
+        }
+
+        private void delete(long sequence) throws IOException {
+            if (sequence == activeSequence) {
+                active.close();
+                active = null;
+                activeSequence = -1;
+                dirty = false;
+            }
+            if (sequence == segments.firstKey()) {
+                readOffset = 0;
+            }
+            totalBytes.addAndGet(-segments.remove(sequence));
+            Files.deleteIfExists(segmentPath(sequence));
+        }
+
+        // Reads the next record, deleting the segments fully replayed and skipping corrupted tails
+        synchronized Record next() throws IOException {
+            while (!segments.isEmpty()) {
+                long sequence = segments.firstKey();
+                long size = segments.get(sequence);
+                if (readOffset >= size) {
+                    delete(sequence);
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ)) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    readFully(channel, header, readOffset);
+                    int length = header.getInt();
+                    int crc = header.getInt();
+                    if (length >= 0 && readOffset + HEADER_BYTES + length <= size) {
+                        ByteBuffer payload = ByteBuffer.allocate(length);
+                        readFully(channel, payload, readOffset + HEADER_BYTES);
+                        if (checksum(payload.array()) == crc) {
+                            return new Record(sequence, readOffset, HEADER_BYTES + length, payload.array());
+                        }
+                    }
+                } catch (EOFException e) {
+                    // Truncated record, handled as a corrupted one
+                }
+                LOGGER.warning("Corrupted record in segment " + sequence + " of repository `" + repositoryName
+                        + "`, skipping the rest of the segment");
+                readOffset = size;
+            }
+            return null;
+        }
+
+        synchronized void consumed(Record record) {
+            // The segment may have been dropped meanwhile to make room
+            if (!segments.isEmpty() && segments.firstKey() == record.sequence() && readOffset == record.offset()) {
+                readOffset += record.size();
+            }
+        }
+
+        void replay(Sender sender) {
+            try {
+                Record record;
+                while ((record = next()) != null) {
+                    if (!sender.send(repositoryName, record.payload())) {
+                        backOff();
+                        return;
+                    }
+                    consumed(record);
+                }
+                backoffMillis = 0;
+            } catch (IOException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Failed to replay the spooled spans of repository `" + repositoryName + "`",
+                        e);
+                backOff();
+            }
+        }
+
+        private void backOff() {
+            backoffMillis = Math.min(Math.max(backoffMillis * 2, MIN_BACKOFF_MILLIS), MAX_BACKOFF_MILLIS);
+            nextAttemptMillis = System.currentTimeMillis() + backoffMillis;
+            LOGGER.fine("Replay of repository `" + repositoryName + "` failed, retrying in " + backoffMillis + "ms");
+        }
+    }
+
+    @Extension
+    public static class Replayer extends AsyncPeriodicWork {
+        private static final long RECURRENCE_PERIOD = TimeUnit.SECONDS.toMillis(5);
+
+        public Replayer() {
+            super("Mergify span spool replayer");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return RECURRENCE_PERIOD;
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            TracerService.replaySpool();
+        }
+    }
+}
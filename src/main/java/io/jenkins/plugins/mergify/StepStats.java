@@ -0,0 +1,50 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pipeline steps too short to be exported as spans, counted on the span of their stage instead.
+ */
+final class StepStats {
+    static final AttributeKey<Long> AGGREGATED_COUNT = AttributeKey.longKey("mergify.steps.aggregated.count");
+    static final AttributeKey<Long> AGGREGATED_DURATION_MILLIS =
+            AttributeKey.longKey("mergify.steps.aggregated.duration_ms");
+    // Step count per duration bucket, the upper bounds being ExportMetrics.LatencyHistogram.BOUNDS_MILLIS
+    // followed by +Inf
+    static final AttributeKey<List<Long>> AGGREGATED_HISTOGRAM =
+            AttributeKey.longArrayKey("mergify.steps.aggregated.histogram");
+
+    private final ExportMetrics.LatencyHistogram durations = new ExportMetrics.LatencyHistogram();
+
+    void record(long durationMillis) {
+        durations.record(durationMillis);
+    }
+
+    long getCount() {
+        return durations.getCount();
+    }
+
+    long getDurationMillis() {
+        return durations.getSum();
+    }
+
+    List<Long> getHistogram() {
+        List<Long> histogram = new ArrayList<>(ExportMetrics.LatencyHistogram.BOUNDS_MILLIS.length + 1);
+        for (int i = 0; i <= ExportMetrics.LatencyHistogram.BOUNDS_MILLIS.length; i++) {
+            histogram.add(durations.getBucketCount(i));
+        }
+        return histogram;
+    }
+
+    void applyTo(Span span) {
+        if (span == null) {
+            return;
+        }
+        span.setAttribute(AGGREGATED_COUNT, getCount());
+        span.setAttribute(AGGREGATED_DURATION_MILLIS, getDurationMillis());
+        span.setAttribute(AGGREGATED_HISTOGRAM, getHistogram());
+    }
+}
@@ -10,12 +10,14 @@ import hudson.tasks.BuildStep;
 import hudson.tasks.Builder;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
 import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
 import jakarta.annotation.Nonnull;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceOwner;
@@ -106,13 +108,19 @@ public class TraceUtils {
     }
 
     public static void endJobStepSpan(Span span, Run<?, ?> run, boolean isError, RunnerInfo runnerOverride) {
+        endJobStepSpan(span, run, isError, runnerOverride, 0);
+    }
+
+    // endTimeMillis is an epoch timestamp, or 0 to end the span now
+    public static void endJobStepSpan(
+            Span span, Run<?, ?> run, boolean isError, RunnerInfo runnerOverride, long endTimeMillis) {
         if (span == null) {
             LOGGER.fine("Got completed stage/step without span");
             return;
         }
         if (run == null) {
             LOGGER.fine("Got completed stage/step without RunSpanAction");
-            span.end();
+            endSpan(span, endTimeMillis);
             return;
         }
 
@@ -126,7 +134,15 @@ public class TraceUtils {
             span.setAttribute(CICD_PIPELINE_TASK_RUN_RESULT, "success");
             span.setStatus(StatusCode.OK);
         }
-        span.end();
+        endSpan(span, endTimeMillis);
+    }
+
+    private static void endSpan(Span span, long endTimeMillis) {
+        if (endTimeMillis > 0) {
+            span.end(endTimeMillis, TimeUnit.MILLISECONDS);
+        } else {
+            span.end();
+        }
     }
 
     private static String getStepName(BuildStep step) {
@@ -137,21 +153,41 @@ public class TraceUtils {
     }
 
     public static Span startJobStepSpan(Run<?, ?> run, Span parentSpan, String stepName, String stepId) {
+        return startJobStepSpan(run, parentSpan, stepName, stepId, 0);
+    }
+
+    // startTimeMillis is an epoch timestamp, or 0 to start the span now
+    public static Span startJobStepSpan(
+            Run<?, ?> run, Span parentSpan, String stepName, String stepId, long startTimeMillis) {
+        return startJobTaskSpan(run, parentSpan, "step", stepName, stepId, startTimeMillis);
+    }
+
+    // Time spent waiting for an executor, before the job or a node block starts
+    public static Span startJobQueueSpan(
+            Run<?, ?> run, Span parentSpan, String queueName, String queueId, long startTimeMillis) {
+        return startJobTaskSpan(run, parentSpan, "queue", queueName, queueId, startTimeMillis);
+    }
+
+    private static Span startJobTaskSpan(
+            Run<?, ?> run, Span parentSpan, String scope, String stepName, String stepId, long startTimeMillis) {
         if (parentSpan == null) {
             LOGGER.fine("Got completed step without parent span");
             return null;
         }
         Context parentContext = Context.current().with(parentSpan);
         Tracer tracer = TracerService.getTracer();
-        return tracer.spanBuilder(stepName)
+        SpanBuilder spanBuilder = tracer.spanBuilder(stepName)
                 .setParent(Context.current().with(parentSpan))
                 .setSpanKind(SpanKind.INTERNAL)
-                .setAttribute(CICD_PIPELINE_SCOPE, "step")
-                .setAttribute(CICD_PIPELINE_TASK_SCOPE, "step")
+                .setAttribute(CICD_PIPELINE_SCOPE, scope)
+                .setAttribute(CICD_PIPELINE_TASK_SCOPE, scope)
                 .setAttribute(CICD_PIPELINE_TASK_NAME, stepName)
                 .setAttribute(CICD_PIPELINE_TASK_RUN_ID, stepId)
-                .setParent(parentContext)
-                .startSpan();
+                .setParent(parentContext);
+        if (startTimeMillis > 0) {
+            spanBuilder.setStartTimestamp(startTimeMillis, TimeUnit.MILLISECONDS);
+        }
+        return spanBuilder.startSpan();
     }
 
     public static Span startJobSpan(Run<?, ?> run) {
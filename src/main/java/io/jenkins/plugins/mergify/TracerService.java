@@ -12,11 +12,11 @@ import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
-import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
-import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
 
 @Extension
 public class TracerService {
@@ -25,7 +25,10 @@ public class TracerService {
 
     private static final String SERVICE_NAME = "MergifyJenkinsPlugin";
 
+    private static final long FORGET_PENDING_SPANS_DELAY_SECONDS = 60;
+
     private static MergifySpanExporter spanExporter;
+    private static TunableSpanProcessor spanProcessor;
 
     private static Tracer tracer;
     private static SdkTracerProvider sdkTracerProvider;
@@ -38,6 +41,99 @@ public class TracerService {
         spanExporter.clearSpanExporters();
     }
 
+    static void resolvePendingSpans(String traceId, Attributes commonAttributes) {
+        if (spanExporter != null) {
+            spanExporter.resolvePendingSpans(traceId, commonAttributes);
+        }
+    }
+
+    // Called by PendingSpanBuffer.Sweeper
+    static void sweepPendingSpans() {
+        if (spanExporter != null) {
+            spanExporter.sweepPendingSpans();
+        }
+    }
+
+    // No SCM data comes after a run is finished, but its spans may still sit in the batch processor
+    // queue: they are dropped on arrival until the trace is forgotten
+    static void forgetPendingSpans(String traceId) {
+        if (spanExporter != null) {
+            MergifySpanExporter exporter = spanExporter;
+            exporter.abandonPendingSpans(traceId);
+            Timer.get()
+                    .schedule(
+                            () -> exporter.forgetPendingSpans(traceId),
+                            FORGET_PENDING_SPANS_DELAY_SECONDS,
+                            TimeUnit.SECONDS);
+        }
+    }
+
+    static void applyBatchTuning(MergifyConfigurationProvider config) {
+        if (spanProcessor != null) {
+            spanProcessor.resize(BatchTuning.of(config));
+        }
+    }
+
+    // Called by TunableSpanProcessor.Adapter
+    static void adaptBatchTuning() {
+        MergifyConfiguration config = MergifyConfiguration.get();
+        if (spanProcessor != null && config != null && config.isAdaptiveBatching()) {
+            spanProcessor.adapt(BatchTuning.of(config));
+        }
+    }
+
+    // Called by ExporterCache.IdleReaper
+    static void expireIdleExporters() {
+        if (spanExporter != null) {
+            spanExporter.expireIdleExporters();
+        }
+    }
+
+    // Called by SpanSpool.Replayer
+    static void replaySpool() {
+        if (spanExporter != null) {
+            spanExporter.replaySpool();
+        }
+    }
+
+    // Served by MergifyMetricsAction
+    static JSONObject describeMetrics() {
+        JSONObject json = new JSONObject();
+        TunableSpanProcessor processor = spanProcessor;
+        if (processor != null) {
+            JSONObject processorJson = new JSONObject();
+            processorJson.put("queueSize", processor.getQueueSize());
+            processorJson.put("maxQueueSize", processor.getTuning().maxQueueSize());
+            processorJson.put("maxExportBatchSize", processor.getTuning().maxExportBatchSize());
+            processorJson.put("endedSpans", processor.getEndedSpanCount());
+            processorJson.put("droppedSpans", processor.getDroppedSpanCount());
+            processorJson.put("resizes", processor.getResizeCount());
+            json.put("processor", processorJson);
+        }
+        JSONObject listenerJson = new JSONObject();
+        listenerJson.put("async", Listener.ASYNC);
+        listenerJson.put("heads", Listener.getHeadCount());
+        listenerJson.put("headNanos", Listener.getHeadNanos());
+        json.put("listener", listenerJson);
+        JSONObject registryJson = new JSONObject();
+        registryJson.put("runs", SpanRegistry.get().size());
+        registryJson.put("openSpans", SpanRegistry.get().openSpanCount());
+        json.put("registry", registryJson);
+        RunnerInfoCache runnerInfoCache = RunnerInfoCache.get();
+        JSONObject runnerInfoCacheJson = new JSONObject();
+        runnerInfoCacheJson.put("size", runnerInfoCache.size());
+        runnerInfoCacheJson.put("hits", runnerInfoCache.getHitCount());
+        runnerInfoCacheJson.put("misses", runnerInfoCache.getMissCount());
+        json.put("runnerInfoCache", runnerInfoCacheJson);
+        MergifySpanExporter exporter = spanExporter;
+        json.putAll(exporter != null ? exporter.describeMetrics() : ExportMetrics.get().toJson());
+        return json;
+    }
+
+    static TunableSpanProcessor getSpanProcessor() {
+        return spanProcessor;
+    }
+
     public static void forceFlush() {
         CompletableResultCode completableResultCode = sdkTracerProvider.forceFlush();
         completableResultCode.join(1, TimeUnit.SECONDS);
@@ -62,15 +158,16 @@ public class TracerService {
                 "jenkins"));
         Resource resource = Resource.getDefault().merge(jenkinsResource);
 
-        spanExporter = new MergifySpanExporter(MergifyConfiguration.get());
-
-        BatchSpanProcessor spanProcessor = BatchSpanProcessor.builder(spanExporter)
-                .setExporterTimeout(Duration.ofSeconds(60))
-                .setMaxExportBatchSize(10000)
-                .setExportUnsampledSpans(true)
-                .build();
+        SpanSpool spool = new SpanSpool(
+                Jenkins.get().getRootDir().toPath().resolve("mergify-spool"),
+                SpanSpool.MAX_BYTES,
+                SpanSpool.SEGMENT_BYTES);
+        MergifyConfiguration config = MergifyConfiguration.get();
+        spanExporter = new MergifySpanExporter(config, spool);
+        spanProcessor = new TunableSpanProcessor(spanExporter, BatchTuning.of(config));
         sdkTracerProvider = SdkTracerProvider.builder()
                 .setResource(resource)
+                .setIdGenerator(ReservedSpanIds.INSTANCE)
                 .addSpanProcessor(spanProcessor)
                 .build();
 
@@ -0,0 +1,218 @@
+package io.jenkins.plugins.mergify;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link BatchSpanProcessor} that can be resized while spans are flowing.
+ *
+ * <p>A resize builds a new processor and swaps it in; the previous one is shut down in the
+ * background, exporting what it still holds. Ended spans are handed over under a read lock, so that
+ * none reaches the previous processor once its shutdown has begun. In adaptive mode,
+ * {@link Adapter} sizes the queue and the batches from the span rate observed since its last run.
+ *
+ * <p>Spans are counted from their end until they are handed to the exporter, which gives the queue
+ * depth and lets the spans the queue has no room for be counted as dropped.
+ */
+final class TunableSpanProcessor implements SpanProcessor {
+    private static final Logger LOGGER = Logger.getLogger(TunableSpanProcessor.class.getName());
+
+    private final SpanExporter exporter;
+    private final SpanExporter retainedExporter;
+    // Held for writing while swapping the delegate, for reading while handing it a span
+    private final ReadWriteLock delegateLock = new ReentrantReadWriteLock();
+    private volatile BatchSpanProcessor delegate;
+    private volatile BatchTuning tuning;
+    private final LongAdder endedSpans = new LongAdder();
+    private final LongAdder droppedSpans = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private final AtomicLong queuedSpans = new AtomicLong();
+    private long lastAdaptedSpans;
+    private long lastAdaptedNanos = System.nanoTime();
+
+    TunableSpanProcessor(SpanExporter exporter, BatchTuning tuning) {
+        this.exporter = exporter;
+        this.retainedExporter = new RetainedExporter(exporter, queuedSpans);
+        this.tuning = tuning;
+        this.delegate = build(tuning);
+    }
+
+    private BatchSpanProcessor build(BatchTuning tuning) {
+        return BatchSpanProcessor.builder(retainedExporter)
+                .setMaxQueueSize(tuning.maxQueueSize())
+                .setMaxExportBatchSize(tuning.maxExportBatchSize())
+                .setScheduleDelay(Duration.ofMillis(tuning.scheduleDelayMillis()))
+                .setExporterTimeout(Duration.ofMillis(tuning.exporterTimeoutMillis()))
+                .setExportUnsampledSpans(true)
+                .build();
+    }
+
+    BatchTuning getTuning() {
+        return tuning;
+    }
+
+    long getEndedSpanCount() {
+        return endedSpans.sum();
+    }
+
+    long getDroppedSpanCount() {
+        return droppedSpans.sum();
+    }
+
+    long getQueueSize() {
+        return queuedSpans.get();
+    }
+
+    long getResizeCount() {
+        return resizes.sum();
+    }
+
+    synchronized void resize(BatchTuning newTuning) {
+        if (newTuning.equals(tuning)) {
+            return;
+        }
+        BatchSpanProcessor next = build(newTuning);
+        BatchSpanProcessor previous;
+        delegateLock.writeLock().lock();
+        try {
+            previous = delegate;
+            delegate = next;
+        } finally {
+            delegateLock.writeLock().unlock();
+        }
+        LOGGER.info("Resized span batches from " + tuning + " to " + newTuning);
+        tuning = newTuning;
+        resizes.increment();
+        // No span reaches the previous processor anymore, it exports what it holds and stops
+        previous.shutdown();
+    }
+
+    /**
+     * Resizes for the span rate observed since the previous call, if it changed significantly.
+     */
+    synchronized void adapt(BatchTuning configured) {
+        long spans = endedSpans.sum();
+        long now = System.nanoTime();
+        double seconds = (now - lastAdaptedNanos) / 1e9;
+        double rate = seconds > 0 ? (spans - lastAdaptedSpans) / seconds : 0;
+        lastAdaptedSpans = spans;
+        lastAdaptedNanos = now;
+
+        Runtime runtime = Runtime.getRuntime();
+        long availableHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        BatchTuning adapted = configured.adapt(rate, availableHeap);
+        if (adapted.differsSignificantly(tuning)) {
+            LOGGER.info(String.format("Observed %.1f spans/s with %d MB of heap available", rate, availableHeap >> 20));
+            resize(adapted);
+        }
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        endedSpans.increment();
+        delegateLock.readLock().lock();
+        try {
+            // Counts what the processor would silently drop on a full queue
+            if (queuedSpans.incrementAndGet() > tuning.maxQueueSize()) {
+                queuedSpans.decrementAndGet();
+                droppedSpans.increment();
+                return;
+            }
+            delegate.onEnd(span);
+        } finally {
+            delegateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return delegate.forceFlush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        CompletableResultCode result = new CompletableResultCode();
+        delegate.shutdown().whenComplete(() -> exporter.shutdown().whenComplete(result::succeed));
+        return result;
+    }
+
+    // Outlives the processors built on top of it, only the last shutdown reaches the exporter
+    private static final class RetainedExporter implements SpanExporter {
+        private final SpanExporter exporter;
+        private final AtomicLong queuedSpans;
+
+        RetainedExporter(SpanExporter exporter, AtomicLong queuedSpans) {
+            this.exporter = exporter;
+            this.queuedSpans = queuedSpans;
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            queuedSpans.addAndGet(-spans.size());
+            return exporter.export(spans);
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return exporter.flush();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return exporter.flush();
+        }
+    }
+
+    @Extension
+    public static class Adapter extends AsyncPeriodicWork {
+        public Adapter() {
+            super("Mergify span batches adapter");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            TracerService.adaptBatchTuning();
+        }
+    }
+}
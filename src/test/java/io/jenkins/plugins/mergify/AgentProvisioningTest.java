@@ -0,0 +1,103 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.*;
+
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AgentProvisioningTest {
+
+    private final AgentProvisioning provisioning = AgentProvisioning.get();
+
+    @BeforeEach
+    void beforeEach() {
+        provisioning.clear();
+    }
+
+    private static NodeProvisioner.PlannedNode plannedNode(String name) {
+        return new NodeProvisioner.PlannedNode(name, new CompletableFuture<Node>(), 1);
+    }
+
+    @Test
+    void testTimelineClaimedOnceOnline() {
+        NodeProvisioner.PlannedNode plannedNode = plannedNode("agent-1");
+        provisioning.onRequested(mock(Cloud.class), null, plannedNode, 1000);
+        provisioning.onProvisioned(plannedNode, "agent-1", 5000);
+        provisioning.onLaunching("agent-1", 5100);
+        provisioning.onConnecting("agent-1", 9000);
+
+        assertNull(provisioning.claim("agent-1"));
+
+        provisioning.onOnline("agent-1", 9500);
+        AgentProvisioning.Timeline timeline = provisioning.claim("agent-1");
+
+        assertEquals("agent-1", timeline.nodeName());
+        assertEquals(1000, timeline.requestedMillis());
+        assertEquals(5000, timeline.provisionedMillis());
+        assertEquals(5100, timeline.launchingMillis());
+        assertEquals(9000, timeline.connectingMillis());
+        assertEquals(9500, timeline.onlineMillis());
+        assertNull(provisioning.claim("agent-1"));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    void testStaticAgentsAreIgnored() {
+        provisioning.onLaunching("static", 100);
+        provisioning.onOnline("static", 200);
+
+        assertNull(provisioning.claim("static"));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    void testFailedProvisioningIsDropped() {
+        NodeProvisioner.PlannedNode plannedNode = plannedNode("agent-2");
+        provisioning.onRequested(mock(Cloud.class), null, plannedNode, 1000);
+        provisioning.onFailed(plannedNode);
+
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    void testRolledBackAgentIsDropped() {
+        NodeProvisioner.PlannedNode plannedNode = plannedNode("agent-4");
+        provisioning.onRequested(mock(Cloud.class), null, plannedNode, 1000);
+        provisioning.onProvisioned(plannedNode, "agent-4", 2000);
+        provisioning.onRolledBack(plannedNode, "agent-4");
+
+        provisioning.onOnline("agent-4", 3000);
+        assertNull(provisioning.claim("agent-4"));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    void testPlannedNodesAreBounded() {
+        Cloud cloud = mock(Cloud.class);
+        for (int i = 0; i <= AgentProvisioning.MAX_AGENTS; i++) {
+            provisioning.onRequested(cloud, null, plannedNode("planned-" + i), i);
+        }
+
+        assertEquals(AgentProvisioning.MAX_AGENTS, provisioning.size());
+    }
+
+    @Test
+    void testReconnectAfterOnlineKeepsFirstTimeline() {
+        NodeProvisioner.PlannedNode plannedNode = plannedNode("agent-3");
+        provisioning.onRequested(mock(Cloud.class), null, plannedNode, 1000);
+        provisioning.onProvisioned(plannedNode, "agent-3", 2000);
+        provisioning.onOnline("agent-3", 3000);
+        provisioning.onLaunching("agent-3", 4000);
+        provisioning.onOnline("agent-3", 5000);
+
+        AgentProvisioning.Timeline timeline = provisioning.claim("agent-3");
+        assertEquals(0, timeline.launchingMillis());
+        assertEquals(3000, timeline.onlineMillis());
+    }
+}
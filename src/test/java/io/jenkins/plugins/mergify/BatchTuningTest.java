@@ -0,0 +1,57 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+
+class BatchTuningTest {
+    private static final long GIGABYTE = 1024L * 1024 * 1024;
+
+    private final BatchTuning configured = new BatchTuning(2048, 512, 5000, 30000);
+
+    @Test
+    void testDefaults() {
+        BatchTuning tuning = BatchTuning.of(mock(MergifyConfigurationProvider.class, Answers.CALLS_REAL_METHODS));
+
+        assertEquals(MergifyConfiguration.DEFAULT_BATCH_MAX_QUEUE_SIZE, tuning.maxQueueSize());
+        assertEquals(MergifyConfiguration.DEFAULT_BATCH_MAX_EXPORT_BATCH_SIZE, tuning.maxExportBatchSize());
+    }
+
+    @Test
+    void testBatchCappedByQueue() {
+        BatchTuning tuning = new BatchTuning(2048, 10000, 5000, 60000);
+
+        assertEquals(2048, tuning.maxExportBatchSize());
+    }
+
+    @Test
+    void testAdaptNeverBelowConfiguration() {
+        BatchTuning adapted = configured.adapt(0, GIGABYTE);
+
+        assertEquals(configured, adapted);
+        assertFalse(adapted.differsSignificantly(configured));
+    }
+
+    @Test
+    void testAdaptToSpanRate() {
+        // 1000 spans/s over a 5s delay
+        BatchTuning adapted = configured.adapt(1000, GIGABYTE);
+
+        assertEquals(20000, adapted.maxQueueSize());
+        assertEquals(5000, adapted.maxExportBatchSize());
+        assertTrue(adapted.differsSignificantly(configured));
+    }
+
+    @Test
+    void testAdaptBoundedByHeap() {
+        BatchTuning adapted = configured.adapt(1000, 100L * 1024 * 1024);
+
+        // 5% of 100MB in 2KB spans
+        assertEquals(2560, adapted.maxQueueSize());
+        assertEquals(2560, adapted.maxExportBatchSize());
+    }
+}
@@ -0,0 +1,100 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the *Benchmark classes of this package, see the `benchmark` profile in pom.xml.
+ *
+ * <p>Results are written as JSON to {@code benchmark.result}. When {@code benchmark.baseline} points
+ * to the results of a previous run, the run fails if a benchmark got slower than
+ * {@code benchmark.maxRegression} times its baseline score.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = ".*")
+class BenchmarkRunner {
+
+    @Test
+    void runJmhBenchmarks() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(System.getProperty(
+                        "benchmark.include", BenchmarkRunner.class.getPackageName() + "\\..*Benchmark"))
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .forks(1)
+                // Allocation rates land in the report next to the scores
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("benchmark.result", "target/jmh-report.json"))
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        String baseline = System.getProperty("benchmark.baseline");
+        if (baseline != null && !baseline.isEmpty()) {
+            double maxRegression = Double.parseDouble(System.getProperty("benchmark.maxRegression", "1.25"));
+            List<String> regressions = findRegressions(results, readScores(Path.of(baseline)), maxRegression);
+            assertTrue(regressions.isEmpty(), "Slower than " + baseline + ":\n" + String.join("\n", regressions));
+        }
+    }
+
+    private static String key(String benchmark, Map<?, ?> params) {
+        return params.isEmpty() ? benchmark : benchmark + new TreeMap<>(params);
+    }
+
+    private static Map<String, Double> readScores(Path report) throws Exception {
+        Map<String, Double> scores = new TreeMap<>();
+        JSONArray results = JSONArray.fromObject(Files.readString(report, StandardCharsets.UTF_8));
+        for (int i = 0; i < results.size(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            JSONObject params = result.optJSONObject("params");
+            scores.put(
+                    key(result.getString("benchmark"), params != null ? params : Map.of()),
+                    result.getJSONObject("primaryMetric").getDouble("score"));
+        }
+        return scores;
+    }
+
+    // Scores are average times, higher is slower
+    private static List<String> findRegressions(
+            Collection<RunResult> results, Map<String, Double> baseline, double maxRegression) {
+        List<String> regressions = new ArrayList<>();
+        for (RunResult result : results) {
+            Map<String, String> params = new TreeMap<>();
+            for (String param : result.getParams().getParamsKeys()) {
+                params.put(param, result.getParams().getParam(param));
+            }
+            String key = key(result.getParams().getBenchmark(), params);
+            Double previous = baseline.get(key);
+            double score = result.getPrimaryResult().getScore();
+            if (previous != null && score > previous * maxRegression) {
+                regressions.add(String.format("%s: %.1f ns/op, was %.1f ns/op", key, score, previous));
+            }
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,51 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * CPU cost of each payload compression on repository batches. The payload size of each setting is
+ * printed at setup, to weigh the time against the bytes sent.
+ */
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    @Param({"1000", "10000"})
+    public int spans;
+
+    @Param({"none", "gzip-1", "gzip-6", "gzip-9", "zstd"})
+    public String compression;
+
+    private List<SpanData> batch;
+    private PayloadCompression payloadCompression;
+    private int level;
+
+    @Setup
+    public void setup() throws IOException {
+        batch = SyntheticSpans.batch(spans, 1);
+        String[] setting = compression.split("-");
+        payloadCompression = PayloadCompression.valueOf(setting[0].toUpperCase(Locale.ROOT));
+        level = setting.length > 1 ? Integer.parseInt(setting[1]) : MergifyConfiguration.DEFAULT_COMPRESSION_LEVEL;
+
+        OtlpTraceEncoder.EncodedRequest request = encode();
+        System.out.printf(
+                "%s, %d spans: %d bytes compressed to %d (%.1f%%)%n",
+                compression,
+                spans,
+                request.rawBytes(),
+                request.compressedBytes(),
+                100.0 * request.compressedBytes() / request.rawBytes());
+    }
+
+    @Benchmark
+    public OtlpTraceEncoder.EncodedRequest encode() throws IOException {
+        return OtlpTraceEncoder.encode(batch, payloadCompression, level);
+    }
+}
@@ -0,0 +1,46 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CriticalPathTest {
+
+    @Test
+    void testSlowestBranchIsOnThePath() {
+        CriticalPath criticalPath = new CriticalPath();
+        criticalPath.add("checkout", null, "span-checkout", 0, 10);
+        criticalPath.add("unit", "tests", "span-unit", 10, 20);
+        criticalPath.add("integration-stage", "integration", "span-integration-stage", 12, 27);
+        criticalPath.add("integration", "tests", "span-integration", 11, 28);
+        criticalPath.add("tests", null, "span-tests", 10, 30);
+
+        assertEquals(
+                List.of("span-checkout", "span-tests", "span-integration", "span-integration-stage"),
+                criticalPath.finish(35));
+        assertEquals(0, criticalPath.size());
+    }
+
+    @Test
+    void testOverlappingSiblingsAreSkipped() {
+        CriticalPath criticalPath = new CriticalPath();
+        criticalPath.add("first", null, "span-first", 0, 10);
+        // Ends after "last" started, so it did not hold it up
+        criticalPath.add("overlapping", null, "span-overlapping", 5, 15);
+        criticalPath.add("last", null, "span-last", 12, 20);
+
+        assertEquals(List.of("span-first", "span-last"), criticalPath.finish(20));
+    }
+
+    @Test
+    void testClear() {
+        CriticalPath criticalPath = new CriticalPath();
+        criticalPath.add("stage", null, "span-stage", 0, 10);
+
+        criticalPath.clear();
+
+        assertEquals(0, criticalPath.size());
+        assertEquals(List.of(), criticalPath.finish(10));
+    }
+}
@@ -0,0 +1,30 @@
+package io.jenkins.plugins.mergify;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of the work done by {@link JobMetadata#getUrlName()} on each render of a run page: parsing
+ * the repository name out of its URL and building the dashboard link.
+ */
+@State(Scope.Benchmark)
+public class DashboardUrlBenchmark {
+    private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+    private static final String SPAN_ID = "b7ad6b7169203331";
+
+    @Param({"https://github.com/owner/repo.git", "git@github.com:owner/repo.git", "https://github.com/owner/repo/"})
+    public String repositoryUrl;
+
+    @Benchmark
+    public String getRepositoryName() {
+        return JobMetadata.getRepositoryName(repositoryUrl);
+    }
+
+    @Benchmark
+    public String buildUrl() throws Exception {
+        return DashboardUrlBuilder.buildUrl(
+                "owner", "repo", "folder/project/main", "folder » project » main", TRACE_ID, SPAN_ID);
+    }
+}
@@ -0,0 +1,150 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ExportLaneTest {
+
+    private static List<SpanData> batch(int size) {
+        List<SpanData> spans = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            spans.add(mock(SpanData.class));
+        }
+        return spans;
+    }
+
+    @Test
+    void testSynchronousResultReturned() {
+        ExportLane lane =
+                new ExportLane("owner/repo", spans -> CompletableResultCode.ofFailure(), spans -> false, 10, 1, 60_000);
+
+        assertFalse(lane.offer(batch(1)).isSuccess());
+        assertEquals(1, lane.getFailedBatches());
+        assertEquals(1, lane.getConsecutiveFailures());
+        assertEquals(0, lane.getInFlight());
+    }
+
+    @Test
+    void testQueuedWhileExportIsPending() {
+        List<CompletableResultCode> pending = new ArrayList<>();
+        ExportLane lane = new ExportLane(
+                "owner/repo",
+                spans -> {
+                    CompletableResultCode result = new CompletableResultCode();
+                    pending.add(result);
+                    return result;
+                },
+                spans -> false,
+                10,
+                1,
+                60_000);
+
+        // Neither call waits for the slow export
+        assertTrue(lane.offer(batch(2)).isSuccess());
+        assertTrue(lane.offer(batch(3)).isSuccess());
+        assertEquals(1, pending.size());
+        assertEquals(1, lane.getInFlight());
+        assertEquals(3, lane.getQueuedSpans());
+
+        CompletableResultCode flushed = lane.flush();
+        pending.get(0).succeed();
+        assertEquals(2, pending.size());
+        assertFalse(flushed.isDone());
+
+        pending.get(1).succeed();
+        assertTrue(flushed.isSuccess());
+        assertEquals(5, lane.getExportedSpans());
+        assertEquals(0, lane.getQueuedSpans());
+    }
+
+    @Test
+    void testSynchronousExportsDoNotRecurse() {
+        CompletableResultCode first = new CompletableResultCode();
+        List<CompletableResultCode> results = new ArrayList<>(List.of(first));
+        ExportLane lane = new ExportLane(
+                "owner/repo",
+                spans -> results.isEmpty() ? CompletableResultCode.ofSuccess() : results.remove(0),
+                spans -> false,
+                200_000,
+                1,
+                60_000);
+        List<SpanData> batch = batch(1);
+        for (int i = 0; i <= 100_000; i++) {
+            lane.offer(batch);
+        }
+
+        // Each queued batch completes synchronously, on the thread completing the first one
+        first.succeed();
+
+        assertEquals(100_001, lane.getExportedSpans());
+        assertTrue(lane.isIdle());
+    }
+
+    @Test
+    void testThrowingExporterReleasesItsSlot() {
+        ExportLane lane = new ExportLane(
+                "owner/repo",
+                spans -> {
+                    throw new IllegalStateException("boom");
+                },
+                spans -> false,
+                10,
+                1,
+                60_000);
+
+        assertFalse(lane.offer(batch(1)).isSuccess());
+        assertEquals(1, lane.getFailedBatches());
+        assertEquals(0, lane.getInFlight());
+        assertTrue(lane.flush().isSuccess());
+    }
+
+    @Test
+    void testTimedOutExportIsFailed() {
+        CompletableResultCode export = new CompletableResultCode();
+        ExportLane lane = new ExportLane("owner/repo", spans -> export, spans -> false, 10, 1, 10);
+
+        assertTrue(lane.offer(batch(1)).isSuccess());
+
+        // Failing the export lets the exporter abort its request
+        assertTrue(lane.flush().join(10, TimeUnit.SECONDS).isDone());
+        assertTrue(export.isDone());
+        assertFalse(export.isSuccess());
+        assertEquals(1, lane.getTimedOutBatches());
+        assertTrue(lane.isIdle());
+    }
+
+    @Test
+    void testOverflow() {
+        List<List<SpanData>> overflowed = new ArrayList<>();
+        ExportLane lane = new ExportLane(
+                "owner/repo", spans -> new CompletableResultCode(), overflowed::add, 2, 1, 60_000);
+        List<SpanData> tooMany = batch(3);
+
+        lane.offer(batch(1));
+        assertTrue(lane.offer(tooMany).isSuccess());
+
+        assertEquals(1, overflowed.size());
+        assertSame(tooMany, overflowed.get(0));
+    }
+
+    @Test
+    void testDroppedWithoutOverflowHandler() {
+        ExportLane lane =
+                new ExportLane("owner/repo", spans -> new CompletableResultCode(), spans -> false, 2, 1, 60_000);
+
+        lane.offer(batch(1));
+
+        assertFalse(lane.offer(batch(3)).isSuccess());
+        assertEquals(3, lane.getDroppedSpans());
+    }
+}
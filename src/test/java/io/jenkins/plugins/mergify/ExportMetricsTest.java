@@ -0,0 +1,71 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class ExportMetricsTest {
+
+    private final ExportMetrics metrics = new ExportMetrics();
+
+    @Test
+    void testLatencyBuckets() {
+        ExportMetrics.LatencyHistogram histogram = new ExportMetrics.LatencyHistogram();
+
+        histogram.record(5);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(60000);
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(60026, histogram.getSum());
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(1, histogram.getBucketCount(ExportMetrics.LatencyHistogram.BOUNDS_MILLIS.length));
+
+        JSONArray buckets = histogram.toJson().getJSONArray("buckets");
+        assertEquals("+Inf", buckets.getJSONObject(buckets.size() - 1).getString("upperBoundMillis"));
+    }
+
+    @Test
+    void testOrganizationsSumTheirRepositories() {
+        metrics.repository("org/first").onExported(3, 100);
+        metrics.repository("org/second").onExported(2, 200);
+        metrics.repository("org/second").onDropped(4);
+        metrics.repository("other/repo").onSpooled(7);
+        metrics.onUnattributedDropped(1);
+
+        JSONObject json = metrics.toJson();
+
+        JSONObject org = json.getJSONObject("organizations").getJSONObject("org");
+        assertEquals(5, org.getLong("exportedSpans"));
+        assertEquals(4, org.getLong("droppedSpans"));
+        assertEquals(0, org.getLong("spooledSpans"));
+        assertEquals(7, json.getJSONObject("organizations").getJSONObject("other").getLong("spooledSpans"));
+        JSONObject repository = json.getJSONObject("repositories").getJSONObject("org/second");
+        assertEquals(6, repository.getLong("exportedSpans") + repository.getLong("droppedSpans"));
+        assertEquals(1, repository.getJSONObject("exportLatencyMillis").getLong("count"));
+        assertEquals(1, json.getLong("unattributedDroppedSpans"));
+        assertEquals(5, metrics.total(ExportMetrics.RepositoryMetrics::getExportedSpans));
+    }
+
+    @Test
+    void testEvictedRepositoriesKeepTheTotals() {
+        metrics.repository("org/first").onExported(3, 100);
+        metrics.repository("org/second").onExported(2, 200);
+
+        metrics.evict("org/first");
+        metrics.evict("org/unknown");
+
+        assertEquals(1, metrics.size());
+        assertEquals(5, metrics.total(ExportMetrics.RepositoryMetrics::getExportedSpans));
+        JSONObject json = metrics.toJson();
+        assertFalse(json.getJSONObject("repositories").has("org/first"));
+        JSONObject retired = json.getJSONObject("retiredRepositories");
+        assertEquals(3, retired.getLong("exportedSpans"));
+        assertEquals(1, retired.getJSONObject("exportLatencyMillis").getLong("count"));
+    }
+}
@@ -0,0 +1,88 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.*;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ExporterCacheTest {
+
+    private final Map<String, SpanExporter> exporters = new HashMap<>();
+    private ExporterCache cache;
+
+    @BeforeEach
+    void beforeEach() {
+        cache = new ExporterCache(2);
+    }
+
+    private SpanExporter create(String repositoryName) {
+        SpanExporter exporter = mock(SpanExporter.class);
+        when(exporter.flush()).thenReturn(CompletableResultCode.ofSuccess());
+        when(exporter.shutdown()).thenReturn(CompletableResultCode.ofSuccess());
+        exporters.put(repositoryName, exporter);
+        return exporter;
+    }
+
+    @Test
+    void testLeastRecentlyUsedEvicted() {
+        SpanExporter first = cache.get("org/first", this::create);
+        cache.get("org/second", this::create);
+        // Makes org/second the least recently used
+        assertSame(first, cache.get("org/first", this::create));
+
+        cache.get("org/third", this::create);
+
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getCreatedCount());
+        assertEquals(1, cache.getEvictedCount());
+        SpanExporter second = exporters.get("org/second");
+        verify(second).flush();
+        verify(second).shutdown();
+        verify(first, never()).shutdown();
+    }
+
+    @Test
+    void testNotCachedWithoutExporter() {
+        assertNull(cache.get("unknown/repo", repositoryName -> null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testIdleExportersExpired() {
+        cache.get("org/first", this::create);
+
+        assertEquals(0, cache.expireIdle(60_000));
+        assertEquals(1, cache.expireIdle(-1));
+
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getExpiredCount());
+        verify(exporters.get("org/first")).shutdown();
+    }
+
+    @Test
+    void testDrainedOnInvalidation() {
+        SpanExporter exporter = cache.get("org/first", this::create);
+        CompletableResultCode pendingExport = new CompletableResultCode();
+        when(exporter.flush()).thenReturn(pendingExport);
+
+        cache.invalidateAll();
+
+        // The old exporter is shut down once its pending export is done
+        assertEquals(1, cache.getDrainingCount());
+        verify(exporter, never()).shutdown();
+        pendingExport.succeed();
+        verify(exporter).shutdown();
+        assertEquals(0, cache.getDrainingCount());
+
+        SpanExporter replacement = cache.get("org/first", this::create);
+        assertEquals(2, cache.getCreatedCount());
+        assertSame(replacement, exporters.get("org/first"));
+    }
+}
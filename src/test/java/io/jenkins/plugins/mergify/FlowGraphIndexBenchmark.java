@@ -0,0 +1,85 @@
+package io.jenkins.plugins.mergify;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of attributing a new head to its stage and agent: the indexed lookup done by
+ * {@link Listener} against the previous double walk of {@link FlowNode#getEnclosingBlocks()}. The
+ * nodes are {@link StubFlowNodes}, not mocks, the flow execution they belong to is never read.
+ */
+@State(Scope.Benchmark)
+public class FlowGraphIndexBenchmark {
+
+    @Param({"1", "16", "64"})
+    public int depth;
+
+    @Param({"0", "10000"})
+    public int otherOpenBlocks;
+
+    private final Predicate<FlowNode> isStage = node -> "block-1".equals(node.getId());
+    private FlowGraphIndex index;
+    private FlowNode head;
+
+    @Setup
+    public void setup() {
+        FlowExecution execution = mock(FlowExecution.class, withSettings().stubOnly());
+        List<StubFlowNodes.BlockStart> enclosingBlocks = new ArrayList<>();
+        StubFlowNodes.BlockStart innermost = null;
+        for (int i = 0; i < depth; i++) {
+            innermost = new StubFlowNodes.BlockStart(execution, "block-" + i, innermost);
+            if (i == 0) {
+                innermost.putAction(new StubFlowNodes.Workspace("agent-1"));
+            }
+            enclosingBlocks.add(innermost);
+        }
+
+        head = new StubFlowNodes.Atom(execution, "head", innermost);
+
+        index = new FlowGraphIndex(isStage);
+        for (StubFlowNodes.BlockStart block : enclosingBlocks) {
+            index.open(block);
+        }
+        for (int i = 0; i < otherOpenBlocks; i++) {
+            index.open(new StubFlowNodes.BlockStart(execution, "other-" + i, null));
+        }
+    }
+
+    @Benchmark
+    public void indexedLookup(Blackhole blackhole) {
+        FlowGraphIndex.Block enclosing = index.enclosing(head);
+        blackhole.consume(enclosing.getWorkspaceNode());
+        blackhole.consume(enclosing.getStageId());
+    }
+
+    @Benchmark
+    public void enclosingBlocksWalk(Blackhole blackhole) {
+        for (BlockStartNode block : head.getEnclosingBlocks()) {
+            WorkspaceAction action = block.getAction(WorkspaceAction.class);
+            if (action != null) {
+                blackhole.consume(action.getNode());
+                break;
+            }
+        }
+        for (BlockStartNode block : head.getEnclosingBlocks()) {
+            if (isStage.test(block)) {
+                blackhole.consume(block.getId());
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FlowGraphIndexTest {
+
+    private FlowGraphIndex index;
+
+    @BeforeEach
+    void beforeEach() {
+        index = new FlowGraphIndex(node -> node.getId().startsWith("stage"));
+    }
+
+    private static BlockStartNode mockBlock(String id, String enclosingId) {
+        BlockStartNode block = mock(BlockStartNode.class);
+        when(block.getId()).thenReturn(id);
+        when(block.getEnclosingId()).thenReturn(enclosingId);
+        return block;
+    }
+
+    private static FlowNode mockNode(String enclosingId) {
+        FlowNode node = mock(FlowNode.class);
+        when(node.getEnclosingId()).thenReturn(enclosingId);
+        return node;
+    }
+
+    private static void setWorkspace(BlockStartNode block, String nodeName) {
+        WorkspaceAction workspace = mock(WorkspaceAction.class);
+        when(workspace.getNode()).thenReturn(nodeName);
+        when(block.getAction(WorkspaceAction.class)).thenReturn(workspace);
+    }
+
+    @Test
+    void testStageAndWorkspaceAttribution() {
+        BlockStartNode agent = mockBlock("agent", null);
+        setWorkspace(agent, "linux-1");
+        index.open(agent);
+        FlowGraphIndex.Block stage = index.open(mockBlock("stage-build", "agent"));
+        index.open(mockBlock("body", "stage-build"));
+
+        FlowGraphIndex.Block enclosing = index.enclosing(mockNode("body"));
+
+        assertTrue(stage.isStage());
+        assertFalse(enclosing.isStage());
+        assertEquals("stage-build", enclosing.getStageId());
+        assertEquals("linux-1", enclosing.getWorkspaceNode());
+    }
+
+    @Test
+    void testWorkspaceAddedAfterBlockHead() {
+        BlockStartNode agent = mockBlock("agent", null);
+        FlowGraphIndex.Block block = index.open(agent);
+        assertNull(block.getWorkspaceNode());
+
+        setWorkspace(agent, "linux-1");
+        BlockStartNode body = mockBlock("body", "agent");
+        when(body.getParentIds()).thenReturn(List.of("agent"));
+        doReturn(List.of(agent)).when(body).getParents();
+
+        assertEquals("linux-1", index.open(body).getWorkspaceNode());
+        assertEquals("linux-1", index.enclosing(mockNode("body")).getWorkspaceNode());
+    }
+
+    @Test
+    void testBlocksDoNotReadUnrelatedParents() {
+        index.open(mockBlock("agent", null));
+        BlockStartNode stage = mockBlock("stage-build", "agent");
+        when(stage.getParentIds()).thenReturn(List.of("echo"));
+
+        assertNull(index.open(stage).getWorkspaceNode());
+        verify(stage, never()).getParents();
+    }
+
+    @Test
+    void testClose() {
+        BlockStartNode stage = mockBlock("stage-build", null);
+        index.open(stage);
+        BlockEndNode<?> end = mock(BlockEndNode.class);
+        doReturn(stage).when(end).getStartNode();
+
+        FlowGraphIndex.Block closed = index.close(end);
+
+        assertTrue(closed.isStage());
+        assertEquals(0, index.size());
+        assertNull(index.close(end));
+    }
+
+    @Test
+    void testRebuildUnknownEnclosingBlocks() {
+        BlockStartNode stage = mockBlock("stage-build", null);
+        BlockStartNode body = mockBlock("body", "stage-build");
+        FlowNode node = mockNode("body");
+        doReturn(List.of(body, stage)).when(node).getEnclosingBlocks();
+
+        FlowGraphIndex.Block enclosing = index.enclosing(node);
+
+        assertEquals("body", enclosing.getId());
+        assertEquals("stage-build", enclosing.getStageId());
+        assertEquals(2, index.size());
+        assertSame(enclosing, index.enclosing(mockNode("body")));
+    }
+
+    @Test
+    void testBranchAttribution() {
+        FlowGraphIndex branchIndex = new FlowGraphIndex(
+                node -> node.getId().startsWith("stage"), node -> node.getId().startsWith("branch"));
+        branchIndex.open(mockBlock("stage-tests", null));
+        FlowGraphIndex.Block branch = branchIndex.open(mockBlock("branch-unit", "stage-tests"));
+        FlowGraphIndex.Block stage = branchIndex.open(mockBlock("stage-unit", "branch-unit"));
+
+        assertTrue(branch.isBranch());
+        assertEquals("stage-tests", branch.getStageId());
+        assertEquals("stage-tests", branch.getParentSegmentId());
+        assertEquals("branch-unit", stage.getBranchId());
+        assertEquals("branch-unit", stage.getParentSegmentId());
+        assertNull(branchIndex.enclosing(mockNode("stage-tests")).getParentSegmentId());
+    }
+
+    @Test
+    void testTopLevelNode() {
+        assertNull(index.enclosing(mockNode(null)));
+    }
+}
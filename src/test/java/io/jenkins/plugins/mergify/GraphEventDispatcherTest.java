@@ -0,0 +1,79 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.junit.jupiter.api.Test;
+
+class GraphEventDispatcherTest {
+
+    @Test
+    void testEventsAreProcessedInOrder() {
+        List<FlowNode> processed = Collections.synchronizedList(new ArrayList<>());
+        GraphEventDispatcher dispatcher = new GraphEventDispatcher(16, event -> processed.add(event.node()));
+
+        List<FlowNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            FlowNode node = mock(FlowNode.class);
+            nodes.add(node);
+            dispatcher.submit(FlowNodeEvent.of(node));
+        }
+
+        assertTrue(dispatcher.awaitProcessed(10, TimeUnit.SECONDS));
+        assertEquals(nodes, processed);
+        assertEquals(0, dispatcher.size());
+    }
+
+    @Test
+    void testHandlerFailureDoesNotStopTheWorker() {
+        List<FlowNode> processed = Collections.synchronizedList(new ArrayList<>());
+        FlowNode failing = mock(FlowNode.class);
+        FlowNode next = mock(FlowNode.class);
+        GraphEventDispatcher dispatcher = new GraphEventDispatcher(16, event -> {
+            if (event.node() == failing) {
+                throw new IllegalStateException("boom");
+            }
+            processed.add(event.node());
+        });
+
+        dispatcher.submit(FlowNodeEvent.of(failing));
+        dispatcher.submit(FlowNodeEvent.of(next));
+
+        assertTrue(dispatcher.awaitProcessed(10, TimeUnit.SECONDS));
+        assertEquals(List.of(next), processed);
+    }
+
+    @Test
+    void testAwaitProcessedTimesOut() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        GraphEventDispatcher dispatcher = new GraphEventDispatcher(16, event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        dispatcher.submit(FlowNodeEvent.of(mock(FlowNode.class)));
+
+        assertFalse(dispatcher.awaitProcessed(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(dispatcher.awaitProcessed(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTimestampFallsBackToReceivedTime() {
+        long before = System.currentTimeMillis();
+        FlowNodeEvent event = FlowNodeEvent.of(mock(FlowNode.class));
+        assertTrue(event.timestampMillis() >= before);
+        assertTrue(event.timestampMillis() <= System.currentTimeMillis());
+    }
+}
@@ -2,6 +2,7 @@ package io.jenkins.plugins.mergify;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.coravy.hudson.plugins.github.GithubProjectProperty;
@@ -24,9 +25,12 @@ import java.nio.file.Files;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -69,6 +73,10 @@ class IntegrationTest {
         return spanExporter.getFinishedSpanItems();
     }
 
+    private static boolean isQueueSpan(SpanData span) {
+        return "queue".equals(span.getAttributes().get(TraceUtils.CICD_PIPELINE_TASK_SCOPE));
+    }
+
     private String runCommand(File dir, String command) throws Exception {
         ProcessBuilder pb;
         if (System.getProperty("os.name").toLowerCase().contains("windows")) {
@@ -120,9 +128,18 @@ class IntegrationTest {
 
         jenkinsRule.buildAndAssertSuccess(project);
 
-        List<SpanData> spans = getSpans();
+        List<SpanData> allSpans = getSpans();
+        List<SpanData> queueSpans = allSpans.stream().filter(IntegrationTest::isQueueSpan).toList();
+        List<SpanData> spans = allSpans.stream().filter(span -> !isQueueSpan(span)).toList();
         assertEquals(4, spans.size());
 
+        // Time in the build queue
+        assertEquals(1, queueSpans.size());
+        SpanData queueSpan = queueSpans.get(0);
+        assertEquals("Queue(any)", queueSpan.getName());
+        assertEquals(spans.get(3).getSpanId(), queueSpan.getParentSpanId());
+        assertNotNull(queueSpan.getAttributes().get(QueueWaits.QUEUE_BUILDABLE_MILLIS));
+
         String expectedTraceId = spans.get(0).getTraceId();
         spans.forEach(span -> assertEquals(expectedTraceId, span.getTraceId()));
 
@@ -185,7 +202,10 @@ class IntegrationTest {
 
         jenkinsRule.buildAndAssertSuccess(job);
 
-        List<SpanData> spans = getSpans();
+        List<SpanData> allSpans = getSpans();
+        // The build and its `agent any` node block
+        assertEquals(2, allSpans.stream().filter(IntegrationTest::isQueueSpan).count());
+        List<SpanData> spans = allSpans.stream().filter(span -> !isQueueSpan(span)).toList();
         assertEquals(3, spans.size());
 
         String expectedTraceId = spans.get(0).getTraceId();
@@ -269,4 +289,232 @@ class IntegrationTest {
         Map<AttributeKey<?>, Object> jobAttrs = jobSpan.getAttributes().asMap();
         assertEquals(linuxAgent.getNodeName(), jobAttrs.get(TraceUtils.CICD_PIPELINE_RUNNER_NAME));
     }
+
+    @Test
+    void testParallelNodeBlocksWithTheSameLabelExpression() throws Exception {
+        DumbSlave agent = jenkinsRule.createOnlineSlave(Label.get("queue-linux"));
+        agent.setLabelString("queue-linux queue-fast");
+
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "test-pipeline-parallel-nodes");
+        job.setDefinition(new CpsFlowDefinition(
+                """
+                        parallel(
+                            first: { node('queue-linux && queue-fast') { sleep 1 } },
+                            second: { node('queue-linux && queue-fast') { sleep 1 } }
+                        )""",
+                true));
+        job.addProperty(new GithubProjectProperty("https://github.com/mergifyio/plugin"));
+
+        jenkinsRule.buildAndAssertSuccess(job);
+
+        // The agent has a single executor, so one of the blocks waits for the other
+        List<SpanData> queueSpans = getSpans().stream()
+                .filter(IntegrationTest::isQueueSpan)
+                .filter(s -> s.getName().startsWith("Queue(queue-linux"))
+                .toList();
+        assertEquals(2, queueSpans.size());
+        for (SpanData span : queueSpans) {
+            // Only set from the followed queue item, with the label normalized by Jenkins
+            assertNotNull(span.getAttributes().get(QueueWaits.QUEUE_BUILDABLE_MILLIS));
+            assertEquals("queue-linux&&queue-fast", span.getAttributes().get(QueueWaits.QUEUE_LABEL));
+        }
+        assertTrue(
+                queueSpans.stream()
+                        .anyMatch(s -> s.getAttributes().get(QueueWaits.QUEUE_BUILDABLE_MILLIS) >= 500),
+                "expected one of the blocks to wait for the executor");
+    }
+
+    @Test
+    void testPipelineTraceparentIsOnlyPersistedOnStages() throws Exception {
+        final String jobName = "test-pipeline-traceparent";
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, jobName);
+
+        File repoDir = createGitRepository(jobName);
+
+        String pipelineScript = String.format(
+                """
+                        pipeline {
+                            agent any
+                            stages {
+                                stage('Build') {
+                                    steps {
+                                        checkout([$class: 'GitSCM', branches: [[name: '*/main']], userRemoteConfigs: [[url: '%s']]])
+                                        sh 'echo "traceparent=$MERGIFY_TRACEPARENT"'
+                                    }
+                                }
+                            }
+                        }""",
+                repoDir.toURI());
+
+        job.setDefinition(new CpsFlowDefinition(pipelineScript, true));
+        job.addProperty(new GithubProjectProperty("https://github.com/mergifyio/plugin"));
+
+        WorkflowRun run = jenkinsRule.buildAndAssertSuccess(job);
+
+        SpanData stageSpan = getSpans().stream()
+                .filter(s -> "step".equals(s.getAttributes().get(TraceUtils.CICD_PIPELINE_TASK_SCOPE)))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(stageSpan, "expected a stage span");
+        jenkinsRule.assertLogContains(
+                "traceparent=00-" + stageSpan.getTraceId() + "-" + stageSpan.getSpanId() + "-01", run);
+
+        long persisted = new DepthFirstScanner()
+                .allNodes(run.getExecution())
+                .stream()
+                .filter(node -> node.getAction(TraceparentAction.class) != null)
+                .count();
+        assertEquals(1, persisted);
+    }
+
+    @Test
+    void testPipelineStepSpans() throws Exception {
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "test-pipeline-steps");
+        job.setDefinition(new CpsFlowDefinition(
+                """
+                        pipeline {
+                            agent any
+                            stages {
+                                stage('Build') {
+                                    steps {
+                                        echo 'one'
+                                        sh 'echo two'
+                                    }
+                                }
+                            }
+                        }""",
+                true));
+        job.addProperty(new GithubProjectProperty("https://github.com/mergifyio/plugin"));
+
+        MergifyConfiguration config = MergifyConfiguration.get();
+        try {
+            config.setStepSpans(true);
+            config.setStepSpanMinDurationMillis(0);
+            jenkinsRule.buildAndAssertSuccess(job);
+
+            List<SpanData> spans = getSpans();
+            SpanData stageSpan = spans.stream()
+                    .filter(s -> s.getName().startsWith("Stage(") && s.getName().contains("Build"))
+                    .findFirst()
+                    .orElse(null);
+            assertNotNull(stageSpan, "expected a stage span");
+            for (String stepName : List.of("Step(echo)", "Step(sh)")) {
+                SpanData stepSpan = spans.stream()
+                        .filter(s -> stepName.equals(s.getName()))
+                        .findFirst()
+                        .orElse(null);
+                assertNotNull(stepSpan, "expected a span for " + stepName);
+                assertEquals(stageSpan.getSpanId(), stepSpan.getParentSpanId());
+                assertEquals("step", stepSpan.getAttributes().get(TraceUtils.CICD_PIPELINE_TASK_SCOPE));
+                assertEquals("success", stepSpan.getAttributes().get(TraceUtils.CICD_PIPELINE_TASK_RUN_RESULT));
+            }
+
+            // Every step is shorter than the minimum duration now
+            spanExporter.reset();
+            config.setStepSpanMinDurationMillis(600_000);
+            jenkinsRule.buildAndAssertSuccess(job);
+
+            spans = getSpans();
+            assertTrue(spans.stream().noneMatch(s -> s.getName().startsWith("Step(")));
+            stageSpan = spans.stream()
+                    .filter(s -> s.getName().startsWith("Stage(") && s.getName().contains("Build"))
+                    .findFirst()
+                    .orElse(null);
+            assertNotNull(stageSpan, "expected a stage span");
+            Long aggregated = stageSpan.getAttributes().get(StepStats.AGGREGATED_COUNT);
+            assertNotNull(aggregated);
+            assertTrue(aggregated >= 2, "expected echo and sh to be counted; got " + aggregated);
+            List<Long> histogram = stageSpan.getAttributes().get(StepStats.AGGREGATED_HISTOGRAM);
+            assertEquals(aggregated, histogram.stream().mapToLong(Long::longValue).sum());
+        } finally {
+            config.setStepSpans(false);
+            config.setStepSpanMinDurationMillis(MergifyConfiguration.DEFAULT_STEP_SPAN_MIN_DURATION_MILLIS);
+        }
+    }
+
+    @Test
+    void testExcludedPipelineIsNotTraced() throws Exception {
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "test-pipeline-excluded");
+        job.setDefinition(new CpsFlowDefinition(
+                """
+                        node {
+                            stage('Build') {
+                                sleep 1
+                            }
+                        }""",
+                true));
+        job.addProperty(new GithubProjectProperty("https://github.com/mergifyio/plugin"));
+
+        MergifyConfiguration config = MergifyConfiguration.get();
+        try {
+            config.setExcludedJobs("test-pipeline-excluded");
+            WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+            jenkinsRule.waitForMessage("Sleeping for", run);
+
+            assertNull(SpanRegistry.get().getRun(run));
+            assertNull(run.getAction(JobMetadata.class));
+
+            jenkinsRule.assertBuildStatusSuccess(jenkinsRule.waitForCompletion(run));
+            assertNull(SpanRegistry.get().getRun(run));
+            assertNull(run.getAction(JobMetadata.class));
+            assertTrue(getSpans().isEmpty());
+        } finally {
+            config.setExcludedJobs(null);
+        }
+    }
+
+    @Test
+    void testPipelineParallelBranchSpans() throws Exception {
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "test-pipeline-parallel");
+        job.setDefinition(new CpsFlowDefinition(
+                """
+                        node {
+                            stage('Tests') {
+                                parallel(
+                                    fast: { echo 'fast' },
+                                    slow: { stage('Slow') { sleep 2 } }
+                                )
+                            }
+                        }""",
+                true));
+        job.addProperty(new GithubProjectProperty("https://github.com/mergifyio/plugin"));
+
+        jenkinsRule.buildAndAssertSuccess(job);
+
+        List<SpanData> spans = getSpans();
+        SpanData stageSpan = spans.stream()
+                .filter(s -> s.getName().startsWith("Stage(") && s.getName().contains("Tests"))
+                .findFirst()
+                .orElse(null);
+        SpanData fast = spans.stream()
+                .filter(s -> "Branch(fast)".equals(s.getName()))
+                .findFirst()
+                .orElse(null);
+        SpanData slow = spans.stream()
+                .filter(s -> "Branch(slow)".equals(s.getName()))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(stageSpan, "expected a stage span");
+        assertNotNull(fast, "expected a span for the fast branch");
+        assertNotNull(slow, "expected a span for the slow branch");
+        assertEquals(stageSpan.getSpanId(), fast.getParentSpanId());
+        assertEquals(stageSpan.getSpanId(), slow.getParentSpanId());
+        // Stages in a branch are children of the branch
+        SpanData slowStage = spans.stream()
+                .filter(s -> s.getName().startsWith("Stage(") && s.getName().contains("Slow"))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(slowStage, "expected a span for the stage of the slow branch");
+        assertEquals(slow.getSpanId(), slowStage.getParentSpanId());
+
+        SpanData jobSpan = spans.stream()
+                .filter(s -> s.getSpanId().equals(stageSpan.getParentSpanId()))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(jobSpan, "expected a job span");
+        List<String> criticalPath = jobSpan.getAttributes().get(CriticalPath.CRITICAL_PATH_SPAN_IDS);
+        assertNotNull(criticalPath, "expected the critical path on the job span");
+        assertEquals(
+                Set.of(stageSpan.getSpanId(), slow.getSpanId(), slowStage.getSpanId()), Set.copyOf(criticalPath));
+    }
 }
@@ -0,0 +1,95 @@
+package io.jenkins.plugins.mergify;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.EnvVars;
+import hudson.model.Job;
+import hudson.model.Run;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of tagging a stage span with the common run attributes: the prebuilt snapshot applied by
+ * {@link JobMetadata#setCommonSpanAttributes} against setting each attribute one by one.
+ */
+@State(Scope.Benchmark)
+public class JobMetadataBenchmark {
+    private static final String REPOSITORY_URL = "https://github.com/owner/repo.git";
+
+    private SdkTracerProvider tracerProvider;
+    private Tracer tracer;
+    private JobMetadata jobMetadata;
+    private RunnerInfo runner;
+
+    @Setup
+    public void setup() {
+        tracerProvider = SdkTracerProvider.builder().build();
+        tracer = tracerProvider.get("benchmark");
+
+        Job<?, ?> job = mock(Job.class);
+        when(job.getFullDisplayName()).thenReturn("folder » project » main");
+        Run<?, ?> run = mock(Run.class);
+        when(run.getParent()).thenReturn((Job) job);
+        when(run.getExternalizableId()).thenReturn("folder/project/main#42");
+        when(run.getUrl()).thenReturn("job/folder/job/project/job/main/42/");
+        when(run.getTimeInMillis()).thenReturn(1_700_000_000_000L);
+
+        jobMetadata = new JobMetadata(run);
+        jobMetadata.addRepositoryURL("GitHubProjectProperty", REPOSITORY_URL);
+        EnvVars envVars = new EnvVars();
+        envVars.put("GIT_COMMIT", "0123456789abcdef0123456789abcdef01234567");
+        envVars.put("GIT_BRANCH", "origin/main");
+        jobMetadata.setSCMCheckoutInfoFromEnvs(envVars);
+
+        runner = new RunnerInfo(null, "linux-agent-42", List.of("linux", "amd64", "docker"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Benchmark
+    public Span snapshot() {
+        Span span = tracer.spanBuilder("Stage(Build)").startSpan();
+        jobMetadata.setCommonSpanAttributes(span, runner);
+        return span;
+    }
+
+    @Benchmark
+    public Span perAttribute() {
+        Span span = tracer.spanBuilder("Stage(Build)").startSpan();
+        span.setAttribute(TraceUtils.CICD_PROVIDER_NAME, "jenkins");
+        span.setAttribute(TraceUtils.CICD_PIPELINE_NAME, "folder » project » main");
+        span.setAttribute(TraceUtils.CICD_PIPELINE_RUN_ID, "folder/project/main#42");
+        span.setAttribute(TraceUtils.CICD_PIPELINE_ID, "folder/project/main#42");
+        span.setAttribute(TraceUtils.CICD_PIPELINE_CREATED_AT, 1_700_000_000_000_000_000L);
+        span.setAttribute(TraceUtils.CICD_PIPELINE_URL, "http://localhost:8080/job/folder/job/project/job/main/42/");
+        span.setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME, RunnerInfo.DEFAULT_GROUP_NAME);
+        span.setAttribute(TraceUtils.VCS_REF_HEAD_NAME, "origin/main".replaceFirst("^[^/]+/", ""));
+        span.setAttribute(TraceUtils.VCS_REF_HEAD_REVISION, "0123456789abcdef0123456789abcdef01234567");
+        span.setAttribute(TraceUtils.CICD_PIPELINE_LABELS, runner.getLabels());
+        span.setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_NAME, runner.getName());
+        span.setAttribute(TraceUtils.VCS_REPOSITORY_URL_FULL, REPOSITORY_URL);
+        span.setAttribute(TraceUtils.VCS_REPOSITORY_URL_SOURCE, "GitHubProjectProperty");
+        span.setAttribute(TraceUtils.VCS_REPOSITORY_NAME, legacyRepositoryName(REPOSITORY_URL));
+        return span;
+    }
+
+    // JobMetadata.getRepositoryName before the patterns were precompiled
+    private static String legacyRepositoryName(String url) {
+        url = url.replaceAll("/$", "").replaceAll("\\.git$", "");
+        Matcher matcher = Pattern.compile("[:/]([^:/]+)/([^:/]+?)(?:\\.git)?$").matcher(url);
+        return matcher.find() ? matcher.group(1) + "/" + matcher.group(2) : null;
+    }
+}
@@ -1,13 +1,26 @@
 package io.jenkins.plugins.mergify;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 import hudson.EnvVars;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,6 +28,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -44,6 +58,15 @@ class JobMetadataTest {
         reset(span);
     }
 
+    // Merges the attributes applied with setAllAttributes, in call order
+    private Attributes appliedAttributes() {
+        ArgumentCaptor<Attributes> captor = ArgumentCaptor.forClass(Attributes.class);
+        verify(span, atLeastOnce()).setAllAttributes(captor.capture());
+        AttributesBuilder builder = Attributes.builder();
+        captor.getAllValues().forEach(builder::putAll);
+        return builder.build();
+    }
+
     @Test
     void testOnlyAddRepositoryURL() {
         jobMetadata.addRepositoryURL("SOURCE", "https://github.com/owner/repo.git");
@@ -51,15 +74,7 @@ class JobMetadataTest {
         jobMetadata.setCommonSpanAttributes(span);
 
         // Some required info are missing, ensure attributes are not set
-        verify(span, never()).setAttribute(eq(TraceUtils.CICD_PROVIDER_NAME), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.CICD_PIPELINE_NAME), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.CICD_PIPELINE_RUN_ID), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.CICD_PIPELINE_URL), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.VCS_REF_HEAD_NAME), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.VCS_REF_HEAD_REVISION), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.VCS_REPOSITORY_URL_FULL), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.VCS_REPOSITORY_URL_SOURCE), anyString());
-        verify(span, never()).setAttribute(eq(TraceUtils.VCS_REPOSITORY_NAME), anyString());
+        verifyNoInteractions(span);
     }
 
     @Test
@@ -75,16 +90,17 @@ class JobMetadataTest {
 
         jobMetadata.setCommonSpanAttributes(span);
 
-        verify(span).setAttribute(TraceUtils.CICD_PROVIDER_NAME, "jenkins");
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_NAME, "test-job");
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_RUN_ID, "test-job#1");
-        verify(span).setAttribute(eq(TraceUtils.CICD_PIPELINE_URL), contains("/jenkins/job/test-job/1/"));
-        verify(span).setAttribute(TraceUtils.VCS_REF_HEAD_NAME, "main");
-        verify(span).setAttribute(TraceUtils.VCS_REF_HEAD_REVISION, "abcdef123456");
-        verify(span).setAttribute(TraceUtils.VCS_REPOSITORY_URL_FULL, "https://github.com/owner/repo-project.git");
-        verify(span).setAttribute(TraceUtils.VCS_REPOSITORY_URL_SOURCE, "PROJECT");
-        verify(span).setAttribute(TraceUtils.VCS_REPOSITORY_NAME, "owner/repo-project");
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME, "Default");
+        Attributes attributes = appliedAttributes();
+        assertEquals("jenkins", attributes.get(TraceUtils.CICD_PROVIDER_NAME));
+        assertEquals("test-job", attributes.get(TraceUtils.CICD_PIPELINE_NAME));
+        assertEquals("test-job#1", attributes.get(TraceUtils.CICD_PIPELINE_RUN_ID));
+        assertTrue(attributes.get(TraceUtils.CICD_PIPELINE_URL).contains("/jenkins/job/test-job/1/"));
+        assertEquals("main", attributes.get(TraceUtils.VCS_REF_HEAD_NAME));
+        assertEquals("abcdef123456", attributes.get(TraceUtils.VCS_REF_HEAD_REVISION));
+        assertEquals("https://github.com/owner/repo-project.git", attributes.get(TraceUtils.VCS_REPOSITORY_URL_FULL));
+        assertEquals("PROJECT", attributes.get(TraceUtils.VCS_REPOSITORY_URL_SOURCE));
+        assertEquals("owner/repo-project", attributes.get(TraceUtils.VCS_REPOSITORY_NAME));
+        assertEquals("Default", attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME));
     }
 
     @Test
@@ -99,9 +115,10 @@ class JobMetadataTest {
         RunnerInfo override = new RunnerInfo(null, "linux-agent-42", java.util.List.of("linux", "amd64"));
         jobMetadata.setCommonSpanAttributes(span, override);
 
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_NAME, "linux-agent-42");
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_LABELS, java.util.List.of("linux", "amd64"));
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME, "Default");
+        Attributes attributes = appliedAttributes();
+        assertEquals("linux-agent-42", attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_NAME));
+        assertEquals(java.util.List.of("linux", "amd64"), attributes.get(TraceUtils.CICD_PIPELINE_LABELS));
+        assertEquals("Default", attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_GROUP_NAME));
     }
 
     @Test
@@ -115,15 +132,16 @@ class JobMetadataTest {
 
         jobMetadata.setCommonSpanAttributes(span);
 
-        verify(span).setAttribute(TraceUtils.CICD_PROVIDER_NAME, "jenkins");
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_NAME, "test-job");
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_RUN_ID, "test-job#1");
-        verify(span).setAttribute(eq(TraceUtils.CICD_PIPELINE_URL), contains("/jenkins/job/test-job/1/"));
-        verify(span).setAttribute(TraceUtils.VCS_REF_HEAD_NAME, "main");
-        verify(span).setAttribute(TraceUtils.VCS_REF_HEAD_REVISION, "abcdef123456");
-        verify(span).setAttribute(TraceUtils.VCS_REPOSITORY_URL_FULL, "https://github.com/owner/repo.git");
-        verify(span).setAttribute(TraceUtils.VCS_REPOSITORY_URL_SOURCE, "SCMCheckoutURL");
-        verify(span).setAttribute(TraceUtils.VCS_REPOSITORY_NAME, "owner/repo");
+        Attributes attributes = appliedAttributes();
+        assertEquals("jenkins", attributes.get(TraceUtils.CICD_PROVIDER_NAME));
+        assertEquals("test-job", attributes.get(TraceUtils.CICD_PIPELINE_NAME));
+        assertEquals("test-job#1", attributes.get(TraceUtils.CICD_PIPELINE_RUN_ID));
+        assertTrue(attributes.get(TraceUtils.CICD_PIPELINE_URL).contains("/jenkins/job/test-job/1/"));
+        assertEquals("main", attributes.get(TraceUtils.VCS_REF_HEAD_NAME));
+        assertEquals("abcdef123456", attributes.get(TraceUtils.VCS_REF_HEAD_REVISION));
+        assertEquals("https://github.com/owner/repo.git", attributes.get(TraceUtils.VCS_REPOSITORY_URL_FULL));
+        assertEquals("SCMCheckoutURL", attributes.get(TraceUtils.VCS_REPOSITORY_URL_SOURCE));
+        assertEquals("owner/repo", attributes.get(TraceUtils.VCS_REPOSITORY_NAME));
     }
 
     @Test
@@ -138,7 +156,89 @@ class JobMetadataTest {
         jobMetadata.setCommonSpanAttributes(span);
 
         long expected = TimeUnit.MILLISECONDS.toNanos(build.getTimeInMillis());
-        verify(span).setAttribute(TraceUtils.CICD_PIPELINE_CREATED_AT, expected);
+        assertEquals(expected, appliedAttributes().get(TraceUtils.CICD_PIPELINE_CREATED_AT));
+    }
+
+    @Test
+    void testCommonAttributesRebuiltOnlyWhenScmInfoChanges() {
+        jobMetadata.addRepositoryURL("PROJECT", "https://github.com/owner/repo.git");
+
+        EnvVars envVars = new EnvVars();
+        envVars.put("GIT_COMMIT", "abcdef123456");
+        envVars.put("GIT_BRANCH", "origin/main");
+        jobMetadata.setSCMCheckoutInfoFromEnvs(envVars);
+
+        Attributes first = jobMetadata.getCommonAttributes();
+        assertSame(first, jobMetadata.getCommonAttributes());
+
+        jobMetadata.addRepositoryURL("PROJECT", "https://github.com/owner/repo.git");
+        assertSame(first, jobMetadata.getCommonAttributes());
+
+        jobMetadata.addRepositoryURL("PROJECT", "https://github.com/owner/other.git");
+        Attributes rebuilt = jobMetadata.getCommonAttributes();
+        assertNotSame(first, rebuilt);
+        assertEquals("owner/other", rebuilt.get(TraceUtils.VCS_REPOSITORY_NAME));
+    }
+
+    private static SpanContext spanContext(String traceId, String spanId) {
+        return SpanContext.create(traceId, spanId, TraceFlags.getSampled(), TraceState.getDefault());
+    }
+
+    @Test
+    void testDashboardLinkBuiltOnceForItsInputs() {
+        MergifyConfiguration.get().setUrl("https://api.mergify.com");
+        jobMetadata.addRepositoryURL("PROJECT", "https://github.com/owner/repo.git");
+        jobMetadata.setSpanContext(spanContext("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331"));
+
+        String first = jobMetadata.getUrlName();
+        assertTrue(first.startsWith("https://dashboard.mergify.com/ci-insights/jobs?"), first);
+        assertSame(first, jobMetadata.getUrlName());
+
+        MergifyConfiguration.get().setUrl("https://api.example.com");
+        String rebuilt = jobMetadata.getUrlName();
+        assertTrue(rebuilt.startsWith("https://api.example.com/ci-insights/jobs?"), rebuilt);
+        assertSame(rebuilt, jobMetadata.getUrlName());
+
+        jobMetadata.setSpanContext(spanContext("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7"));
+        assertNotSame(rebuilt, jobMetadata.getUrlName());
+        assertTrue(jobMetadata.getUrlName().contains("job_span_id=APBnqgupArc"));
+    }
+
+    @Test
+    void testRunnerInfoAttributesRebuiltFromBuildXml() throws Exception {
+        jobMetadata.addRepositoryURL("PROJECT", "https://github.com/owner/repo.git");
+        EnvVars envVars = new EnvVars();
+        envVars.put("GIT_COMMIT", "abcdef123456");
+        envVars.put("GIT_BRANCH", "origin/main");
+        jobMetadata.setSCMCheckoutInfoFromEnvs(envVars);
+        jobMetadata.upgradeRunnerInfo(new RunnerInfo(3, "linux-agent-42", List.of("linux")));
+        build.addAction(jobMetadata);
+        build.save();
+
+        String buildXml = Files.readString(new File(build.getRootDir(), "build.xml").toPath());
+        assertTrue(buildXml.contains("<name>linux-agent-42</name>"), buildXml);
+        assertFalse(buildXml.contains("io.opentelemetry"), buildXml);
+
+        build.reload();
+        build.getAction(JobMetadata.class).setCommonSpanAttributes(span);
+
+        Attributes attributes = appliedAttributes();
+        assertEquals("linux-agent-42", attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_NAME));
+        assertEquals(3L, attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_ID));
+        assertEquals(List.of("linux"), attributes.get(TraceUtils.CICD_PIPELINE_LABELS));
+    }
+
+    @Test
+    void testRunnerInfoLoadedFromOldFormat() {
+        RunnerInfo info = (RunnerInfo) Run.XSTREAM2.fromXML("<io.jenkins.plugins.mergify.RunnerInfo>"
+                + "<name>linux-agent-42</name>"
+                + "<labels class=\"list\"><string>linux</string></labels>"
+                + "</io.jenkins.plugins.mergify.RunnerInfo>");
+
+        Attributes attributes = info.getAttributes();
+        assertEquals("linux-agent-42", attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_NAME));
+        assertNull(attributes.get(TraceUtils.CICD_PIPELINE_RUNNER_ID));
+        assertEquals(List.of("linux"), attributes.get(TraceUtils.CICD_PIPELINE_LABELS));
     }
 
     @Test
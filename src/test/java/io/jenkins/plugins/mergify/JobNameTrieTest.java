@@ -0,0 +1,59 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class JobNameTrieTest {
+
+    @Test
+    void testNoPatternsIncludesEverything() {
+        JobNameTrie trie = JobNameTrie.compile(null, "  \n");
+
+        assertTrue(trie.isIncluded("job"));
+        assertTrue(trie.isIncluded("folder/job"));
+    }
+
+    @Test
+    void testFolderPatternMatchesJobsBelow() {
+        JobNameTrie trie = JobNameTrie.compile(null, "infra/\nsandbox");
+
+        assertFalse(trie.isIncluded("infra"));
+        assertFalse(trie.isIncluded("infra/deploy"));
+        assertFalse(trie.isIncluded("sandbox/a/b"));
+        assertTrue(trie.isIncluded("infrastructure"));
+        assertTrue(trie.isIncluded("sandboxed"));
+        assertTrue(trie.isIncluded("team/infra"));
+    }
+
+    @Test
+    void testWildcardSuffix() {
+        JobNameTrie trie = JobNameTrie.compile(null, "infra/nightly-*");
+
+        assertFalse(trie.isIncluded("infra/nightly-cleanup"));
+        assertFalse(trie.isIncluded("infra/nightly-"));
+        assertTrue(trie.isIncluded("infra/nightly"));
+        assertTrue(trie.isIncluded("infra/deploy"));
+    }
+
+    @Test
+    void testLongestPatternDecides() {
+        JobNameTrie trie = JobNameTrie.compile("team\nteam/legacy/keep", "team/legacy\nteam/sandbox-*");
+
+        assertTrue(trie.isIncluded("team/service"));
+        assertFalse(trie.isIncluded("team/legacy/old"));
+        assertTrue(trie.isIncluded("team/legacy/keep"));
+        assertTrue(trie.isIncluded("team/legacy/keep/branch"));
+        assertFalse(trie.isIncluded("other"));
+        assertFalse(trie.isIncluded("team/sandbox-dev"));
+    }
+
+    @Test
+    void testExcludeWinsOverSamePattern() {
+        JobNameTrie trie = JobNameTrie.compile("team\nteam/*", "team\nteam/*");
+
+        assertFalse(trie.isIncluded("team"));
+        assertFalse(trie.isIncluded("team/service"));
+    }
+}
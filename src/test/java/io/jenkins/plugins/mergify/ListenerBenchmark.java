@@ -0,0 +1,105 @@
+package io.jenkins.plugins.mergify;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of {@link Listener#onNewHead} on the CPS VM thread for the nodes that make up most of a
+ * pipeline: steps and non-stage blocks nested in a deep flow graph, with many runs in flight. The
+ * nodes are {@link StubFlowNodes}, not mocks.
+ *
+ * <p>With {@code async}, heads are handed to a {@link GraphEventDispatcher} as when the listener runs
+ * with {@code -Dio.jenkins.plugins.mergify.Listener.async=true}, and only the submission is timed.
+ */
+@State(Scope.Benchmark)
+public class ListenerBenchmark {
+    private static final String RUN_ID = "benchmark/pipeline#1";
+
+    @Param({"4", "64"})
+    public int depth;
+
+    @Param({"1", "1000"})
+    public int runsInFlight;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private GraphEventDispatcher dispatcher;
+    private FlowNode step;
+    private BlockStartNode blockStart;
+    private BlockEndNode<?> blockEnd;
+
+    @Setup
+    public void setup() throws IOException {
+        dispatcher = new GraphEventDispatcher(100_000, Listener::processNewHead);
+        // A WorkflowRun needs a Jenkins instance: the run and its execution, read once per head, are
+        // stub-only mocks, which do not record their invocations
+        WorkflowRun run = mock(WorkflowRun.class, withSettings().stubOnly());
+        when(run.getExternalizableId()).thenReturn(RUN_ID);
+        // Decided up front, the job patterns are read from the configuration
+        JobFilter.get().decide(run, true);
+        FlowExecutionOwner owner = mock(FlowExecutionOwner.class, withSettings().stubOnly());
+        doReturn(run).when(owner).getExecutable();
+        FlowExecution execution = mock(FlowExecution.class, withSettings().stubOnly());
+        when(execution.getOwner()).thenReturn(owner);
+
+        for (int i = 0; i < runsInFlight - 1; i++) {
+            SpanRegistry.get().forRun("benchmark/other#" + i);
+        }
+
+        StubFlowNodes.BlockStart innermost = null;
+        for (int i = 0; i < depth; i++) {
+            innermost = new StubFlowNodes.BlockStart(execution, "block-" + i, innermost);
+            onNewHead(innermost);
+        }
+
+        step = new StubFlowNodes.Atom(execution, "step", innermost);
+        StubFlowNodes.BlockStart start = new StubFlowNodes.BlockStart(execution, "inner-block", innermost);
+        blockStart = start;
+        blockEnd = new StubFlowNodes.BlockEnd(execution, "inner-block-end", start);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.awaitProcessed(1, TimeUnit.MINUTES);
+        SpanRegistry.get().clear();
+        JobFilter.get().clear();
+    }
+
+    private void onNewHead(FlowNode node) {
+        FlowNodeEvent event = FlowNodeEvent.of(node);
+        if (async) {
+            dispatcher.submit(event);
+        } else {
+            Listener.processNewHead(event);
+        }
+    }
+
+    @Benchmark
+    public void step() {
+        onNewHead(step);
+    }
+
+    @Benchmark
+    public void blockStartAndEnd() {
+        onNewHead(blockStart);
+        onNewHead(blockEnd);
+    }
+}
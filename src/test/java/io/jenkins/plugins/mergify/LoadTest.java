@@ -0,0 +1,273 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.coravy.hudson.plugins.github.GithubProjectProperty;
+import com.sun.management.OperatingSystemMXBean;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.util.Secret;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.SleepBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+/**
+ * Load suite running large pipelines and concurrent freestyle builds through the real
+ * {@link MergifySpanExporter}, against a {@link MergifyApiStub}, see the `load` profile in pom.xml.
+ *
+ * <p>The sizes, the API latency and error rate are set with {@code load.*} system properties. The
+ * report covers the controller CPU time, heap growth, span loss and end-to-end export latency, and
+ * is written as JSON to {@code load.report}.
+ */
+@WithJenkins
+@EnabledIfSystemProperty(named = "load", matches = ".*")
+class LoadTest {
+    private static final Logger LOGGER = Logger.getLogger(LoadTest.class.getName());
+
+    private static final int PIPELINES = Integer.getInteger("load.pipelines", 4);
+    private static final int PARALLEL_STAGES = Integer.getInteger("load.parallelStages", 200);
+    private static final int STEPS_PER_STAGE = Integer.getInteger("load.stepsPerStage", 10);
+    private static final int FREESTYLE_PROJECTS = Integer.getInteger("load.freestyleProjects", 10);
+    private static final int FREESTYLE_BUILDS = Integer.getInteger("load.freestyleBuilds", 200);
+    private static final int EXECUTORS = Integer.getInteger("load.executors", 16);
+    private static final int REPOSITORIES = Integer.getInteger("load.repositories", 20);
+    private static final int ORGANIZATIONS = 4;
+    private static final long API_LATENCY_MILLIS = Long.getLong("load.apiLatencyMillis", 50);
+    private static final double API_ERROR_RATE = Double.parseDouble(System.getProperty("load.apiErrorRate", "0.05"));
+    private static final long DRAIN_TIMEOUT_SECONDS = Long.getLong("load.drainTimeoutSeconds", 120);
+    private static final int MAX_LOST_SPANS = Integer.getInteger("load.maxLostSpans", 0);
+    private static final String REPORT = System.getProperty("load.report", "target/load-report.json");
+
+    private static final String PIPELINE_SCRIPT =
+            """
+            def branches = [:]
+            for (int i = 0; i < %d; i++) {
+                def index = i
+                branches["branch-" + index] = {
+                    stage("Stage " + index) {
+                        for (int j = 0; j < %d; j++) {
+                            echo "step " + j
+                        }
+                    }
+                }
+            }
+            stage('Parallel') {
+                parallel branches
+            }
+            """;
+
+    private static String repositoryUrl(int index) {
+        int repository = index % REPOSITORIES;
+        return "https://github.com/load-org-" + (repository % ORGANIZATIONS) + "/repo-" + repository;
+    }
+
+    // CPU time of the threads the plugin owns: batch processor, HTTP sender and graph event dispatcher
+    private static long pluginThreadCpuNanos(ThreadMXBean threads) {
+        long total = 0;
+        for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread != null
+                    && (thread.getThreadName().startsWith("Mergify")
+                            || thread.getThreadName().startsWith("BatchSpanProcessor"))) {
+                total += Math.max(0, threads.getThreadCpuTime(thread.getThreadId()));
+            }
+        }
+        return total;
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(percentile * sorted.size()) - 1));
+    }
+
+    private static void configure(JenkinsRule jenkinsRule, MergifyApiStub api) throws Exception {
+        MergifySpanExporter.setTestExporter(null);
+        MergifyConfiguration config = MergifyConfiguration.get();
+        config.setUrl(api.getUrl());
+        List<OrgApiKey> apiKeys = new ArrayList<>();
+        for (int i = 0; i < ORGANIZATIONS; i++) {
+            apiKeys.add(new OrgApiKey("load-org-" + i, Secret.fromString("key-" + i)));
+        }
+        config.setOrgApiKeys(apiKeys);
+        TracerService.clearMergifySpanExporters();
+        jenkinsRule.jenkins.setNumExecutors(EXECUTORS);
+    }
+
+    private static List<WorkflowJob> createPipelines(JenkinsRule jenkinsRule) throws Exception {
+        String script = PIPELINE_SCRIPT.formatted(PARALLEL_STAGES, STEPS_PER_STAGE);
+        List<WorkflowJob> pipelines = new ArrayList<>();
+        for (int i = 0; i < PIPELINES; i++) {
+            WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "load-pipeline-" + i);
+            job.setDefinition(new CpsFlowDefinition(script, true));
+            job.addProperty(new GithubProjectProperty(repositoryUrl(i)));
+            pipelines.add(job);
+        }
+        return pipelines;
+    }
+
+    private static List<FreeStyleProject> createFreestyleProjects(JenkinsRule jenkinsRule) throws Exception {
+        List<FreeStyleProject> projects = new ArrayList<>();
+        for (int i = 0; i < FREESTYLE_PROJECTS; i++) {
+            FreeStyleProject project = jenkinsRule.createFreeStyleProject("load-freestyle-" + i);
+            project.setConcurrentBuild(true);
+            project.addProperty(new GithubProjectProperty(repositoryUrl(PIPELINES + i)));
+            for (int step = 0; step < 3; step++) {
+                project.getBuildersList().add(new SleepBuilder(5));
+            }
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    private static void runBuilds(
+            JenkinsRule jenkinsRule, List<WorkflowJob> pipelines, List<FreeStyleProject> projects)
+            throws Exception {
+        List<QueueTaskFuture<WorkflowRun>> pipelineRuns = new ArrayList<>();
+        for (WorkflowJob job : pipelines) {
+            pipelineRuns.add(job.scheduleBuild2(0));
+        }
+        // Builds of a project only get their own queue item once the previous one started
+        List<QueueTaskFuture<FreeStyleBuild>> freestyleBuilds = new ArrayList<>();
+        for (int i = 0; i < FREESTYLE_BUILDS; i++) {
+            QueueTaskFuture<FreeStyleBuild> build = projects.get(i % projects.size()).scheduleBuild2(0);
+            build.waitForStart();
+            freestyleBuilds.add(build);
+        }
+        for (QueueTaskFuture<WorkflowRun> run : pipelineRuns) {
+            jenkinsRule.assertBuildStatusSuccess(run);
+        }
+        for (QueueTaskFuture<FreeStyleBuild> build : freestyleBuilds) {
+            jenkinsRule.assertBuildStatusSuccess(build);
+        }
+    }
+
+    // Spans rejected by the API are spooled, waits for their replay
+    private static void awaitDelivery(MergifyApiStub api, int receivedBefore, LongSupplier exportedSpans)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            TracerService.forceFlush();
+            TracerService.replaySpool();
+            if (api.getUniqueSpans() - receivedBefore >= exportedSpans.getAsLong()) {
+                return;
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    @Test
+    void runLoad(JenkinsRule jenkinsRule) throws Exception {
+        try (MergifyApiStub api = new MergifyApiStub(API_LATENCY_MILLIS, API_ERROR_RATE)) {
+            configure(jenkinsRule, api);
+            List<WorkflowJob> pipelines = createPipelines(jenkinsRule);
+            List<FreeStyleProject> projects = createFreestyleProjects(jenkinsRule);
+
+            TunableSpanProcessor processor = TracerService.getSpanProcessor();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long heapBefore = usedHeapAfterGc(memory);
+            long processCpuBefore = os.getProcessCpuTime();
+            long pluginCpuBefore = pluginThreadCpuNanos(threads);
+            long endedBefore = processor.getEndedSpanCount();
+            long droppedBefore = processor.getDroppedSpanCount();
+            int receivedBefore = api.getUniqueSpans();
+            long start = System.nanoTime();
+
+            runBuilds(jenkinsRule, pipelines, projects);
+            long buildsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            awaitDelivery(api, receivedBefore, () -> processor.getEndedSpanCount()
+                    - endedBefore
+                    - (processor.getDroppedSpanCount() - droppedBefore));
+            long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            long processCpuNanos = os.getProcessCpuTime() - processCpuBefore;
+            long pluginCpuNanos = pluginThreadCpuNanos(threads) - pluginCpuBefore;
+            long heapGrowth = usedHeapAfterGc(memory) - heapBefore;
+            long ended = processor.getEndedSpanCount() - endedBefore;
+            long dropped = processor.getDroppedSpanCount() - droppedBefore;
+            long delivered = api.getUniqueSpans() - receivedBefore;
+            long lost = ended - delivered;
+            List<Long> latencies = api.getExportLatenciesMillis();
+            Collections.sort(latencies);
+            int builds = PIPELINES + FREESTYLE_BUILDS;
+
+            JSONObject report = new JSONObject();
+            JSONObject load = new JSONObject();
+            load.put("pipelines", PIPELINES);
+            load.put("parallelStages", PARALLEL_STAGES);
+            load.put("stepsPerStage", STEPS_PER_STAGE);
+            load.put("freestyleProjects", FREESTYLE_PROJECTS);
+            load.put("freestyleBuilds", FREESTYLE_BUILDS);
+            load.put("repositories", REPOSITORIES);
+            load.put("apiLatencyMillis", API_LATENCY_MILLIS);
+            load.put("apiErrorRate", API_ERROR_RATE);
+            report.put("load", load);
+            report.put("buildsMillis", buildsMillis);
+            report.put("totalMillis", totalMillis);
+
+            JSONObject cpu = new JSONObject();
+            cpu.put("processMillis", TimeUnit.NANOSECONDS.toMillis(processCpuNanos));
+            cpu.put("pluginThreadsMillis", TimeUnit.NANOSECONDS.toMillis(pluginCpuNanos));
+            cpu.put("processMicrosPerBuild", TimeUnit.NANOSECONDS.toMicros(processCpuNanos) / builds);
+            cpu.put("pluginThreadsMicrosPerBuild", TimeUnit.NANOSECONDS.toMicros(pluginCpuNanos) / builds);
+            report.put("cpu", cpu);
+            report.put("heapGrowthBytes", heapGrowth);
+
+            JSONObject spans = new JSONObject();
+            spans.put("ended", ended);
+            spans.put("droppedByProcessor", dropped);
+            spans.put("delivered", delivered);
+            spans.put("duplicates", api.getDuplicateSpans());
+            spans.put("lost", lost);
+            report.put("spans", spans);
+
+            JSONObject requests = new JSONObject();
+            requests.put("total", api.getRequests());
+            requests.put("rejected", api.getRejectedRequests());
+            requests.put("bytes", api.getReceivedBytes());
+            report.put("requests", requests);
+
+            JSONObject latency = new JSONObject();
+            latency.put("p50", percentile(latencies, 0.50));
+            latency.put("p95", percentile(latencies, 0.95));
+            latency.put("p99", percentile(latencies, 0.99));
+            latency.put("max", percentile(latencies, 1));
+            report.put("exportLatencyMillis", latency);
+            report.put("pipeline", TracerService.describeMetrics());
+
+            Path reportPath = Path.of(REPORT);
+            Files.createDirectories(reportPath.toAbsolutePath().getParent());
+            Files.writeString(reportPath, report.toString(2), StandardCharsets.UTF_8);
+            LOGGER.info("Load report written to " + reportPath.toAbsolutePath() + ":\n" + report.toString(2));
+
+            assertTrue(lost <= MAX_LOST_SPANS, lost + " spans lost, more than load.maxLostSpans=" + MAX_LOST_SPANS);
+        }
+    }
+}
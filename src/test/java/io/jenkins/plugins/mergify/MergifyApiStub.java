@@ -0,0 +1,224 @@
+package io.jenkins.plugins.mergify;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the {@code /v1/repos/{owner}/{repo}/ci/traces} endpoint of the Mergify API.
+ *
+ * <p>It answers after a fixed latency, rejects a share of the requests with a retryable error, and
+ * records the spans it accepts with the delay between their end and their reception.
+ */
+final class MergifyApiStub implements AutoCloseable {
+    private static final Pattern TRACES_PATH = Pattern.compile("/v1/repos/([^/]+/[^/]+)/ci/traces");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final Random random = new Random(42);
+
+    // Span end time in epoch milliseconds, by trace and span ID
+    private final Map<String, Long> spans = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> spansPerRepository = new ConcurrentHashMap<>();
+    private final Queue<Long> exportLatenciesMillis = new ConcurrentLinkedQueue<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder duplicateSpans = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+
+    MergifyApiStub(long latencyMillis, double errorRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/v1/repos/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private boolean reject() {
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Matcher matcher = TRACES_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!"POST".equals(exchange.getRequestMethod()) || !matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            requests.increment();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            receivedBytes.add(body.length);
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (reject()) {
+                rejectedRequests.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            if (encoding != null && !"gzip".equals(encoding)) {
+                exchange.sendResponseHeaders(415, -1);
+                return;
+            }
+            byte[] request = body;
+            if (encoding != null) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    request = in.readAllBytes();
+                }
+            }
+            long receivedAtMillis = System.currentTimeMillis();
+            LongAdder repositorySpans = spansPerRepository.computeIfAbsent(matcher.group(1), name -> new LongAdder());
+            for (ExportedSpan span : readSpans(request)) {
+                if (spans.putIfAbsent(span.id(), span.endMillis()) == null) {
+                    repositorySpans.increment();
+                    exportLatenciesMillis.add(receivedAtMillis - span.endMillis());
+                } else {
+                    duplicateSpans.increment();
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getUniqueSpans() {
+        return spans.size();
+    }
+
+    Map<String, LongAdder> getSpansPerRepository() {
+        return spansPerRepository;
+    }
+
+    List<Long> getExportLatenciesMillis() {
+        return new ArrayList<>(exportLatenciesMillis);
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    long getDuplicateSpans() {
+        return duplicateSpans.sum();
+    }
+
+    long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    record ExportedSpan(String id, long endMillis) {}
+
+    // ExportTraceServiceRequest(1: resource_spans) > ResourceSpans(2: scope_spans) > ScopeSpans(2: spans)
+    static List<ExportedSpan> readSpans(byte[] request) {
+        List<ExportedSpan> spans = new ArrayList<>();
+        forEachMessage(ByteBuffer.wrap(request), 1, resourceSpans -> forEachMessage(
+                resourceSpans, 2, scopeSpans -> forEachMessage(scopeSpans, 2, span -> spans.add(readSpan(span)))));
+        return spans;
+    }
+
+    // Span(1: trace_id, 2: span_id, 8: end_time_unix_nano)
+    private static ExportedSpan readSpan(ByteBuffer span) {
+        HexFormat hex = HexFormat.of();
+        String[] ids = new String[2];
+        long[] endNanos = new long[1];
+        forEachField(span, (field, value, message) -> {
+            if ((field == 1 || field == 2) && message != null) {
+                byte[] id = new byte[message.remaining()];
+                message.get(id);
+                ids[field - 1] = hex.formatHex(id);
+            } else if (field == 8) {
+                endNanos[0] = value;
+            }
+        });
+        return new ExportedSpan(ids[0] + "-" + ids[1], endNanos[0] / 1_000_000);
+    }
+
+    private static void forEachMessage(ByteBuffer message, int fieldNumber, Consumer<ByteBuffer> action) {
+        forEachField(message, (field, value, nested) -> {
+            if (field == fieldNumber && nested != null) {
+                action.accept(nested);
+            }
+        });
+    }
+
+    private interface FieldVisitor {
+        void visit(int field, long value, ByteBuffer message);
+    }
+
+    // Minimal protobuf wire format reader, enough to walk the OTLP messages
+    private static void forEachField(ByteBuffer message, FieldVisitor visitor) {
+        ByteBuffer buffer = message.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            long tag = readVarint(buffer);
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            switch (wireType) {
+                case 0 -> visitor.visit(field, readVarint(buffer), null);
+                case 1 -> visitor.visit(field, buffer.getLong(), null);
+                case 2 -> {
+                    int length = (int) readVarint(buffer);
+                    ByteBuffer nested = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    visitor.visit(field, 0, nested);
+                }
+                case 5 -> visitor.visit(field, buffer.getInt(), null);
+                default -> throw new IllegalArgumentException("Unsupported wire type " + wireType);
+            }
+        }
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
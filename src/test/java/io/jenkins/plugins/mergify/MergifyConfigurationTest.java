@@ -1,13 +1,16 @@
 package io.jenkins.plugins.mergify;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 import hudson.util.FormValidation;
+import hudson.util.Secret;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.List;
 import javax.servlet.ServletException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -19,7 +22,6 @@ import org.mockito.Mockito;
 @WithJenkins
 class MergifyConfigurationTest {
 
-    @SuppressWarnings("unused")
     private JenkinsRule jenkinsRule;
 
     @BeforeEach
@@ -27,6 +29,52 @@ class MergifyConfigurationTest {
         jenkinsRule = rule;
     }
 
+    @Test
+    void testGetApiKeyForOrg() {
+        MergifyConfiguration config = new MergifyConfiguration();
+        config.setOrgApiKeys(List.of(
+                new OrgApiKey("Mergifyio", Secret.fromString("first")),
+                new OrgApiKey("mergifyio", Secret.fromString("duplicate")),
+                new OrgApiKey("other", Secret.fromString("second"))));
+
+        assertEquals("first", config.getApiKeyForOrg("mergifyio"));
+        assertEquals("first", config.getApiKeyForOrg("MERGIFYIO"));
+        assertEquals("second", config.getApiKeyForOrg("other"));
+        assertNull(config.getApiKeyForOrg("unknown"));
+        assertNull(config.getApiKeyForOrg(null));
+
+        config.setOrgApiKeys(List.of(new OrgApiKey("other", Secret.fromString("rotated"))));
+
+        assertNull(config.getApiKeyForOrg("mergifyio"));
+        assertEquals("rotated", config.getApiKeyForOrg("other"));
+    }
+
+    @Test
+    void testCompressionSettings() {
+        MergifyConfiguration config = new MergifyConfiguration();
+        assertEquals(PayloadCompression.GZIP, config.getPayloadCompression());
+
+        config.setPayloadCompression(PayloadCompression.ZSTD);
+        config.setCompressionLevel(12);
+
+        assertEquals(PayloadCompression.ZSTD, config.getPayloadCompression());
+        assertEquals(MergifyConfiguration.DEFAULT_COMPRESSION_LEVEL, config.getCompressionLevel());
+        assertEquals(FormValidation.Kind.OK, config.doCheckCompressionLevel("1").kind);
+        assertEquals(FormValidation.Kind.ERROR, config.doCheckCompressionLevel("0").kind);
+    }
+
+    @Test
+    void testConfigRoundtrip() throws Exception {
+        MergifyConfiguration config = MergifyConfiguration.get();
+        config.setPayloadCompression(PayloadCompression.ZSTD);
+
+        jenkinsRule.configRoundtrip();
+
+        MergifyConfiguration reloaded = new MergifyConfiguration();
+        assertEquals(PayloadCompression.ZSTD, reloaded.getPayloadCompression());
+        assertEquals(config.getUrl(), reloaded.getUrl());
+    }
+
     @Test
     void testDoCheckUrl_ValidUrl() throws IOException, ServletException {
         MergifyConfiguration config = new MergifyConfiguration();
@@ -0,0 +1,89 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MergifyHttpSenderTest {
+
+    private HttpServer server;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final Set<String> received = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/v1/repos/", exchange -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(exchange.getRequestURI().getPath() + " "
+                    + exchange.getRequestHeaders().getFirst("Authorization") + " "
+                    + exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            exchange.getRequestBody().readAllBytes();
+            concurrent.decrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        server.stop(0);
+    }
+
+    private URI endpoint(String repositoryName) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/repos/" + repositoryName
+                + "/ci/traces");
+    }
+
+    @Test
+    void testRequestsShareTheInFlightLimit() throws Exception {
+        MergifyHttpSender sender = new MergifyHttpSender(2, 2);
+        List<CompletableFuture<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            statuses.add(sender.send(endpoint("org/repo-" + i), "token-" + i, new byte[] {1, 2, 3}));
+        }
+
+        for (CompletableFuture<Integer> status : statuses) {
+            assertEquals(200, status.get(10, TimeUnit.SECONDS));
+        }
+        sender.close();
+
+        assertEquals(6, received.size());
+        assertTrue(received.contains("/v1/repos/org/repo-3/ci/traces Bearer token-3 gzip"));
+        assertTrue(maxConcurrent.get() <= 2, "max concurrent requests: " + maxConcurrent.get());
+        assertEquals(0, sender.getInFlight());
+        assertEquals(0, sender.getWaiting());
+    }
+
+    @Test
+    void testStatusClassification() {
+        assertTrue(MergifyHttpSender.isSuccess(204));
+        assertTrue(MergifyHttpSender.isRetryable(429));
+        assertTrue(MergifyHttpSender.isRetryable(503));
+        assertFalse(MergifyHttpSender.isRetryable(401));
+    }
+}
@@ -39,7 +39,7 @@ class MergifySpanExporterTest {
 
         doReturn(mockOtlpExporter)
                 .when(exporter)
-                .createExporter("https://api.mergify.com/v1/repos/org/repo/ci/traces", "secret");
+                .createExporter("org/repo", "https://api.mergify.com/v1/repos/org/repo/ci/traces", "secret");
     }
 
     @Test
@@ -74,6 +74,25 @@ class MergifySpanExporterTest {
         assertTrue(result.isSuccess());
     }
 
+    @Test
+    void testIdleExportLanesArePrunedWithTheirExporter() {
+        Attributes attributes = Attributes.builder()
+                .put(TraceUtils.VCS_REPOSITORY_NAME, "org/repo")
+                .build();
+        when(mockSpanData.getAttributes()).thenReturn(attributes);
+        when(mockOtlpExporter.export(any())).thenReturn(CompletableResultCode.ofSuccess());
+        exporter.export(List.of(mockSpanData));
+
+        assertEquals(0, exporter.pruneExportLanes());
+        assertEquals(1, exporter.getExportLanes().size());
+
+        exporter.clearSpanExporters();
+
+        assertEquals(1, exporter.pruneExportLanes());
+        assertTrue(exporter.getExportLanes().isEmpty());
+        assertEquals(0, ExportMetrics.get().repository("org/repo").getExportedSpans());
+    }
+
     @Test
     void testExport_ExceptionHandling() {
         Attributes attributes = Attributes.builder()
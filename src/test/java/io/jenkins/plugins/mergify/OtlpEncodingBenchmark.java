@@ -0,0 +1,47 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Encoding of the request body of one repository batch: the SDK marshaler gzipped into a byte
+ * array, which the plugin used to send, against {@link OtlpTraceEncoder}. Run with the GC profiler
+ * to compare the allocations.
+ */
+@State(Scope.Benchmark)
+public class OtlpEncodingBenchmark {
+
+    @Param({"1000", "10000"})
+    public int spans;
+
+    private List<SpanData> batch;
+
+    @Setup
+    public void setup() {
+        batch = SyntheticSpans.batch(spans, 1);
+    }
+
+    @Benchmark
+    public byte[] marshalerThenGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            TraceRequestMarshaler.create(batch).writeBinaryTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public OtlpTraceEncoder.EncodedRequest streamingEncoder() throws IOException {
+        return OtlpTraceEncoder.encodeGzip(batch);
+    }
+}
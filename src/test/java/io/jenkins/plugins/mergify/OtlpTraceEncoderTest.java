@@ -0,0 +1,150 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.trace.TestSpanData;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class OtlpTraceEncoderTest {
+
+    private static byte[] marshal(List<SpanData> spans) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceRequestMarshaler.create(spans).writeBinaryTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] payload) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static SpanData detailedSpan() {
+        SpanContext context = SpanContext.create(
+                "0af7651916cd43dd8448eb211c80319c",
+                "b7ad6b7169203331",
+                TraceFlags.getSampled(),
+                TraceState.builder().put("vendor", "value").build());
+        SpanContext parent = SpanContext.createFromRemoteParent(
+                "0af7651916cd43dd8448eb211c80319c",
+                "00f067aa0ba902b7",
+                TraceFlags.getSampled(),
+                TraceState.getDefault());
+        return TestSpanData.builder()
+                .setSpanContext(context)
+                .setParentSpanContext(parent)
+                .setResource(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "jenkins")))
+                .setInstrumentationScopeInfo(InstrumentationScopeInfo.builder("MergifyJenkinsPlugin")
+                        .setVersion("1.0")
+                        .build())
+                .setName("Stage(Tests ✓ 🚀)")
+                .setKind(SpanKind.SERVER)
+                .setStartEpochNanos(1_700_000_000_000_000_000L)
+                .setEndEpochNanos(1_700_000_001_000_000_000L)
+                .setHasEnded(true)
+                .setStatus(StatusData.create(StatusCode.ERROR, "Tests failed"))
+                .setAttributes(Attributes.builder()
+                        .put("empty", "")
+                        .put("flag", false)
+                        .put("count", -3L)
+                        .put("ratio", 0.5)
+                        .put(AttributeKey.longArrayKey("exit.codes"), List.of(0L, 1L))
+                        .put(AttributeKey.booleanArrayKey("retries"), List.of(true))
+                        .put(AttributeKey.doubleArrayKey("durations"), List.of(1.5, 2.5))
+                        .put(AttributeKey.stringArrayKey("labels"), List.of())
+                        .build())
+                .setTotalAttributeCount(10)
+                .setEvents(List.of(EventData.create(
+                        1_700_000_000_500_000_000L, "exception", Attributes.of(AttributeKey.stringKey("e"), "é"))))
+                .setTotalRecordedEvents(3)
+                .setLinks(List.of(LinkData.create(parent, Attributes.of(AttributeKey.longKey("n"), 1L))))
+                .setTotalRecordedLinks(1)
+                .build();
+    }
+
+    @Test
+    void testSameBytesAsTheSdkMarshaler() throws IOException {
+        List<SpanData> spans = SyntheticSpans.batch(200, 3);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        OtlpTraceEncoder.encode(spans, encoded);
+
+        assertArrayEquals(marshal(spans), encoded.toByteArray());
+    }
+
+    @Test
+    void testSameBytesForEveryFieldType() throws IOException {
+        List<SpanData> spans = List.of(detailedSpan());
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        OtlpTraceEncoder.encode(spans, encoded);
+
+        assertArrayEquals(marshal(spans), encoded.toByteArray());
+    }
+
+    @Test
+    void testGzipPayloadInChunks() throws IOException {
+        List<SpanData> spans = SyntheticSpans.batch(500, 1);
+        byte[] expected = marshal(spans);
+
+        OtlpTraceEncoder.EncodedRequest request =
+                OtlpTraceEncoder.encodeGzip(spans, Deflater.DEFAULT_COMPRESSION, 1024);
+
+        assertTrue(request.chunks().size() > 1);
+        for (byte[] chunk : request.chunks().subList(0, request.chunks().size() - 1)) {
+            assertEquals(1024, chunk.length);
+        }
+        assertEquals(expected.length, request.rawBytes());
+        assertEquals(request.toByteArray().length, request.compressedBytes());
+        assertArrayEquals(expected, gunzip(request.toByteArray()));
+    }
+
+    @Test
+    void testZstdPayload() throws IOException {
+        List<SpanData> spans = SyntheticSpans.batch(500, 1);
+        byte[] expected = marshal(spans);
+
+        byte[] payload = OtlpTraceEncoder.encode(spans, PayloadCompression.ZSTD, 6).toByteArray();
+
+        assertTrue(payload.length < expected.length / 2);
+        byte[] decompressed = new byte[expected.length];
+        int length =
+                new ZstdDecompressor().decompress(payload, 0, payload.length, decompressed, 0, decompressed.length);
+        assertEquals(expected.length, length);
+        assertArrayEquals(expected, decompressed);
+    }
+
+    @Test
+    void testDeflatersReused() throws IOException {
+        List<SpanData> spans = SyntheticSpans.batch(40, 1);
+        byte[] expected = marshal(spans);
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(expected, gunzip(MergifySpanExporter.encode(spans)));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PendingSpanBufferTest {
+    private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+    private static final String OTHER_TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final AttributeKey<String> STEP_NAME = AttributeKey.stringKey("cicd.pipeline.task.name");
+    private static final Attributes COMMON = Attributes.builder()
+            .put(TraceUtils.VCS_REPOSITORY_NAME, "owner/repo")
+            .put(TraceUtils.CICD_PIPELINE_RUN_ID, "project#1")
+            .build();
+
+    private List<SpanData> released;
+    private PendingSpanBuffer buffer;
+
+    @BeforeEach
+    void beforeEach() {
+        released = new ArrayList<>();
+        buffer = new PendingSpanBuffer(3, 2, Duration.ofMinutes(15), released::addAll);
+    }
+
+    private static SpanData mockSpan(Attributes attributes) {
+        return mockSpan(TRACE_ID, attributes);
+    }
+
+    private static SpanData mockSpan(String traceId, Attributes attributes) {
+        SpanData span = mock(SpanData.class);
+        when(span.getTraceId()).thenReturn(traceId);
+        when(span.getName()).thenReturn("Stage(Checkout)");
+        when(span.getAttributes()).thenReturn(attributes);
+        return span;
+    }
+
+    @Test
+    void testEnrichedSpansAreReady() {
+        SpanData span = mockSpan(COMMON);
+
+        Collection<SpanData> ready = buffer.enrichOrPark(List.of(span));
+
+        assertEquals(1, ready.size());
+        assertSame(span, ready.iterator().next());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void testParkedUntilResolved() {
+        SpanData span = mockSpan(Attributes.of(STEP_NAME, "checkout"));
+
+        assertTrue(buffer.enrichOrPark(List.of(span)).isEmpty());
+        assertEquals(1, buffer.size());
+
+        buffer.resolve(TRACE_ID, COMMON);
+
+        assertEquals(0, buffer.size());
+        assertEquals(1, released.size());
+        Attributes attributes = released.get(0).getAttributes();
+        assertEquals("owner/repo", attributes.get(TraceUtils.VCS_REPOSITORY_NAME));
+        assertEquals("checkout", attributes.get(STEP_NAME));
+    }
+
+    @Test
+    void testEnrichedOnceResolved() {
+        buffer.resolve(TRACE_ID, COMMON);
+
+        Collection<SpanData> ready = buffer.enrichOrPark(List.of(mockSpan(Attributes.of(STEP_NAME, "checkout"))));
+
+        assertEquals(1, ready.size());
+        assertEquals(
+                "project#1", ready.iterator().next().getAttributes().get(TraceUtils.CICD_PIPELINE_RUN_ID));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void testBoundedAndForgotten() {
+        Attributes attributes = Attributes.of(STEP_NAME, "checkout");
+        buffer.enrichOrPark(List.of(mockSpan(attributes), mockSpan(attributes), mockSpan(attributes)));
+        assertEquals(2, buffer.size());
+
+        buffer.forget(TRACE_ID);
+
+        assertEquals(0, buffer.size());
+        assertTrue(released.isEmpty());
+    }
+
+    @Test
+    void testBoundedPerTrace() {
+        Attributes attributes = Attributes.of(STEP_NAME, "checkout");
+        buffer.enrichOrPark(List.of(mockSpan(attributes), mockSpan(attributes), mockSpan(attributes)));
+        assertEquals(2, buffer.size());
+
+        buffer.enrichOrPark(List.of(mockSpan(OTHER_TRACE_ID, attributes), mockSpan(OTHER_TRACE_ID, attributes)));
+        assertEquals(3, buffer.size());
+
+        buffer.resolve(OTHER_TRACE_ID, COMMON);
+        assertEquals(2, buffer.size());
+        assertEquals(1, released.size());
+    }
+
+    @Test
+    void testSweptOnceExpired() {
+        long parkedMillis = System.currentTimeMillis();
+        buffer.enrichOrPark(List.of(mockSpan(Attributes.of(STEP_NAME, "checkout"))));
+
+        assertEquals(0, buffer.sweep(parkedMillis + Duration.ofMinutes(1).toMillis()));
+        assertEquals(1, buffer.size());
+
+        assertEquals(1, buffer.sweep(parkedMillis + Duration.ofMinutes(16).toMillis()));
+        assertEquals(0, buffer.size());
+
+        buffer.resolve(TRACE_ID, COMMON);
+        assertTrue(released.isEmpty());
+    }
+
+    @Test
+    void testAbandonedThenForgotten() {
+        Attributes attributes = Attributes.of(STEP_NAME, "checkout");
+        buffer.enrichOrPark(List.of(mockSpan(attributes)));
+
+        buffer.abandon(TRACE_ID);
+
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.enrichOrPark(List.of(mockSpan(attributes))).isEmpty());
+        assertEquals(0, buffer.size());
+
+        buffer.forget(TRACE_ID);
+        assertTrue(buffer.enrichOrPark(List.of(mockSpan(attributes))).isEmpty());
+        assertEquals(0, buffer.size());
+        assertTrue(released.isEmpty());
+    }
+
+    @Test
+    void testLateSpansOfForgottenTracesAreDropped() {
+        Attributes attributes = Attributes.of(STEP_NAME, "checkout");
+        buffer.resolve(TRACE_ID, COMMON);
+
+        buffer.forget(TRACE_ID);
+
+        assertTrue(buffer.enrichOrPark(List.of(mockSpan(attributes))).isEmpty());
+        assertEquals(0, buffer.size());
+        assertTrue(released.isEmpty());
+
+        buffer.enrichOrPark(List.of(mockSpan(OTHER_TRACE_ID, attributes)));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void testResolvedTracesAreNotAbandoned() {
+        buffer.resolve(TRACE_ID, COMMON);
+
+        buffer.abandon(TRACE_ID);
+
+        assertEquals(1, buffer.enrichOrPark(List.of(mockSpan(Attributes.of(STEP_NAME, "checkout")))).size());
+    }
+}
@@ -0,0 +1,66 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RepositorySpanExporterTest {
+
+    private MergifyApiStub api;
+    private MergifyHttpSender sender;
+    private final ExportMetrics.RepositoryMetrics metrics = new ExportMetrics.RepositoryMetrics();
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        api = new MergifyApiStub(0, 0);
+        sender = new MergifyHttpSender(1, 4);
+    }
+
+    @AfterEach
+    void afterEach() {
+        sender.close();
+        api.close();
+    }
+
+    private RepositorySpanExporter exporter(PayloadCompression compression) {
+        URI endpoint = URI.create(api.getUrl() + "/v1/repos/org-0/repo-0/ci/traces");
+        return new RepositorySpanExporter(endpoint, "token", sender, metrics, compression, 6);
+    }
+
+    private static void export(RepositorySpanExporter exporter, List<SpanData> spans) {
+        CompletableResultCode result = exporter.export(spans).join(10, TimeUnit.SECONDS);
+        assertTrue(result.isSuccess());
+    }
+
+    @Test
+    void testUncompressedPayload() {
+        List<SpanData> spans = SyntheticSpans.batch(100, 1);
+
+        export(exporter(PayloadCompression.NONE), spans);
+
+        assertEquals(100, api.getUniqueSpans());
+        assertEquals(metrics.getRawBytes(), metrics.getCompressedBytes());
+        assertEquals(metrics.getRawBytes(), api.getReceivedBytes());
+    }
+
+    @Test
+    void testFallBackToGzipWhenZstdIsRejected() {
+        RepositorySpanExporter exporter = exporter(PayloadCompression.ZSTD);
+
+        export(exporter, SyntheticSpans.batch(80, 1));
+        assertEquals(80, api.getUniqueSpans());
+        assertEquals(2, api.getRequests());
+
+        export(exporter, SyntheticSpans.batch(40, 1));
+        assertEquals(120, api.getUniqueSpans());
+        assertEquals(3, api.getRequests());
+    }
+}
@@ -0,0 +1,58 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ReservedSpanIdsTest {
+    private final SdkTracerProvider tracerProvider =
+            SdkTracerProvider.builder().setIdGenerator(ReservedSpanIds.INSTANCE).build();
+    private final Tracer tracer = tracerProvider.get("test");
+
+    @AfterEach
+    void afterEach() {
+        tracerProvider.close();
+    }
+
+    @Test
+    void testSpanStartedWithReservedId() {
+        Span parent = tracer.spanBuilder("job").startSpan();
+        String traceparent = new TraceparentAction(SpanContext.create(
+                        parent.getSpanContext().getTraceId(),
+                        ReservedSpanIds.reserveSpanId(),
+                        TraceFlags.getSampled(),
+                        TraceState.getDefault()))
+                .getTraceParent();
+
+        Span span = ReservedSpanIds.withTraceparent(traceparent, () -> tracer.spanBuilder("stage")
+                .setParent(Context.current().with(parent))
+                .startSpan());
+
+        assertEquals(traceparent, new TraceparentAction(span.getSpanContext()).getTraceParent());
+    }
+
+    @Test
+    void testReservedIdUsedOnce() {
+        String traceparent = "00-80e1afed08e019fc1110464cfa66635c-7a085853722dc6d2-01";
+
+        Span child = ReservedSpanIds.withTraceparent(traceparent, () -> {
+            Span span = tracer.spanBuilder("stage").startSpan();
+            return tracer.spanBuilder("step")
+                    .setParent(Context.current().with(span))
+                    .startSpan();
+        });
+        Span other = tracer.spanBuilder("other").startSpan();
+
+        assertNotEquals("7a085853722dc6d2", child.getSpanContext().getSpanId());
+        assertNotEquals("7a085853722dc6d2", other.getSpanContext().getSpanId());
+    }
+}
@@ -0,0 +1,65 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.model.Label;
+import hudson.slaves.DumbSlave;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class RunnerInfoCacheTest {
+
+    private JenkinsRule jenkinsRule;
+
+    @BeforeEach
+    void beforeEach(JenkinsRule rule) {
+        jenkinsRule = rule;
+    }
+
+    @Test
+    void testHitsAndMisses() {
+        RunnerInfoCache cache = new RunnerInfoCache(16);
+
+        RunnerInfo first = cache.forNodeName(null);
+        RunnerInfo second = cache.forNodeName("built-in");
+
+        assertSame(first, second);
+        assertEquals("built-in", first.getName());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testBounded() {
+        RunnerInfoCache cache = new RunnerInfoCache(2);
+
+        cache.forNodeName("agent-1");
+        cache.forNodeName("agent-2");
+        cache.forNodeName("agent-3");
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testInvalidatedWhenNodeIsDeleted() throws Exception {
+        DumbSlave agent = jenkinsRule.createSlave(Label.parseExpression("linux"));
+        String name = agent.getNodeName();
+
+        RunnerInfo cached = RunnerInfo.fromNodeName(name);
+        assertSame(cached, RunnerInfo.fromNodeName(name));
+        assertTrue(cached.getLabels().contains("linux"));
+
+        jenkinsRule.jenkins.removeNode(agent);
+
+        RunnerInfo refreshed = RunnerInfo.fromNodeName(name);
+        assertNotSame(cached, refreshed);
+        assertEquals(List.of(), refreshed.getLabels());
+    }
+}
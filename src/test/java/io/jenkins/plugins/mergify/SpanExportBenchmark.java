@@ -0,0 +1,87 @@
+package io.jenkins.plugins.mergify;
+
+import static org.mockito.Mockito.mock;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of one batch going through {@link MergifySpanExporter#export}: grouping by repository, the
+ * pending span buffer and the per-repository lanes, up to a repository exporter that completes
+ * immediately. The HTTP and encoding costs are left out.
+ */
+@State(Scope.Benchmark)
+public class SpanExportBenchmark {
+
+    @Param({"1000", "10000"})
+    public int spans;
+
+    @Param({"1", "50", "500"})
+    public int repositories;
+
+    private List<SpanData> batch;
+    private MergifySpanExporter exporter;
+    private Level loggerLevel;
+    private boolean useParentHandlers;
+
+    @Setup
+    public void setup() {
+        batch = SyntheticSpans.batch(spans, repositories);
+
+        // Neither log each span nor print the per-repository lines of every batch
+        Logger logger = Logger.getLogger(MergifySpanExporter.class.getName());
+        loggerLevel = logger.getLevel();
+        useParentHandlers = logger.getUseParentHandlers();
+        logger.setLevel(Level.ALL);
+        logger.setUseParentHandlers(false);
+
+        MergifySpanExporter.setTestExporter(new SpanExporter() {
+            @Override
+            public CompletableResultCode export(Collection<SpanData> spans) {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+        });
+        exporter = new MergifySpanExporter(mock(MergifyConfigurationProvider.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        exporter.shutdown();
+        MergifySpanExporter.setTestExporter(null);
+        Logger logger = Logger.getLogger(MergifySpanExporter.class.getName());
+        logger.setLevel(loggerLevel);
+        logger.setUseParentHandlers(useParentHandlers);
+    }
+
+    @Benchmark
+    public Map<String, List<SpanData>> groupByRepositoryName() {
+        return MergifySpanExporter.groupByRepositoryName(batch);
+    }
+
+    @Benchmark
+    public CompletableResultCode export() {
+        return exporter.export(batch);
+    }
+}
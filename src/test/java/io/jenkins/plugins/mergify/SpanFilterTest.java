@@ -0,0 +1,131 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.sdk.testing.trace.TestSpanData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SpanFilterTest {
+    private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+    private static final String REPOSITORY = "org/filtered";
+    private static final long START_NANOS = 1_700_000_000_000_000_000L;
+
+    private final SpanData job = span("job", "Pipeline", "0000000000000001", null, 600_000, "success");
+    private final SpanData build = span("step", "Stage(Build)", "0000000000000002", job, 300_000, "success");
+
+    @BeforeEach
+    void beforeEach() {
+        ExportMetrics.get().clear();
+    }
+
+    private static SpanData span(
+            String scope, String name, String spanId, SpanData parent, long durationMillis, String result) {
+        return TestSpanData.builder()
+                .setSpanContext(
+                        SpanContext.create(TRACE_ID, spanId, TraceFlags.getSampled(), TraceState.getDefault()))
+                .setParentSpanContext(parent != null ? parent.getSpanContext() : SpanContext.getInvalid())
+                .setName(name)
+                .setKind(SpanKind.INTERNAL)
+                .setStartEpochNanos(START_NANOS)
+                .setEndEpochNanos(START_NANOS + durationMillis * 1_000_000)
+                .setHasEnded(true)
+                .setStatus("failure".equals(result) ? StatusData.error() : StatusData.ok())
+                .setAttributes(Attributes.builder()
+                        .put(TraceUtils.VCS_REPOSITORY_NAME, REPOSITORY)
+                        .put(TraceUtils.CICD_PIPELINE_TASK_SCOPE, scope)
+                        .put(TraceUtils.CICD_PIPELINE_TASK_NAME, name)
+                        .put(TraceUtils.CICD_PIPELINE_TASK_RUN_RESULT, result)
+                        .build())
+                .setTotalAttributeCount(4)
+                .build();
+    }
+
+    private static List<String> names(List<SpanData> spans) {
+        return spans.stream().map(SpanData::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    void testRuleMatching() {
+        SpanFilterRule rule = new SpanFilterRule("Stage(Notify*)", 1000, "success", SpanFilterRule.Action.DROP);
+
+        assertTrue(rule.matches("Stage(Notify Slack)", 10, "success"));
+        assertFalse(rule.matches("Stage(Notify Slack)", 1000, "success"));
+        assertFalse(rule.matches("Stage(Notify Slack)", 10, "failure"));
+        assertFalse(rule.matches("Stage(Build)", 10, "success"));
+        assertTrue(new SpanFilterRule(null, 0, null, null).matches("Stage(Build)", 10, "failure"));
+        assertTrue(SpanFilterRule.compileGlob("a.b*").matcher("a.bc").matches());
+        assertFalse(SpanFilterRule.compileGlob("a.b*").matcher("axbc").matches());
+    }
+
+    @Test
+    void testDropShortLeafSpans() {
+        SpanFilter filter =
+                new SpanFilter(List.of(new SpanFilterRule(null, 1000, null, SpanFilterRule.Action.DROP)));
+        SpanData lint = span("step", "Stage(Lint)", "0000000000000003", job, 200, "success");
+        // Short, but the parent of a kept span
+        SpanData checks = span("step", "Stage(Checks)", "0000000000000004", job, 500, "success");
+        SpanData tests = span("step", "Stage(Tests)", "0000000000000005", checks, 400_000, "failure");
+
+        List<SpanData> kept = filter.apply(List.of(lint, tests, checks, build, job));
+
+        assertEquals(List.of("Stage(Tests)", "Stage(Checks)", "Stage(Build)", "Pipeline"), names(kept));
+        assertEquals(1, ExportMetrics.get().repository(REPOSITORY).getFilteredSpans());
+        assertEquals(1, ExportMetrics.get().repository(REPOSITORY).getSavedSpans());
+    }
+
+    @Test
+    void testCollapseIntoOneSummaryPerParent() {
+        SpanFilter filter = new SpanFilter(
+                List.of(new SpanFilterRule("Stage(Step *)", 1000, null, SpanFilterRule.Action.COLLAPSE)));
+        SpanData first = span("step", "Stage(Step 1)", "0000000000000003", build, 100, "success");
+        SpanData second = span("step", "Stage(Step 2)", "0000000000000004", build, 300, "failure");
+        SpanData third = span("step", "Stage(Step 3)", "0000000000000005", job, 50, "success");
+
+        List<SpanData> kept = filter.apply(List.of(first, second, third, build));
+
+        assertEquals(3, kept.size());
+        SpanData summary = kept.get(1);
+        assertEquals("Collapsed(2 spans)", summary.getName());
+        assertEquals(build.getSpanId(), summary.getParentSpanId());
+        assertEquals(TRACE_ID, summary.getTraceId());
+        assertEquals(2L, summary.getAttributes().get(SpanFilter.COLLAPSED_SPAN_COUNT));
+        assertEquals(400L, summary.getAttributes().get(SpanFilter.COLLAPSED_DURATION_MILLIS));
+        assertEquals("failure", summary.getAttributes().get(TraceUtils.CICD_PIPELINE_TASK_RUN_RESULT));
+        assertEquals(REPOSITORY, summary.getAttributes().get(TraceUtils.VCS_REPOSITORY_NAME));
+        assertEquals(job.getSpanId(), kept.get(2).getParentSpanId());
+
+        ExportMetrics.RepositoryMetrics metrics = ExportMetrics.get().repository(REPOSITORY);
+        assertEquals(3, metrics.getCollapsedSpans());
+        assertEquals(2, metrics.getSummarySpans());
+        assertEquals(1, metrics.getSavedSpans());
+    }
+
+    @Test
+    void testParentsOfEarlierBatchesKept() {
+        SpanFilter filter =
+                new SpanFilter(List.of(new SpanFilterRule("Stage(Build)", 0, null, SpanFilterRule.Action.DROP)));
+        SpanData compile = span("step", "Stage(Compile)", "0000000000000003", build, 100_000, "success");
+
+        assertEquals(List.of("Stage(Compile)"), names(filter.apply(List.of(compile))));
+        assertEquals(List.of("Stage(Build)", "Pipeline"), names(filter.apply(List.of(build, job))));
+    }
+
+    @Test
+    void testJobSpansNeverFiltered() {
+        SpanFilter filter = new SpanFilter(List.of(new SpanFilterRule(null, 0, null, SpanFilterRule.Action.DROP)));
+
+        assertEquals(List.of("Pipeline"), names(filter.apply(List.of(job))));
+    }
+}
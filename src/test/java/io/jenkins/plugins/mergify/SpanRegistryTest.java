@@ -0,0 +1,88 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.*;
+
+import hudson.model.Run;
+import hudson.tasks.BuildStep;
+import io.opentelemetry.api.trace.Span;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SpanRegistryTest {
+
+    private SpanRegistry registry;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SpanRegistry();
+    }
+
+    private static Run<?, ?> mockRun(String id) {
+        Run<?, ?> run = mock(Run.class);
+        when(run.getExternalizableId()).thenReturn(id);
+        return run;
+    }
+
+    @Test
+    void testStepSpansAreScopedPerRun() {
+        BuildStep sharedStep = mock(BuildStep.class);
+        String stepKey = SpanRegistry.stepKey(sharedStep);
+        Span first = mock(Span.class);
+        Span second = mock(Span.class);
+
+        registry.forRun(mockRun("job#1")).putStepSpan(stepKey, first);
+        registry.forRun(mockRun("job#2")).putStepSpan(stepKey, second);
+
+        assertEquals(2, registry.size());
+        assertEquals(2, registry.openSpanCount());
+        assertSame(first, registry.forRun("job#1").removeStepSpan(stepKey));
+        assertSame(second, registry.forRun("job#2").removeStepSpan(stepKey));
+        assertEquals(0, registry.openSpanCount());
+    }
+
+    @Test
+    void testStepKeyIsPerInstance() {
+        assertNotEquals(SpanRegistry.stepKey(mock(BuildStep.class)), SpanRegistry.stepKey(mock(BuildStep.class)));
+    }
+
+    @Test
+    void testRemove() {
+        Run<?, ?> run = mockRun("job#1");
+        Span jobSpan = mock(Span.class);
+        registry.forRun(run).setJobSpan(jobSpan);
+        registry.forRun(run).putStageSpan("3", mock(Span.class));
+
+        SpanRegistry.RunSpans spans = registry.remove(run);
+
+        assertSame(jobSpan, spans.getJobSpan());
+        assertEquals(0, registry.size());
+        assertNull(registry.getRun(run));
+    }
+
+    @Test
+    void testEndAllWithoutRun() {
+        Span jobSpan = mock(Span.class);
+        Span stageSpan = mock(Span.class);
+        SpanRegistry.RunSpans spans = registry.forRun("job#1");
+        spans.setJobSpan(jobSpan);
+        spans.putStageSpan("3", stageSpan);
+
+        spans.endAll(null);
+
+        verify(stageSpan).end();
+        verify(jobSpan).end();
+        assertEquals(0, spans.openSpanCount());
+    }
+
+    @Test
+    void testSweepKeepsRecentEntries() {
+        registry.forRun("job#1").putStageSpan("3", mock(Span.class));
+
+        assertEquals(0, registry.sweep(Long.MAX_VALUE));
+        assertEquals(1, registry.size());
+    }
+}
@@ -0,0 +1,156 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpanSpoolTest {
+    private static final String REPOSITORY = "owner/repo";
+
+    @TempDir
+    Path directory;
+
+    private static byte[] payload(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static SpanSpool.Sender collectInto(List<String> sent) {
+        return (repositoryName, payload) ->
+                sent.add(repositoryName + ":" + new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testReplayInOrderAcrossSegments() {
+        SpanSpool spool = new SpanSpool(directory, 1024, 32);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(spool.append(REPOSITORY, payload("batch-" + i + "-0123456789")));
+        }
+        assertTrue(spool.hasBacklog(REPOSITORY));
+
+        List<String> sent = new ArrayList<>();
+        spool.replay(collectInto(sent));
+
+        assertEquals(
+                List.of(
+                        "owner/repo:batch-0-0123456789",
+                        "owner/repo:batch-1-0123456789",
+                        "owner/repo:batch-2-0123456789",
+                        "owner/repo:batch-3-0123456789",
+                        "owner/repo:batch-4-0123456789"),
+                sent);
+        assertFalse(spool.hasBacklog(REPOSITORY));
+        assertEquals(0, spool.sizeBytes());
+    }
+
+    @Test
+    void testBackOffKeepsPayloads() {
+        SpanSpool spool = new SpanSpool(directory, 1024, 1024);
+        spool.append(REPOSITORY, payload("first"));
+        spool.append(REPOSITORY, payload("second"));
+
+        List<String> attempts = new ArrayList<>();
+        spool.replay((repositoryName, payload) -> {
+            attempts.add(new String(payload, StandardCharsets.UTF_8));
+            return false;
+        });
+        // Backing off, the lane is not retried right away
+        spool.replay((repositoryName, payload) -> {
+            attempts.add(new String(payload, StandardCharsets.UTF_8));
+            return true;
+        });
+
+        assertEquals(List.of("first"), attempts);
+        assertTrue(spool.hasBacklog(REPOSITORY));
+    }
+
+    @Test
+    void testReloadedAfterRestart() {
+        SpanSpool spool = new SpanSpool(directory, 1024, 1024);
+        spool.append(REPOSITORY, payload("first"));
+        spool.append("other/repo", payload("second"));
+
+        SpanSpool reloaded = new SpanSpool(directory, 1024, 1024);
+        List<String> sent = new ArrayList<>();
+        reloaded.replay(collectInto(sent));
+
+        assertEquals(2, sent.size());
+        assertTrue(sent.contains("owner/repo:first"));
+        assertTrue(sent.contains("other/repo:second"));
+    }
+
+    @Test
+    void testOldestSegmentsDroppedWhenFull() {
+        // Each record takes 8 + 10 bytes, one per segment
+        SpanSpool spool = new SpanSpool(directory, 40, 18);
+        spool.append(REPOSITORY, payload("batch-0000"));
+        spool.append(REPOSITORY, payload("batch-0001"));
+        spool.append(REPOSITORY, payload("batch-0002"));
+
+        List<String> sent = new ArrayList<>();
+        spool.replay(collectInto(sent));
+
+        assertEquals(List.of("owner/repo:batch-0001", "owner/repo:batch-0002"), sent);
+    }
+
+    @Test
+    void testOldestSegmentsDroppedAcrossLanes() {
+        SpanSpool spool = new SpanSpool(directory, 40, 18);
+        spool.append(REPOSITORY, payload("batch-0000"));
+        spool.append(REPOSITORY, payload("batch-0001"));
+
+        assertTrue(spool.append("other/repo", payload("batch-0002")));
+
+        List<String> sent = new ArrayList<>();
+        spool.replay(collectInto(sent));
+
+        assertEquals(2, sent.size());
+        assertTrue(sent.contains("owner/repo:batch-0001"));
+        assertTrue(sent.contains("other/repo:batch-0002"));
+    }
+
+    @Test
+    void testEmptyLaneRemoved() {
+        SpanSpool spool = new SpanSpool(directory, 1024, 1024);
+        spool.append(REPOSITORY, payload("first"));
+        Path laneDirectory = directory.resolve(URLEncoder.encode(REPOSITORY, StandardCharsets.UTF_8));
+        assertTrue(Files.isDirectory(laneDirectory));
+
+        spool.replay(collectInto(new ArrayList<>()));
+
+        assertFalse(Files.exists(laneDirectory));
+        assertTrue(spool.append(REPOSITORY, payload("second")));
+        List<String> sent = new ArrayList<>();
+        spool.replay(collectInto(sent));
+        assertEquals(List.of("owner/repo:second"), sent);
+    }
+
+    @Test
+    void testCorruptedTailSkipped() throws IOException {
+        SpanSpool spool = new SpanSpool(directory, 1024, 1024);
+        spool.append(REPOSITORY, payload("first"));
+        try (Stream<Path> files = Files.walk(directory)) {
+            Path segment = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+            // A record cut short by a crash
+            Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        List<byte[]> sent = new ArrayList<>();
+        new SpanSpool(directory, 1024, 1024).replay((repositoryName, payload) -> sent.add(payload));
+
+        assertEquals(1, sent.size());
+        assertArrayEquals(payload("first"), sent.get(0));
+    }
+}
@@ -0,0 +1,179 @@
+package io.jenkins.plugins.mergify;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Action;
+import hudson.model.labels.LabelAtom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.AtomNode;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+
+/**
+ * Flow nodes for the benchmarks, which know their enclosing blocks and actions instead of looking
+ * them up in the flow execution, so that the benchmarks time the code reading the nodes and not
+ * mock invocations.
+ */
+final class StubFlowNodes {
+
+    private StubFlowNodes() {}
+
+    // What a flow execution would look up for a node
+    private static final class Links {
+        private final List<BlockStartNode> enclosingBlocks;
+        private final List<Action> actions = new CopyOnWriteArrayList<>();
+
+        Links(@CheckForNull BlockStart enclosing) {
+            List<BlockStartNode> blocks = new ArrayList<>();
+            if (enclosing != null) {
+                blocks.add(enclosing);
+                blocks.addAll(enclosing.getEnclosingBlocks());
+            }
+            enclosingBlocks = List.copyOf(blocks);
+        }
+
+        String getEnclosingId() {
+            return enclosingBlocks.isEmpty() ? null : enclosingBlocks.get(0).getId();
+        }
+
+        <T extends Action> T getAction(Class<T> type) {
+            for (Action action : actions) {
+                if (type.isInstance(action)) {
+                    return type.cast(action);
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Atom extends AtomNode {
+        private final Links links;
+
+        Atom(FlowExecution execution, String id, @CheckForNull BlockStart enclosing) {
+            super(execution, id);
+            links = new Links(enclosing);
+        }
+
+        @Override
+        public String getEnclosingId() {
+            return links.getEnclosingId();
+        }
+
+        @NonNull
+        @Override
+        public List<BlockStartNode> getEnclosingBlocks() {
+            return links.enclosingBlocks;
+        }
+
+        @Override
+        public <T extends Action> T getAction(Class<T> type) {
+            return links.getAction(type);
+        }
+
+        @Override
+        protected String getTypeDisplayName() {
+            return "Atom";
+        }
+    }
+
+    static final class BlockStart extends BlockStartNode {
+        private final Links links;
+
+        BlockStart(FlowExecution execution, String id, @CheckForNull BlockStart enclosing) {
+            super(execution, id);
+            links = new Links(enclosing);
+        }
+
+        void putAction(Action action) {
+            links.actions.add(action);
+        }
+
+        @Override
+        public String getEnclosingId() {
+            return links.getEnclosingId();
+        }
+
+        @NonNull
+        @Override
+        public List<BlockStartNode> getEnclosingBlocks() {
+            return links.enclosingBlocks;
+        }
+
+        @Override
+        public <T extends Action> T getAction(Class<T> type) {
+            return links.getAction(type);
+        }
+
+        @Override
+        protected String getTypeDisplayName() {
+            return "Block start";
+        }
+    }
+
+    static final class BlockEnd extends BlockEndNode<BlockStart> {
+        private final Links links;
+
+        BlockEnd(FlowExecution execution, String id, BlockStart start) {
+            super(execution, id, start);
+            links = new Links(enclosing(start));
+        }
+
+        @CheckForNull
+        private static BlockStart enclosing(BlockStart start) {
+            List<BlockStartNode> blocks = start.getEnclosingBlocks();
+            return blocks.isEmpty() ? null : (BlockStart) blocks.get(0);
+        }
+
+        @Override
+        public String getEnclosingId() {
+            return links.getEnclosingId();
+        }
+
+        @NonNull
+        @Override
+        public List<BlockStartNode> getEnclosingBlocks() {
+            return links.enclosingBlocks;
+        }
+
+        @Override
+        public <T extends Action> T getAction(Class<T> type) {
+            return links.getAction(type);
+        }
+
+        @Override
+        protected String getTypeDisplayName() {
+            return "Block end";
+        }
+    }
+
+    static final class Workspace extends WorkspaceAction {
+        private final String node;
+
+        Workspace(String node) {
+            this.node = node;
+        }
+
+        @NonNull
+        @Override
+        public String getNode() {
+            return node;
+        }
+
+        @NonNull
+        @Override
+        public String getPath() {
+            return "/workspace";
+        }
+
+        @NonNull
+        @Override
+        public Set<LabelAtom> getLabels() {
+            return Set.of();
+        }
+    }
+}
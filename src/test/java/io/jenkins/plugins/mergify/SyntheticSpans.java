@@ -0,0 +1,110 @@
+package io.jenkins.plugins.mergify;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.trace.TestSpanData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ended spans shaped like the ones the plugin exports: runs of a few dozen stage spans sharing the
+ * common run attributes, spread over many repositories of a handful of organizations.
+ */
+final class SyntheticSpans {
+    static final int SPANS_PER_RUN = 40;
+    private static final int ORGANIZATIONS = 8;
+    private static final String[] STAGES = {"Checkout", "Build", "Unit tests", "Integration tests", "Lint", "Deploy"};
+    private static final String[] RESULTS = {"success", "success", "success", "failure", "skip"};
+    private static final Resource RESOURCE = Resource.getDefault()
+            .merge(Resource.create(Attributes.of(
+                    AttributeKey.stringKey("service.name"), "MergifyJenkinsPlugin",
+                    AttributeKey.stringKey("service.version"), "1.0.0",
+                    AttributeKey.stringKey("service.jenkins_version"), "2.492.3",
+                    TraceUtils.CICD_PROVIDER_NAME, "jenkins")));
+    private static final InstrumentationScopeInfo SCOPE = InstrumentationScopeInfo.create("MergifyJenkinsPlugin");
+
+    private SyntheticSpans() {}
+
+    static String repositoryName(int repository) {
+        return "org-" + (repository % ORGANIZATIONS) + "/repo-" + repository;
+    }
+
+    /**
+     * @return {@code spanCount} spans, the runs being assigned to repositories round-robin
+     */
+    static List<SpanData> batch(int spanCount, int repositoryCount) {
+        Random random = new Random(spanCount * 31L + repositoryCount);
+        List<SpanData> spans = new ArrayList<>(spanCount);
+        long runStartNanos = 1_700_000_000_000_000_000L;
+        Attributes common = null;
+        String traceId = null;
+        String rootSpanId = null;
+        for (int i = 0; i < spanCount; i++) {
+            int run = i / SPANS_PER_RUN;
+            if (i % SPANS_PER_RUN == 0) {
+                String repositoryName = repositoryName(run % repositoryCount);
+                traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+                rootSpanId = String.format("%016x", random.nextLong());
+                common = commonAttributes(repositoryName, run, runStartNanos);
+                runStartNanos += 60_000_000_000L;
+            }
+
+            boolean root = i % SPANS_PER_RUN == 0;
+            String spanId = root ? rootSpanId : String.format("%016x", random.nextLong());
+            long startNanos = runStartNanos + (i % SPANS_PER_RUN) * 1_000_000_000L;
+            long durationNanos = (long) (random.nextDouble() * 600_000_000_000L);
+            String stage = STAGES[i % STAGES.length];
+            spans.add(TestSpanData.builder()
+                    .setSpanContext(spanContext(traceId, spanId))
+                    .setParentSpanContext(root ? SpanContext.getInvalid() : spanContext(traceId, rootSpanId))
+                    .setResource(RESOURCE)
+                    .setInstrumentationScopeInfo(SCOPE)
+                    .setName(root ? "Pipeline" : "Stage(" + stage + ")")
+                    .setKind(SpanKind.INTERNAL)
+                    .setStartEpochNanos(startNanos)
+                    .setEndEpochNanos(startNanos + durationNanos)
+                    .setHasEnded(true)
+                    .setStatus(StatusData.unset())
+                    .setAttributes(common.toBuilder()
+                            .put(TraceUtils.CICD_PIPELINE_TASK_NAME, stage)
+                            .put(TraceUtils.CICD_PIPELINE_TASK_RUN_RESULT, RESULTS[random.nextInt(RESULTS.length)])
+                            .build())
+                    .setTotalAttributeCount(common.size() + 2)
+                    .build());
+        }
+        return spans;
+    }
+
+    private static SpanContext spanContext(String traceId, String spanId) {
+        return SpanContext.create(traceId, spanId, TraceFlags.getSampled(), TraceState.getDefault());
+    }
+
+    private static Attributes commonAttributes(String repositoryName, int run, long createdAtNanos) {
+        String pipelineName = repositoryName.replace('/', '-') + "-main";
+        String runId = pipelineName + "#" + run;
+        return Attributes.builder()
+                .put(TraceUtils.CICD_PROVIDER_NAME, "jenkins")
+                .put(TraceUtils.CICD_PIPELINE_NAME, pipelineName)
+                .put(TraceUtils.CICD_PIPELINE_RUN_ID, runId)
+                .put(TraceUtils.CICD_PIPELINE_ID, runId)
+                .put(TraceUtils.CICD_PIPELINE_CREATED_AT, createdAtNanos)
+                .put(TraceUtils.CICD_PIPELINE_URL, "https://jenkins.example.com/job/" + pipelineName + "/" + run + "/")
+                .put(TraceUtils.CICD_PIPELINE_RUNNER_NAME, "linux-agent-" + (run % 16))
+                .put(TraceUtils.CICD_PIPELINE_LABELS, List.of("linux", "amd64", "docker"))
+                .put(TraceUtils.VCS_REF_HEAD_NAME, "main")
+                .put(TraceUtils.VCS_REF_HEAD_REVISION, String.format("%040x", (long) run))
+                .put(TraceUtils.VCS_REPOSITORY_NAME, repositoryName)
+                .put(TraceUtils.VCS_REPOSITORY_URL_FULL, "https://github.com/" + repositoryName + ".git")
+                .put(TraceUtils.VCS_REPOSITORY_URL_SOURCE, "GitSCM")
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package io.jenkins.plugins.mergify;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TunableSpanProcessorTest {
+    private static final int THREADS = 4;
+    private static final int SPANS_PER_THREAD = 10_000;
+
+    private final BatchTuning small = new BatchTuning(100_000, 64, 10, 30_000);
+    private final BatchTuning large = new BatchTuning(200_000, 512, 10, 30_000);
+
+    @Test
+    void testNoSpanLostWhileResizing() throws Exception {
+        InMemorySpanExporter exporter = InMemorySpanExporter.create();
+        TunableSpanProcessor processor = new TunableSpanProcessor(exporter, small);
+        SdkTracerProvider tracerProvider =
+                SdkTracerProvider.builder().addSpanProcessor(processor).build();
+        Tracer tracer = tracerProvider.get("test");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < SPANS_PER_THREAD; j++) {
+                        tracer.spanBuilder("span").startSpan().end();
+                    }
+                }));
+            }
+            int resizes = 0;
+            do {
+                processor.resize(resizes++ % 2 == 0 ? large : small);
+                Thread.sleep(1);
+            } while (!futures.stream().allMatch(Future::isDone));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Previous processors export what they hold in the background
+        int expected = THREADS * SPANS_PER_THREAD;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (exporter.getFinishedSpanItems().size() < expected && System.nanoTime() < deadline) {
+            processor.forceFlush().join(1, TimeUnit.SECONDS);
+            Thread.sleep(10);
+        }
+
+        assertTrue(processor.getResizeCount() > 0);
+        assertEquals(0, processor.getDroppedSpanCount());
+        assertEquals(expected, exporter.getFinishedSpanItems().size());
+        assertEquals(0, processor.getQueueSize());
+        tracerProvider.close();
+    }
+}